@@ -18,10 +18,21 @@ import hmmla.util.Mapping;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Tagger {
 
+	// Sentences that are being decoded by the worker threads. Bounds the
+	// number of sentences held in memory per thread.
+	private static final int PENDING_PER_THREAD = 4;
+
 	public static void main(String[] args) throws IOException {	
 		Properties props = new Properties();
 		props.setPropertiesFromStrings(args);
@@ -44,7 +55,7 @@ public class Tagger {
 
 		HmmTrainer trainer = HmmTrainerFactory.getTrainer(props);
 
-		Decoder decoder;
+		final Decoder decoder;
 		if (refine) {
 			decoder = new SupervisedDecoder(model, trainer.train(model));
 		} else {
@@ -54,19 +65,67 @@ public class Tagger {
 		Result result = new Result();
 
 		PosWriter writer = new PosWriter(new FileWriter(props.getPredFile()));
+		boolean eval = toplevel && !refine && props.getTest();
+		int num_threads = props.getNumThreads();
 		
-		for (Sentence sentence : reader) {
-			List<String> tags = decoder.bestPath(sentence);
-			
-			if (toplevel && ! refine && props.getTest())
-				result.increment(Eval.eval(tags, sentence, model));
-			writer.write(sentence, tags);
+		if (num_threads == 1) {
+			for (Sentence sentence : reader) {
+				List<String> tags = decoder.bestPath(sentence);
+
+				if (eval)
+					result.increment(Eval.eval(tags, sentence, model));
+				writer.write(sentence, tags);
+			}
+		} else {
+			// The sentences are decoded in parallel, but evaluated and written
+			// in input order.
+			ExecutorService executor = Executors
+					.newFixedThreadPool(num_threads);
+			Queue<Sentence> sentences = new ArrayDeque<Sentence>();
+			Queue<Future<List<String>>> paths = new ArrayDeque<Future<List<String>>>();
+
+			for (final Sentence sentence : reader) {
+				paths.add(executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() {
+						return decoder.bestPath(sentence);
+					}
+				}));
+				sentences.add(sentence);
+
+				if (sentences.size() >= PENDING_PER_THREAD * num_threads) {
+					write(sentences.poll(), paths.poll(), writer, eval,
+							result, model);
+				}
+			}
+
+			while (!sentences.isEmpty()) {
+				write(sentences.poll(), paths.poll(), writer, eval, result,
+						model);
+			}
+			executor.shutdown();
 		}
 
-		if (toplevel && !refine && props.getTest())
+		if (eval)
 			System.err.println(result);
 		
 		writer.close();
 	}
+
+	private static void write(Sentence sentence, Future<List<String>> path,
+			PosWriter writer, boolean eval, Result result, Model model) {
+		List<String> tags;
+		try {
+			tags = path.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (eval)
+			result.increment(Eval.eval(tags, sentence, model));
+		writer.write(sentence, tags);
+	}
 	
 }
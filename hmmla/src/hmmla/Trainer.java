@@ -82,9 +82,11 @@ public class Trainer {
 		// Merger setup.
 		LossEstimator estimator;
 		if (props_.getExactLoss()) {
-			estimator = new ExactLossEstimator(em_trainer_, hmm_trainer_);
+			estimator = new ExactLossEstimator(em_trainer_, hmm_trainer_,
+					props_.getNumThreads());
 		} else {
-			estimator = new ApproximativeLossEstimator(hmm_trainer_);
+			estimator = new ApproximativeLossEstimator(hmm_trainer_,
+					props_.getNumThreads());
 		}
 		merger_ = new Merger(estimator);
 
@@ -28,12 +28,15 @@ import java.util.Map.Entry;
 
 
 
+// The models of all levels are only read while decoding. Every thread gets
+// its own charts, so bestPath can be called concurrently.
 public class CoarseToFineDecoder implements Decoder {
 
 	private Model[] models_;
+	private HmmModel[] hmm_models_;
 	private HmmTrainer trainer_;
-	private ForwardChart[] forwards_;
-	private BackwardChart[] backwards_;
+	private ThreadLocal<ForwardChart[]> forwards_;
+	private ThreadLocal<BackwardChart[]> backwards_;
 	private boolean decode_toplevel_;
 	private boolean product_;
 
@@ -48,8 +51,7 @@ public class CoarseToFineDecoder implements Decoder {
 	protected void init(Model model) {
 		int max_level = model.getLevel();
 		models_ = new Model[max_level + 1];
-		forwards_ = new ForwardChart[max_level + 1];
-		backwards_ = new BackwardChart[max_level + 1];
+		hmm_models_ = new HmmModel[max_level + 1];
 		List<Tree> trees = new LinkedList<Tree>();
 
 		models_[max_level] = model;
@@ -84,14 +86,33 @@ public class CoarseToFineDecoder implements Decoder {
 		}
 
 		for (int level = max_level; level >= 0; level--) {
-			model = models_[level];
-			HmmModel hmm_model = trainer_.train(model);
-			SymbolTable<String> tag_table = model.getTagTable();
-			forwards_[level] = new ForwardChart();
-			forwards_[level].init(tag_table.size(), hmm_model);
-			backwards_[level] = new BackwardChart();
-			backwards_[level].init(tag_table.size(), hmm_model);
+			hmm_models_[level] = trainer_.train(models_[level]);
 		}
+
+		forwards_ = new ThreadLocal<ForwardChart[]>() {
+			@Override
+			protected ForwardChart[] initialValue() {
+				ForwardChart[] charts = new ForwardChart[models_.length];
+				for (int level = 0; level < charts.length; level++) {
+					charts[level] = new ForwardChart();
+					charts[level].init(models_[level].getTagTable().size(),
+							hmm_models_[level]);
+				}
+				return charts;
+			}
+		};
+		backwards_ = new ThreadLocal<BackwardChart[]>() {
+			@Override
+			protected BackwardChart[] initialValue() {
+				BackwardChart[] charts = new BackwardChart[models_.length];
+				for (int level = 0; level < charts.length; level++) {
+					charts[level] = new BackwardChart();
+					charts[level].init(models_[level].getTagTable().size(),
+							hmm_models_[level]);
+				}
+				return charts;
+			}
+		};
 	}
 
 	private void collectStatistics(Model new_model, Model model) {
@@ -101,22 +122,28 @@ public class CoarseToFineDecoder implements Decoder {
 		SymbolTable<String> new_tag_table = new_model.getTagTable();
 		SymbolTable<String> tag_table = model.getTagTable();
 
+		int[] new_indexes = new int[tag_table.size()];
 		for (Entry<String, Integer> entry : tag_table.entrySet()) {
-			int index = entry.getValue();
-			String name = entry.getKey();
-			int new_index = getNewIndex(name, new_tag_table,
-					model.getClustering());
+			new_indexes[entry.getValue()] = getNewIndex(entry.getKey(),
+					new_tag_table, model.getClustering());
+		}
 
-			for (int output = 0; output < statistics.getNumOutputs(); output++) {
-				double f = statistics.getEmissions(index, output);
-				new_statistics.addEmissions(new_index, output, f);
+		for (int output = 0; output < statistics.getNumOutputs(); output++) {
+			int num_entries = statistics.getNumEmissionEntries(output);
+			for (int entry = 0; entry < num_entries; entry++) {
+				int index = statistics.getEmissionTag(output, entry);
+				double f = statistics.getEmissionEntry(output, entry);
+				new_statistics.addEmissions(new_indexes[index], output, f);
 			}
+		}
+
+		for (Entry<String, Integer> entry : tag_table.entrySet()) {
+			int index = entry.getValue();
+			int new_index = new_indexes[index];
 
 			for (Entry<String, Integer> entry2 : tag_table.entrySet()) {
 				int index2 = entry2.getValue();
-				String name2 = entry2.getKey();
-				int new_index2 = getNewIndex(name2, new_tag_table,
-						model.getClustering());
+				int new_index2 = new_indexes[index2];
 
 				double f = statistics.getTransitions(index, index2);
 				new_statistics.addTransitions(new_index, new_index2, f);
@@ -146,10 +173,12 @@ public class CoarseToFineDecoder implements Decoder {
 		SymbolTable<String> tag_table = models_[0].getTagTable();
 
 		List<Iterable<Integer>> candidates = getInitialCandidates(sentence, tag_table);
+		ForwardChart[] forwards = forwards_.get();
+		BackwardChart[] backwards = backwards_.get();
 
 		for (int level = 0; level < models_.length; level++) {
-			ForwardChart forward = forwards_[level];
-			BackwardChart backward = backwards_[level];
+			ForwardChart forward = forwards[level];
+			BackwardChart backward = backwards[level];
 
 			forward.update(candidates, sentence);
 			Collections.reverse(candidates);
@@ -203,12 +232,12 @@ public class CoarseToFineDecoder implements Decoder {
 
 		if (product_) {
 			return bestProductPath(models_[models_.length - 1],
-					forwards_[models_.length - 1],
-					backwards_[models_.length - 1], candidates, sentence);
+					forwards[models_.length - 1],
+					backwards[models_.length - 1], candidates, sentence);
 		}
 
 		return bestPath(models_[models_.length - 1],
-				forwards_[models_.length - 1], backwards_[models_.length - 1],
+				forwards[models_.length - 1], backwards[models_.length - 1],
 				candidates, sentence.size());
 
 	}
@@ -258,7 +287,7 @@ public class CoarseToFineDecoder implements Decoder {
 
 	private List<String> bestProductPath(Model model, ForwardChart forward,
 			BackwardChart backward, List<Iterable<Integer>> candidates,
-			List<Token> sentence) {
+			Sentence sentence) {
 
 		double logZ = forward.score();
 
@@ -270,8 +299,8 @@ public class CoarseToFineDecoder implements Decoder {
 		List<SymbolTable<String>> tables = new ArrayList<SymbolTable<String>>(
 				sentence.size());
 		HmmModel hmm_model = forward.getHmmModel();
-
-		double[] emmission_scores = new double[model.getTagTable().size()];
+		int[] outputs = hmm_model.getOutputIndexes(sentence);
+		double[] emmission_scores = null;
 
 		for (int t = 0; t < sentence.size(); t++) {
 
@@ -285,8 +314,7 @@ public class CoarseToFineDecoder implements Decoder {
 						.get(t - 1);
 				transition_scores[t] = new double[last_candidates.size()][current_candidates
 						.size()];
-				Arrays.fill(emmission_scores, 0.0);
-				hmm_model.getEmissions(sentence.get(t).getWordForm(), emmission_scores);
+				emmission_scores = hmm_model.getEmissions(outputs[t]);
 			}
 
 			for (int candidate : candidates.get(t)) {
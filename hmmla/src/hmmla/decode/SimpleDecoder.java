@@ -22,9 +22,11 @@ import java.util.Map;
 
 
 
+// The charts are the only state that changes while decoding. Every thread
+// gets its own, so bestPath can be called concurrently.
 public class SimpleDecoder implements Decoder {
-	protected ForwardChart forward_;
-	protected BackwardChart backward_;
+	private ThreadLocal<ForwardChart> forward_;
+	private ThreadLocal<BackwardChart> backward_;
 	protected SymbolTable<String> tag_table_;
 	protected SymbolTable<String> outputTable_;
 	protected Map<String, Tree> clustering_;
@@ -36,16 +38,29 @@ public class SimpleDecoder implements Decoder {
 		this(model, hmm_model, true);
 	}
 
-	public SimpleDecoder(Model model, HmmModel hmm_model,
+	public SimpleDecoder(Model model, final HmmModel hmm_model,
 			boolean top_level) {
 		model_ = model;
 		clustering_ = model.getClustering();
 		tag_table_ = model.getTagTable();
 		outputTable_ = model.getWordTable();
-		forward_ = new ForwardChart();
-		forward_.init(tag_table_.size(), hmm_model);
-		backward_ = new BackwardChart();
-		backward_.init(tag_table_.size(), hmm_model);
+		final int num_tags = tag_table_.size();
+		forward_ = new ThreadLocal<ForwardChart>() {
+			@Override
+			protected ForwardChart initialValue() {
+				ForwardChart chart = new ForwardChart();
+				chart.init(num_tags, hmm_model);
+				return chart;
+			}
+		};
+		backward_ = new ThreadLocal<BackwardChart>() {
+			@Override
+			protected BackwardChart initialValue() {
+				BackwardChart chart = new BackwardChart();
+				chart.init(num_tags, hmm_model);
+				return chart;
+			}
+		};
 		decode_top_level_ = top_level;
 		top_level_ = model.getTopLevel();
 	}
@@ -57,9 +72,11 @@ public class SimpleDecoder implements Decoder {
 
 	private List<String> bestPath_(List<Iterable<Integer>> candidates,
 			Sentence sentence) {
-		forward_.update(candidates, sentence);
+		ForwardChart forward = forward_.get();
+		BackwardChart backward = backward_.get();
+		forward.update(candidates, sentence);
 		Collections.reverse(candidates);
-		backward_.update(candidates, sentence);
+		backward.update(candidates, sentence);
 		Collections.reverse(candidates);
 		
 		List<String> path = new ArrayList<String>(sentence.size());
@@ -74,7 +91,7 @@ public class SimpleDecoder implements Decoder {
 					continue;
 				}
 
-				double prob = forward_.score(t, i) + backward_.score(t, i);
+				double prob = forward.score(t, i) + backward.score(t, i);
 
 				if (decode_top_level_) {
 					Tree tree = clustering_.get(name);
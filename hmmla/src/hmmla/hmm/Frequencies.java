@@ -0,0 +1,30 @@
+// Copyright 2014 Thomas Müller
+// This file is part of HMMLA, which is licensed under GPLv3.
+
+package hmmla.hmm;
+
+// Read access to the transition and emission frequencies of a model. This is
+// all an HmmTrainer needs to estimate an HMM.
+public interface Frequencies {
+	public int getNumTags();
+
+	public int getNumOutputs();
+
+	public double getTransitions(int i, int j);
+
+	public double getEmissions(int i, int o);
+
+	// Writes the emissions of output o to scores, which is indexed by tag.
+	public void getEmissions(int o, double[] scores);
+
+	// The stored emissions of output o can be read by entry, see Statistics.
+	public int getNumEmissionEntries(int o);
+
+	public int getEmissionTag(int o, int entry);
+
+	public double getEmissionEntry(int o, int entry);
+
+	// Adds the emission frequencies of tag i to freqs, which is indexed by
+	// output.
+	public void addTagEmissions(int i, double[] freqs);
+}
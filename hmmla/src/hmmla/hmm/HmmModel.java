@@ -3,8 +3,15 @@
 
 package hmmla.hmm;
 
+import hmmla.io.Sentence;
+
 public interface HmmModel {
 	void getTransitions(int i, double[] scores);
 	double getTransitions(int i, int j);
 	void getEmissions(String word, double[] scores);
+	// The outputs of the tokens, see Model.getOutputIndex.
+	int[] getOutputIndexes(Sentence sentence);
+	// Returns the log-probabilities of an output indexed by tag. The row is
+	// shared and must not be modified.
+	double[] getEmissions(int output);
 }
@@ -5,4 +5,8 @@ package hmmla.hmm;
 
 public interface HmmTrainer {
 	public HmmModel train(Model model);
+
+	// Estimates the HMM from frequencies instead of the statistics of the
+	// model, which only provides the tables and signatures.
+	public HmmModel train(Model model, Frequencies frequencies);
 }
@@ -30,10 +30,12 @@ public class LinearSmoother extends Smoother {
 	private void smooth(int tag_index, double[] backoff, Model model,
 			Statistics statistics, Type type) {
 		int number = getNumber(model, type);
+		double[] freqs = new double[number];
+		addFreqs(model.getStatistics(), tag_index, type, freqs);
 		double total = 0;
 		double total_backoff = 0;
 		for (int index = 0; index < number; index ++) {
-			total += getFreq(model.getStatistics(), tag_index, index, type);
+			total += freqs[index];
 			total_backoff += backoff[index];
 		}
 		
@@ -43,7 +45,7 @@ public class LinearSmoother extends Smoother {
 		
 		assert (total_backoff > 1.e-20);
 		for (int index = 0; index < number; index ++) {
-			double prob = getFreq(model.getStatistics(), tag_index, index, type) / total;
+			double prob = freqs[index] / total;
 			double backoff_prob = backoff[index] / total_backoff;
 
 			prob = (1 - param_) * prob + (param_* backoff_prob);
@@ -62,9 +64,7 @@ public class LinearSmoother extends Smoother {
 		for (Tree tree : leaves) {
 			String tag_name = tree.getName();
 			int tag_index = model.getTagTable().toIndex(tag_name);
-			for (int index = 0; index < number; index ++) {
-				freq[index] += getFreq(model.getStatistics(), tag_index, index, type);
-			}
+			addFreqs(model.getStatistics(), tag_index, type, freq);
 		}
 		return freq;
 	}
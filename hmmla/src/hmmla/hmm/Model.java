@@ -6,6 +6,7 @@ package hmmla.hmm;
 import hmmla.Properties;
 import hmmla.io.Sentence;
 import hmmla.io.Token;
+import hmmla.util.Ling;
 import hmmla.util.SuffixTrie;
 import hmmla.util.SymbolTable;
 
@@ -43,6 +44,14 @@ public class Model implements Serializable {
 	private Set<String> rare_;
 	private Set<String> vocab_;
 	private SuffixTrie suffix_trie_;
+	private transient volatile Signatures signatures_;
+
+	// The signatures of the known words. Built lazily, as they depend on the
+	// suffix trie and the properties.
+	private static class Signatures {
+		private Map<String, Integer> indexes;
+		private int[] word_signatures;
+	}
 
 	public Model(Model model) {
 		word_table_ = model.getWordTable();
@@ -276,10 +285,12 @@ public class Model implements Serializable {
 
 	public void setVocab(Set<String> vocab) {
 		vocab_ = vocab;
+		signatures_ = null;
 	}
 
 	public void setWordTable(SymbolTable<String> word_table) {
 		word_table_ = word_table;
+		signatures_ = null;
 	}
 
 	public void setTopLevel(Map<String, Tree> top_level) {
@@ -288,6 +299,7 @@ public class Model implements Serializable {
 
 	public void setSuffixTrie(SuffixTrie trie) {
 		suffix_trie_ = trie;
+		signatures_ = null;
 	}
 
 	public SuffixTrie getSuffixTrie() {
@@ -296,6 +308,90 @@ public class Model implements Serializable {
 
 	public void setProperties(Properties props) {
 		props_ = props;
+		signatures_ = null;
+	}
+
+	private Signatures getSignatures() {
+		Signatures signatures = signatures_;
+		if (signatures != null) {
+			return signatures;
+		}
+		return buildSignatures();
+	}
+
+	private synchronized Signatures buildSignatures() {
+		if (signatures_ != null) {
+			return signatures_;
+		}
+
+		Signatures signatures = new Signatures();
+		signatures.indexes = new HashMap<String, Integer>();
+		signatures.word_signatures = new int[word_table_.size()];
+		for (Entry<String, Integer> entry : word_table_.entrySet()) {
+			String signature = Ling.signature(entry.getKey(), this);
+			Integer signature_index = signatures.indexes.get(signature);
+			if (signature_index == null) {
+				signature_index = signatures.indexes.size();
+				signatures.indexes.put(signature, signature_index);
+			}
+			signatures.word_signatures[entry.getValue()] = signature_index;
+		}
+		signatures_ = signatures;
+		return signatures;
+	}
+
+	// For a copy that only differs in its tags: Shares the suffix trie and
+	// the signatures, and with them the output indexes of the sentences.
+	public void shareSignatures(Model model) {
+		suffix_trie_ = model.getSuffixTrie();
+		signatures_ = model.getSignatures();
+	}
+
+	public int getNumSignatures() {
+		return getSignatures().indexes.size();
+	}
+
+	public int getWordSignature(int word_index) {
+		return getSignatures().word_signatures[word_index];
+	}
+
+	// Resolves a word form to an output of the HmmModels: A known word is
+	// resolved to its word index and an unknown word to the number of words
+	// plus the index of its signature. Unknown words whose signature no known
+	// word has are resolved to -1.
+	public int getOutputIndex(String word) {
+		return getOutputIndex(getSignatures(), word);
+	}
+
+	private int getOutputIndex(Signatures signatures, String word) {
+		if (word_table_.hasSymbol(word)) {
+			return word_table_.toIndex(word);
+		}
+
+		String signature = Ling.signature(word, this);
+		Integer signature_index = signatures.indexes.get(signature);
+		if (signature_index == null) {
+			System.err.format("Warning: Unknown signature: %s (%s)\n", signature, word);
+			return -1;
+		}
+		return word_table_.size() + signature_index;
+	}
+
+	// The output indexes are resolved once and then cached in the sentence.
+	public int[] getOutputIndexes(Sentence sentence) {
+		Signatures signatures = getSignatures();
+		int[] indexes = sentence.getOutputIndexes(signatures);
+		if (indexes != null) {
+			return indexes;
+		}
+
+		indexes = new int[sentence.size()];
+		for (int t = 0; t < sentence.size(); t++) {
+			indexes[t] = getOutputIndex(signatures, sentence.get(t)
+					.getWordForm());
+		}
+		sentence.setOutputIndexes(signatures, indexes);
+		return indexes;
 	}
 
 	public int getNumTags() {
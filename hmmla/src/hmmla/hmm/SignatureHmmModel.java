@@ -3,22 +3,23 @@
 
 package hmmla.hmm;
 
-import hmmla.util.Ling;
-
-import java.util.Map;
+import hmmla.io.Sentence;
 
 
 public class SignatureHmmModel implements HmmModel {
 
 	HmmModel hmm_model_;
-	Map<String, double[]> signature_map_;
+	// The log-probabilities of the unknown words indexed by signature.
+	double[][] signature_emissions_;
 	Model model_;
+	int num_words_;
 	
 	public SignatureHmmModel(HmmModel hmm_model,
-			Map<String, double[]> signature_map, Model model) {
+			double[][] signature_emissions, Model model) {
 		hmm_model_ = hmm_model;
-		signature_map_ = signature_map;
+		signature_emissions_ = signature_emissions;
 		model_ = model;
+		num_words_ = model.getWordTable().size();
 	}
 
 	@Override
@@ -33,20 +34,21 @@ public class SignatureHmmModel implements HmmModel {
 
 	@Override
 	public void getEmissions(String word, double[] scores) {
-		if (model_.isKnown(word)) {
-			hmm_model_.getEmissions(word, scores);
-			return;
-		} 
-		
-		String signature = Ling.signature(word, model_);
-
-		double[] probs = signature_map_.get(signature);			
-		if (probs == null) {
-			System.err.format("Warning: Unknown signature: %s (%s)\n", signature, word);
-			hmm_model_.getEmissions(word, scores);
-			return;
+		double[] emissions = getEmissions(model_.getOutputIndex(word));
+		System.arraycopy(emissions, 0, scores, 0, scores.length);
+	}
+
+	@Override
+	public int[] getOutputIndexes(Sentence sentence) {
+		return model_.getOutputIndexes(sentence);
+	}
+
+	@Override
+	public double[] getEmissions(int output) {
+		int signature = output - num_words_;
+		if (signature < 0) {
+			return hmm_model_.getEmissions(output);
 		}
-		
-		System.arraycopy(probs, 0, scores, 0, scores.length);
+		return signature_emissions_[signature];
 	}
 }
@@ -3,11 +3,7 @@
 
 package hmmla.hmm;
 
-import hmmla.util.Ling;
-
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 
 public class SignatureHmmTrainer implements HmmTrainer {
@@ -23,31 +19,29 @@ public class SignatureHmmTrainer implements HmmTrainer {
 		delta_t_ = delta_t;
 	}
 
-	public Map<String, double[]> getUnknownClassProbs(Model model) {
-		Map<String, double[]> map = new HashMap<String, double[]>();
-		Statistics statistics = model.getStatistics();
-		for (Entry<String, Integer> entry : model.getWordTable().entrySet()) {
-			String output = entry.getKey();
-			String signature = Ling.signature(output, model);
-
-			double[] freqs = map.get(signature);
+	// Returns the class probabilities indexed by the signatures of the model.
+	public double[][] getUnknownClassProbs(Model model) {
+		return getUnknownClassProbs(model, model.getStatistics());
+	}
 
-			if (freqs == null) {
-				freqs = new double[statistics.getNumTags()];
-				map.put(signature, freqs);
-			}
+	private double[][] getUnknownClassProbs(Model model,
+			Frequencies statistics) {
+		double[][] signature_freqs = new double[model.getNumSignatures()][statistics
+				.getNumTags()];
+		double[] word_freqs = new double[statistics.getNumTags()];
+		for (Map.Entry<String, Integer> entry : model.getWordTable().entrySet()) {
+			int word_index = entry.getValue();
+			double[] freqs = signature_freqs[model.getWordSignature(word_index)];
 
+			statistics.getEmissions(word_index, word_freqs);
 			for (int index = 0; index < freqs.length; index++) {
-				freqs[index] += statistics
-						.getEmissions(index, entry.getValue());
+				freqs[index] += word_freqs[index];
 			}
 		}
 		
-		for (Entry<String, double[]> entry : map.entrySet()) {
+		for (double[] freqs : signature_freqs) {
 			double total = 0.0;
 			
-			double[] freqs = entry.getValue();
-			
 			for (int tag = 0; tag < statistics.getNumTags(); tag ++) {
 				freqs[tag] += delta_e_;
 				total += freqs[tag];
@@ -57,21 +51,45 @@ public class SignatureHmmTrainer implements HmmTrainer {
 			}		
 		}
 		
-		return map;
+		return signature_freqs;
 	}
 
 	@Override
 	public HmmModel train(Model model) {
-		SimpleHmmModel hmm_model = (SimpleHmmModel) trainer_.train(model);
+		return train(model, model.getStatistics());
+	}
+
+	@Override
+	public HmmModel train(Model model, Frequencies statistics) {
+		SimpleHmmModel hmm_model = trainSimpleModel(model, statistics);
 
-		Map<String, double[]> signature_map = getUnknownClassProbs(model);
+		double[][] signature_probs = getUnknownClassProbs(model, statistics);
 
-		smoothEmissionProbs(hmm_model.getStatistics(), model, signature_map);
+		smoothEmissionProbs(hmm_model.getStatistics(), model, statistics,
+				signature_probs);
 
-		return new SignatureHmmModel(hmm_model, signature_map, model);
+		return new SignatureHmmModel(hmm_model, signature_probs, model);
 	}
 
-	private double[] getTagPrior(Statistics statistics) {
+	// The smoothing sets the emission probabilities of all known words, so
+	// the unsmoothed ones are only needed if the word table has unknown words.
+	private SimpleHmmModel trainSimpleModel(Model model, Frequencies statistics) {
+		for (String word_form : model.getWordTable().getSymbols()) {
+			if (!model.isKnown(word_form)) {
+				return (SimpleHmmModel) trainer_.train(model, statistics);
+			}
+		}
+
+		int num_tags = model.getTagTable().size();
+		int num_outputs = model.getWordTable().size();
+		Statistics normalized_stats = new Statistics(num_tags, num_outputs,
+				true);
+		trainer_.setTransmissionProbabilities(model, statistics,
+				normalized_stats);
+		return new SimpleHmmModel(normalized_stats, model);
+	}
+
+	private double[] getTagPrior(Frequencies statistics) {
 		double[] tag_prior = new double[statistics.getNumTags()];
 		double total_freq = 0;
 		for (int tag = 0; tag < statistics.getNumTags(); tag++) {
@@ -92,19 +110,17 @@ public class SignatureHmmTrainer implements HmmTrainer {
 	}
 
 	private void smoothEmissionProbs(Statistics output_statistics, Model model,
-			Map<String, double[]> signature_map) {
-
-		Statistics statistics = model.getStatistics();
+			Frequencies statistics, double[][] signature_probs) {
 
 		double[] tag_prior = getTagPrior(statistics);
+		double[] freqs = new double[statistics.getNumTags()];
 
 		for (Map.Entry<String, Integer> form_entry : model.getWordTable()
 				.entrySet()) {
 			String word_form = form_entry.getKey();
-			String signature = Ling.signature(word_form, model);
 			int word_index = form_entry.getValue();
-			double[] backoff_log_probs = signature_map.get(signature);
-			assert backoff_log_probs != null;
+			double[] backoff_log_probs = signature_probs[model
+					.getWordSignature(word_index)];
 			double backoff_factor = 0;
 			double total_freq = 0;
 			
@@ -113,8 +129,9 @@ public class SignatureHmmTrainer implements HmmTrainer {
 				continue;
 			}
 
+			statistics.getEmissions(word_index, freqs);
 			for (int tag = 0; tag < statistics.getNumTags(); tag++) {
-				double freq = statistics.getEmissions(tag, word_index);
+				double freq = freqs[tag];
 				total_freq += freq;
 				backoff_factor += (freq > 1.) ? 1. : freq;
 			}
@@ -132,7 +149,7 @@ public class SignatureHmmTrainer implements HmmTrainer {
 			double prob_sum = 0;
 			
 			for (int tag = 0; tag < statistics.getNumTags(); tag++) {
-				double freq = statistics.getEmissions(tag, word_index);
+				double freq = freqs[tag];
 				double backoff_prob = backoff_log_probs[tag];
 				assert backoff_prob > 0;
 				double prob = (freq + backoff_factor * backoff_prob) / (total_freq + backoff_factor);
@@ -140,6 +157,10 @@ public class SignatureHmmTrainer implements HmmTrainer {
 				prob /= tag_prior[tag];
 				double log_prob = Math.log(prob);
 				assert log_prob != Double.NEGATIVE_INFINITY;
+				if (tag == Model.BorderIndex) {
+					// The HMM returns its rows as is.
+					log_prob = Double.NEGATIVE_INFINITY;
+				}
 				output_statistics.setEmissions(tag, word_index, log_prob);
 			}
 			
@@ -147,9 +168,9 @@ public class SignatureHmmTrainer implements HmmTrainer {
 			
 		}
 
-		for (Entry<String, double[]> entry : signature_map.entrySet()) {
+		for (double[] probs : signature_probs) {
 			for (int tag = 0; tag < statistics.getNumTags(); tag ++) {
-				entry.getValue()[tag] = Math.log(entry.getValue()[tag] / tag_prior[tag]); 
+				probs[tag] = Math.log(probs[tag] / tag_prior[tag]); 
 			}
 		}
 	}
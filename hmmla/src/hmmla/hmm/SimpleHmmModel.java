@@ -3,16 +3,18 @@
 
 package hmmla.hmm;
 
-import java.util.Arrays;
-import java.util.NoSuchElementException;
+import hmmla.io.Sentence;
 
 public class SimpleHmmModel implements HmmModel {
 	protected Model model_;
 	private Statistics normalized_stats_;
+	private double[] unknown_emissions_;
 
 	public SimpleHmmModel(Statistics normalized_stats, Model model) {
 		model_ = model;
 		normalized_stats_ = normalized_stats;
+		unknown_emissions_ = new double[normalized_stats.getNumTags()];
+		unknown_emissions_[Model.BorderIndex] = Double.NEGATIVE_INFINITY;
 	}
 
 	@Override
@@ -29,15 +31,22 @@ public class SimpleHmmModel implements HmmModel {
 
 	@Override
 	public void getEmissions(String word, double[] scores) {
-		try {
-			int index = model_.getWordTable().toIndex(word);
-			for (int j = 0; j < scores.length; j++) {
-				scores[j] = getEmissions(j, index);
-			}
-		} catch (NoSuchElementException e) {
-			Arrays.fill(scores, 0.0);
+		double[] emissions = getEmissions(model_.getOutputIndex(word));
+		System.arraycopy(emissions, 0, scores, 0, scores.length);
+	}
+
+	@Override
+	public int[] getOutputIndexes(Sentence sentence) {
+		return model_.getOutputIndexes(sentence);
+	}
+
+	// Unknown words have the same emission score for all tags.
+	@Override
+	public double[] getEmissions(int output) {
+		if (output < 0 || output >= normalized_stats_.getNumOutputs()) {
+			return unknown_emissions_;
 		}
-		scores[Model.BorderIndex] = Double.NEGATIVE_INFINITY;
+		return normalized_stats_.getEmissionRow(output);
 	}
 
 	@Override
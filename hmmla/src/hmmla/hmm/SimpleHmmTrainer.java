@@ -5,8 +5,6 @@ package hmmla.hmm;
 
 import hmmla.util.SymbolTable;
 
-import java.util.Map.Entry;
-
 public class SimpleHmmTrainer implements HmmTrainer {
 
 	private double delta_e;
@@ -19,18 +17,24 @@ public class SimpleHmmTrainer implements HmmTrainer {
 
 	@Override
 	public HmmModel train(Model model) {
+		return train(model, model.getStatistics());
+	}
+
+	@Override
+	public HmmModel train(Model model, Frequencies statistics) {
 		int num_tags = model.getTagTable().size();
 		int num_outputs = model.getWordTable().size();
-		Statistics normalized_stats = new Statistics(num_tags, num_outputs);
-		setTransmissionProbabilities(model, normalized_stats);	
-		setEmissionProbabilities(model, normalized_stats);
+		// Log-probabilities are defined for all tags and outputs.
+		Statistics normalized_stats = new Statistics(num_tags, num_outputs,
+				true);
+		setTransmissionProbabilities(model, statistics, normalized_stats);
+		setEmissionProbabilities(model, statistics, normalized_stats);
 		return new SimpleHmmModel(normalized_stats, model);
 	}
 
 	protected void setTransmissionProbabilities(Model model,
-			Statistics normalized_stats) {
+			Frequencies statistics, Statistics normalized_stats) {
 		SymbolTable<String> tags = model.getTagTable();
-		Statistics statistics = model.getStatistics();
 		int num_tags = tags.size();
 
 		for (int fromIndex = 0; fromIndex < num_tags; fromIndex++) {
@@ -52,34 +56,37 @@ public class SimpleHmmTrainer implements HmmTrainer {
 	}
 
 	protected void setEmissionProbabilities(Model model,
-			Statistics normalized_stats) {
+			Frequencies statistics, Statistics normalized_stats) {
 		SymbolTable<String> tag_table = model.getTagTable();
 		SymbolTable<String> word_table = model.getWordTable();
-		Statistics statistics = model.getStatistics();
 		int num_outputs = word_table.size();
 		int num_tags = tag_table.size();
 
-		for (int tag = 0; tag < num_tags; tag++) {
+		// The frequencies are read output by output, as the statistics store
+		// them. Every total is still summed up in the order of the outputs.
+		double[] freqs = new double[num_tags];
+		double[] totals = new double[num_tags];
+		for (int output = 0; output < num_outputs; output ++) {
+			statistics.getEmissions(output, freqs);
+			for (int tag = 0; tag < num_tags; tag++) {
+				totals[tag] += freqs[tag] + delta_e;
+			}
+		}
+
+		for (int output = 0; output < num_outputs; output ++) {
+			statistics.getEmissions(output, freqs);
+			for (int tag = 0; tag < num_tags; tag++) {
 
-			if (tag == Model.BorderIndex) {
-				for (Entry<String, Integer> entry : word_table.entrySet()) {
-					normalized_stats.setEmissions(tag, entry.getValue(),
+				if (tag == Model.BorderIndex) {
+					normalized_stats.setEmissions(tag, output,
 							Double.NEGATIVE_INFINITY);
+					continue;
 				}
-				continue;
-			}
-			
-			double total = 0;
-			for (int output = 0; output < num_outputs; output ++) {
-				total += statistics.getEmissions(tag, output) + delta_e;
-			}
 
-			for (int output = 0; output < num_outputs; output ++) {			
-				double freq = statistics.getEmissions(tag, output) + delta_e;			
-				double prob = freq / total;
+				double freq = freqs[tag] + delta_e;
+				double prob = freq / totals[tag];
 				normalized_stats.setEmissions(tag, output, Math.log(prob));
 			}
-
 		}
 	}
 }
@@ -32,6 +32,19 @@ public abstract class Smoother implements Serializable {
 		return unsmoothed_statistics.getTransitions(tag, index);
 	}
 
+	// Adds the frequencies of tag to freqs, the same as adding getFreq for
+	// every index.
+	protected void addFreqs(Statistics unsmoothed_statistics, int tag,
+			Type type, double[] freqs) {
+		if (type == Type.Emission) {
+			unsmoothed_statistics.addTagEmissions(tag, freqs);
+			return;
+		}
+		for (int index = 0; index < freqs.length; index++) {
+			freqs[index] += unsmoothed_statistics.getTransitions(tag, index);
+		}
+	}
+
 	protected void setFreq(Model model, Statistics statistics, int tag_index, int index,
 			Type type, double d) {
 		if (type == Type.Emission) {
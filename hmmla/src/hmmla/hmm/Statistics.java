@@ -7,21 +7,53 @@ import hmmla.util.Arrays;
 import hmmla.util.Numerics;
 import hmmla.util.SymbolTable;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
-public class Statistics implements Serializable {
+// Emission frequencies are sparse: Every word only stores the tags it has a
+// frequency for (the latent tags whose top-level tag emitted the word and,
+// after smoothing, their siblings) in increasing order. The normalized
+// log-probabilities of an HMM are dense and use dense emissions instead,
+// which are stored as one row of tags per output.
+public class Statistics implements Frequencies, Serializable {
 
 	private static final long serialVersionUID = 1L;
+	private static final int INITIAL_ROW_CAPACITY = 2;
 	protected int num_tags;
 	protected int num_words;
+	// Null if the emissions are sparse.
+	private double[][] output_emissions;
+	// The dense emissions of models written before they were stored by
+	// output, indexed by tag. Converted and set to null on load.
 	private double[][] emissions;
-	public double[][] transistions;
+	private int[][] emission_tags;
+	private double[][] emission_values;
+	private int[] emission_sizes;
+	private transient volatile TagIndex tag_index;
+	private double[][] transistions;
+
+	// The outputs every tag has an entry for, in increasing order.
+	private static class TagIndex {
+		private int[][] outputs;
+		private int[] sizes;
+	}
 	
 	public Statistics(int num_tags,int num_words){
+		this(num_tags, num_words, false);
+	}
+
+	public Statistics(int num_tags, int num_words, boolean dense_emissions) {
 		this.num_tags = num_tags;
 		this.num_words = num_words;
 		
-		emissions = new double[num_tags][num_words];
+		if (dense_emissions) {
+			output_emissions = new double[num_words][num_tags];
+		} else {
+			emission_tags = new int[num_words][];
+			emission_values = new double[num_words][];
+			emission_sizes = new int[num_words];
+		}
 		transistions = new double[num_tags][num_tags];
 		setZero();
 	}
@@ -31,13 +63,32 @@ public class Statistics implements Serializable {
 	}
 
 	public Statistics(Statistics statistics) {
-		this(statistics.num_tags,statistics.num_words);
+		this(statistics.num_tags, statistics.num_words,
+				statistics.output_emissions != null);
 		add(statistics);
 	}
 
+	private void readObject(ObjectInputStream ois) throws IOException,
+			ClassNotFoundException {
+		ois.defaultReadObject();
+		if (emissions != null) {
+			output_emissions = new double[num_words][num_tags];
+			for (int i = 0; i < num_tags; i++) {
+				for (int o = 0; o < num_words; o++) {
+					output_emissions[o][i] = emissions[i][o];
+				}
+			}
+			emissions = null;
+		}
+	}
+
 	public void set(double[][] tr, double[][] em) {
 		Arrays.multiArrayCopy(tr, transistions);
-		Arrays.multiArrayCopy(em, emissions);
+		for (int i = 0; i < num_tags; i++) {
+			for (int o = 0; o < num_words; o++) {
+				setEmissions(i, o, em[i][o]);
+			}
+		}
 	}
 
 	public double getTransitions(int i, int j) {
@@ -45,27 +96,181 @@ public class Statistics implements Serializable {
 	}
 	
 	public double getEmissions(int i, int o) {
-		return emissions[i][o];
+		if (output_emissions != null) {
+			return output_emissions[o][i];
+		}
+		int entry = findEntry(i, o);
+		if (entry < 0) {
+			return 0.0;
+		}
+		return emission_values[o][entry];
+	}
+
+	// The stored emissions of output o can be read by entry: For dense
+	// emissions the entries are all tags, for sparse emissions the tags the
+	// output has a frequency for.
+	public int getNumEmissionEntries(int o) {
+		if (output_emissions != null) {
+			return num_tags;
+		}
+		return emission_sizes[o];
+	}
+
+	public int getEmissionTag(int o, int entry) {
+		if (output_emissions != null) {
+			return entry;
+		}
+		return emission_tags[o][entry];
+	}
+
+	public double getEmissionEntry(int o, int entry) {
+		if (output_emissions != null) {
+			return output_emissions[o][entry];
+		}
+		return emission_values[o][entry];
+	}
+
+	public void getEmissions(int o, double[] scores) {
+		if (output_emissions != null) {
+			System.arraycopy(output_emissions[o], 0, scores, 0, num_tags);
+			return;
+		}
+		java.util.Arrays.fill(scores, 0, num_tags, 0.0);
+		for (int entry = 0; entry < emission_sizes[o]; entry++) {
+			scores[emission_tags[o][entry]] = emission_values[o][entry];
+		}
+	}
+
+	// Returns the stored row of output o. Only dense emissions have rows.
+	public double[] getEmissionRow(int o) {
+		if (output_emissions == null) {
+			throw new UnsupportedOperationException(
+					"Sparse emissions have no rows");
+		}
+		return output_emissions[o];
+	}
+
+	// Adds the emission frequencies of tag i to freqs, which is indexed by
+	// output.
+	public void addTagEmissions(int i, double[] freqs) {
+		if (output_emissions != null) {
+			for (int o = 0; o < num_words; o++) {
+				freqs[o] += output_emissions[o][i];
+			}
+			return;
+		}
+		TagIndex index = getTagIndex();
+		int[] outputs = index.outputs[i];
+		for (int k = 0; k < index.sizes[i]; k++) {
+			int o = outputs[k];
+			freqs[o] += emission_values[o][findEntry(i, o)];
+		}
+	}
+
+	private TagIndex getTagIndex() {
+		TagIndex index = tag_index;
+		if (index != null) {
+			return index;
+		}
+
+		index = new TagIndex();
+		index.sizes = new int[num_tags];
+		for (int o = 0; o < num_words; o++) {
+			for (int entry = 0; entry < emission_sizes[o]; entry++) {
+				index.sizes[emission_tags[o][entry]]++;
+			}
+		}
+		index.outputs = new int[num_tags][];
+		for (int i = 0; i < num_tags; i++) {
+			index.outputs[i] = new int[index.sizes[i]];
+			index.sizes[i] = 0;
+		}
+		for (int o = 0; o < num_words; o++) {
+			for (int entry = 0; entry < emission_sizes[o]; entry++) {
+				int i = emission_tags[o][entry];
+				index.outputs[i][index.sizes[i]++] = o;
+			}
+		}
+		tag_index = index;
+		return index;
+	}
+
+	// Returns -(insertion point) - 1 if the tag has no entry.
+	private int findEntry(int i, int o) {
+		int[] tags = emission_tags[o];
+		if (tags == null) {
+			return -1;
+		}
+		return java.util.Arrays.binarySearch(tags, 0, emission_sizes[o], i);
+	}
+
+	private int insertEntry(int i, int o, int entry) {
+		int position = -entry - 1;
+		int size = emission_sizes[o];
+		int[] tags = emission_tags[o];
+		double[] values = emission_values[o];
+
+		if (tags == null) {
+			tags = new int[INITIAL_ROW_CAPACITY];
+			values = new double[INITIAL_ROW_CAPACITY];
+		} else if (size == tags.length) {
+			int capacity = Math.min(2 * size, num_tags);
+			tags = java.util.Arrays.copyOf(tags, capacity);
+			values = java.util.Arrays.copyOf(values, capacity);
+		}
+
+		System.arraycopy(tags, position, tags, position + 1, size - position);
+		System.arraycopy(values, position, values, position + 1, size
+				- position);
+		tags[position] = i;
+		values[position] = 0.0;
+
+		emission_tags[o] = tags;
+		emission_values[o] = values;
+		emission_sizes[o] = size + 1;
+		tag_index = null;
+		return position;
 	}
 
 	public void setZero() {
 		
 		for (int i=0;i<num_tags;i++){
 
-			for (int o=0;o<num_words;o++){
-				emissions[i][o] = 0.0;
-			}
-
 			for (int j=0;j<num_tags;j++){
 				transistions[i][j] = 0.0;
 			}
 
 		}
+
+		if (output_emissions != null) {
+			for (int o = 0; o < num_words; o++) {
+				java.util.Arrays.fill(output_emissions[o], 0.0);
+			}
+		} else {
+			// Keeps the entries, the next E-step fills the same ones.
+			for (int o = 0; o < num_words; o++) {
+				if (emission_values[o] != null) {
+					java.util.Arrays.fill(emission_values[o], 0,
+							emission_sizes[o], 0.0);
+				}
+			}
+		}
 		
 	}
 
 	public void addEmissions(int toIndex, int output, double p) {
-		emissions[toIndex][output] += p;
+		if (output_emissions != null) {
+			output_emissions[output][toIndex] += p;
+			return;
+		}
+		int entry = findEntry(toIndex, output);
+		if (entry < 0) {
+			if (p == 0.0) {
+				return;
+			}
+			entry = insertEntry(toIndex, output, entry);
+		}
+		emission_values[output][entry] += p;
 	}
 
 	public void addTransitions(int from, int to, double p) {
@@ -77,22 +282,37 @@ public class Statistics implements Serializable {
 	}
 
 	public void setEmissions(int from, int o, double p) {
-		emissions[from][o] = p;
+		if (output_emissions != null) {
+			output_emissions[o][from] = p;
+			return;
+		}
+		int entry = findEntry(from, o);
+		if (entry < 0) {
+			if (p == 0.0) {
+				return;
+			}
+			entry = insertEntry(from, o, entry);
+		}
+		emission_values[o][entry] = p;
 	}
 
 	public void add(Statistics statistics) {
 			
 		for (int i=0;i<num_tags;i++){
 
-			for (int o=0;o<num_words;o++){
-				addEmissions(i, o, statistics.getEmissions(i, o));
-			}
-
 			for (int j=0;j<num_tags;j++){
 				addTransitions(i, j, statistics.getTransitions(i, j));
 			}
 			
 		}
+
+		for (int o = 0; o < num_words; o++) {
+			int num_entries = statistics.getNumEmissionEntries(o);
+			for (int entry = 0; entry < num_entries; entry++) {
+				addEmissions(statistics.getEmissionTag(o, entry), o,
+						statistics.getEmissionEntry(o, entry));
+			}
+		}
 	}
 
 	public int getNumTags() {
@@ -134,9 +354,10 @@ public class Statistics implements Serializable {
 		
 		double total = 0.0;
 		
-		for (int i=0;i<num_tags;i++){
-			for (int o=0;o<num_words;o++){
-				total += getEmissions(i, o);
+		for (int o = 0; o < num_words; o++) {
+			int num_entries = getNumEmissionEntries(o);
+			for (int entry = 0; entry < num_entries; entry++) {
+				total += getEmissionEntry(o, entry);
 			}
 		}
 		
@@ -27,10 +27,7 @@ public class WbSmoother extends Smoother {
 		for (Tree leaf : leaves) {
 			int tag_index = model.getTagTable()
 					.toIndex(leaf.getName(), false);
-			for (int index = 0; index < freqs.length; index++) {
-				freqs[index] += getFreq(unsmoothed_statistics, tag_index,
-						index, type);
-			}
+			addFreqs(unsmoothed_statistics, tag_index, type, freqs);
 		}
 	}
 
@@ -11,6 +11,14 @@ import java.util.List;
 public class Sentence extends AbstractList<Token> implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private List<Token> tokens_;
+	private transient volatile OutputIndexes output_indexes_;
+
+	// The output indexes of the tokens and the key of the index they were
+	// resolved with, see Model.getOutputIndexes.
+	private static class OutputIndexes {
+		private Object key;
+		private int[] indexes;
+	}
 
 	public Sentence(List<Token> tokens) {
 		tokens_ = new ArrayList<Token>(tokens);
@@ -64,6 +72,21 @@ public class Sentence extends AbstractList<Token> implements Serializable {
 		return tokens_.size();
 	}
 
+	public int[] getOutputIndexes(Object key) {
+		OutputIndexes output_indexes = output_indexes_;
+		if (output_indexes == null || output_indexes.key != key) {
+			return null;
+		}
+		return output_indexes.indexes;
+	}
+
+	public void setOutputIndexes(Object key, int[] indexes) {
+		OutputIndexes output_indexes = new OutputIndexes();
+		output_indexes.key = key;
+		output_indexes.indexes = indexes;
+		output_indexes_ = output_indexes;
+	}
+
 	public void setTags(List<String> tags) {
 		assert tags.size() == size();
 		for (int index = 0; index < size(); index++) {
@@ -10,25 +10,68 @@ import hmmla.hmm.Statistics;
 import hmmla.hmm.Tree;
 import hmmla.io.Sentence;
 import hmmla.io.Token;
+import hmmla.util.AbstractSPMDCallable;
 import hmmla.util.Numerics;
 import hmmla.util.SymbolTable;
 import hmmla.util.Tuple;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ApproximativeLossEstimator implements LossEstimator {
 
 	ForwardChart forward_;
 	BackwardChart backward_;
 	HmmTrainer trainer_;
+	// Null if the losses are estimated on the calling thread.
+	private List<Worker> workers_;
+
+	// Every worker has its own charts and loss array.
+	private class Worker extends AbstractSPMDCallable<Sentence, double[]> {
+
+		private ApproximativeLossEstimator estimator_;
+		private Model model_;
+		private double[] prior_;
+
+		public Worker() {
+			estimator_ = new ApproximativeLossEstimator(trainer_);
+		}
+
+		public void reset(Iterator<Sentence> iter, Model model,
+				HmmModel hmm_model, double[] prior, int num_losses) {
+			super.reset(iter, new double[num_losses]);
+			estimator_.reset(model, hmm_model);
+			model_ = model;
+			prior_ = prior;
+		}
+
+		@Override
+		protected double[] apply(Sentence sentence, double[] loss) {
+			estimator_.addLoss(model_, sentence, loss, prior_);
+			return loss;
+		}
+	}
 
 	public ApproximativeLossEstimator(HmmTrainer trainer) {
+		this(trainer, 1);
+	}
+
+	public ApproximativeLossEstimator(HmmTrainer trainer, int num_threads) {
 		trainer_ = trainer;
+		if (num_threads > 1) {
+			workers_ = new ArrayList<Worker>(num_threads);
+			for (int i = 0; i < num_threads; i++) {
+				workers_.add(new Worker());
+			}
+		}
 	}
 
 	private void calcPrior(Model model, double[] prior) {
@@ -54,6 +97,23 @@ public class ApproximativeLossEstimator implements LossEstimator {
 		calcPrior(model, prior);
 
 		HmmModel hmm_model = trainer_.train(model);
+		if (workers_ == null) {
+			reset(model, hmm_model);
+			for (Sentence sentence : reader) {
+				addLoss(model, sentence, loss, prior);
+			}
+		} else {
+			addLosses(model, hmm_model, reader, loss, prior);
+		}
+
+		for (int i = 1; i < N + 1; i++) {
+			tuples.add(new Tuple<Integer, Double>(i, loss[i]));
+		}
+	}
+
+	protected void reset(Model model, HmmModel hmm_model) {
+		SymbolTable<String> tagTable = model.getTagTable();
+
 		if (forward_ == null) {
 			forward_ = new ForwardChart();
 		}
@@ -63,14 +123,52 @@ public class ApproximativeLossEstimator implements LossEstimator {
 			backward_ = new BackwardChart();
 		}
 		backward_.init(tagTable.size(), hmm_model);
+	}
 
+	// Every worker sums the losses of a fixed, contiguous shard of the
+	// sentences, and the shards are added up in worker order. Workers taking
+	// the sentences from a shared iterator would make the sums depend on the
+	// thread timing, which can flip the order of near-tied merges.
+	private void addLosses(Model model, HmmModel hmm_model,
+			Iterable<Sentence> reader, double[] loss, double[] prior) {
+		List<Sentence> sentences = new ArrayList<Sentence>();
 		for (Sentence sentence : reader) {
-			addLoss(model, sentence, loss, prior);
+			sentences.add(sentence);
 		}
 
-		for (int i = 1; i < N + 1; i++) {
-			tuples.add(new Tuple<Integer, Double>(i, loss[i]));
+		int num_workers = workers_.size();
+		for (int index = 0; index < num_workers; index++) {
+			int start = (int) ((long) sentences.size() * index / num_workers);
+			int end = (int) ((long) sentences.size() * (index + 1) / num_workers);
+			workers_.get(index).reset(sentences.subList(start, end).iterator(),
+					model, hmm_model, prior, loss.length);
+		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(workers_
+				.size());
+
+		List<Future<double[]>> results = null;
+		try {
+			results = executorService.invokeAll(workers_);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		for (Future<double[]> f : results) {
+			double[] worker_loss;
+			try {
+				worker_loss = f.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+
+			for (int i = 0; i < loss.length; i++) {
+				loss[i] += worker_loss[i];
+			}
 		}
+		executorService.shutdown();
 	}
 
 	protected void addLoss(Model model, Sentence sentence, double[] loss,
@@ -111,10 +209,10 @@ public class ApproximativeLossEstimator implements LossEstimator {
 	}
 
 	protected void addStateLoss(Model model, double[] loss, double[] prior,
-			List<Iterable<Tree>> parents, List<Token> sentence) {
-		double[] scores = new double[model.getTagTable().size()];
+			List<Iterable<Tree>> parents, Sentence sentence) {
 		SymbolTable<String> tag_table = model.getTagTable();
 		HmmModel normalizedStatistics = forward_.getHmmModel();
+		int[] outputs = normalizedStatistics.getOutputIndexes(sentence);
 		int t = 0;
 		for (Iterable<Tree> cparents : parents) {
 			for (Tree parent : cparents) {
@@ -138,9 +236,7 @@ public class ApproximativeLossEstimator implements LossEstimator {
 				int lindex = tag_table.toIndex(parent.getLeft().getName());
 				int rindex = tag_table.toIndex(parent.getRight().getName());
 
-				Arrays.fill(scores, 0.0);
-				normalizedStatistics.getEmissions(
-						sentence.get(t).getWordForm(), scores);
+				double[] scores = normalizedStatistics.getEmissions(outputs[t]);
 
 				double p_w_l = Math.exp(scores[lindex]);
 				double p_w_r = Math.exp(scores[rindex]);
@@ -4,20 +4,19 @@
 package hmmla.splitmerge;
 
 import hmmla.hmm.Model;
-import hmmla.io.Token;
+import hmmla.io.Sentence;
 import hmmla.util.Numerics;
 
 import java.util.Iterator;
-import java.util.List;
 
 
 public class BackwardChart extends ForwardChart {
 
 	@Override
-	public synchronized void update(Iterable<Iterable<Integer>> tags,
-			List<Token> outputs) {
+	public void update(Iterable<Iterable<Integer>> tags,
+			Sentence sentence) {
 
-		T = outputs.size() + 1;
+		T = sentence.size() + 1;
 
 		if (T == 0) {
 			return;
@@ -38,7 +37,8 @@ public class BackwardChart extends ForwardChart {
 		assert iterator.hasNext();
 		Iterable<Integer> last_tags = iterator.next();
 
-		double[] scores = new double[N];
+		int[] outputs = model.getOutputIndexes(sentence);
+		double[] scores;
 		
 		for (Integer i : last_tags) {
 			a[T - 1][i] = _score(i, Model.BorderIndex);
@@ -50,7 +50,7 @@ public class BackwardChart extends ForwardChart {
 
 			Iterable<Integer> current_tags = iterator.next();
 
-			_score(outputs, t, scores);
+			scores = _score(outputs, t);
 			for (Integer i : current_tags) {
 			for (Integer j : last_tags) {				
 					double score = scores[j] + a[t + 1][j] + _score(i, j);
@@ -64,19 +64,19 @@ public class BackwardChart extends ForwardChart {
 
 		assert t == 0;
 
-		_score(outputs, t, scores);
+		scores = _score(outputs, t);
 		for (Integer j : last_tags) {
 			a[t][Model.BorderIndex] = Numerics.sumLogProb(a[t][Model.BorderIndex], scores[j] + _score(Model.BorderIndex, j));
 		}
 	}
 
 	@Override
-	public synchronized double score(int t, int tag) {
+	public double score(int t, int tag) {
 		return a[t + 1][tag];
 	}
 
 	@Override
-	public synchronized double score() {
+	public double score() {
 		return score(-1, Model.BorderIndex);
 	}
 
@@ -3,49 +3,174 @@
 
 package hmmla.splitmerge;
 
+import hmmla.hmm.Frequencies;
 import hmmla.hmm.HmmModel;
 import hmmla.hmm.HmmTrainer;
 import hmmla.hmm.Model;
+import hmmla.hmm.Tree;
 import hmmla.io.Sentence;
+import hmmla.util.AbstractSPMDCallable;
 import hmmla.util.Copy;
 import hmmla.util.SymbolTable;
 import hmmla.util.Tuple;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class ExactLossEstimator implements LossEstimator {
 	protected EmTrainer trainer_;
 	protected HmmTrainer hmm_trainer_;
 	protected Merger merger_;
+	// Null if the merges are evaluated on the calling thread.
+	private List<Worker> workers_;
+
+	// Every worker evaluates one merge at a time with its own E-step trainer.
+	private class Worker extends
+			AbstractSPMDCallable<Tuple<Integer, Double>, Void> {
+
+		private SimpleEmTrainer em_trainer_;
+		private Model model_;
+		private Iterable<Sentence> reader_;
+		private double ll_;
+
+		public Worker() {
+			em_trainer_ = new SimpleEmTrainer();
+		}
+
+		public void reset(Iterator<Tuple<Integer, Double>> iter, Model model,
+				Iterable<Sentence> reader, double ll) {
+			super.reset(iter, null);
+			model_ = model;
+			reader_ = reader;
+			ll_ = ll;
+		}
+
+		@Override
+		protected Void apply(Tuple<Integer, Double> tuple, Void out) {
+			tuple.y = getMergedLikelihood(em_trainer_, model_, tuple,
+					reader_) - ll_;
+			return out;
+		}
+	}
 
 	public ExactLossEstimator(EmTrainer em_trainer, HmmTrainer hmm_trainer) {
+		this(em_trainer, hmm_trainer, 1);
+	}
+
+	public ExactLossEstimator(EmTrainer em_trainer, HmmTrainer hmm_trainer,
+			int num_threads) {
 		trainer_ = em_trainer;
 		hmm_trainer_ = hmm_trainer;
 		merger_ = new Merger(null);
+		if (num_threads > 1) {
+			workers_ = new ArrayList<Worker>(num_threads);
+			for (int i = 0; i < num_threads; i++) {
+				workers_.add(new Worker());
+			}
+		}
 	}
 
 	@Override
 	public void estimateLosses(Model model, Iterable<Sentence> reader,
 			List<Tuple<Integer, Double>> tuples) {
 		HmmModel hmm_model = hmm_trainer_.train(model);
-		double ll = trainer_.estep(model, hmm_model, reader, false);
+		EmTrainer trainer = trainer_;
+		if (workers_ != null) {
+			// The workers sum the likelihood of a merge sequentially. The
+			// likelihood it is compared to has to be summed in the same order,
+			// or the losses of near-tied merges depend on the thread timing.
+			trainer = workers_.get(0).em_trainer_;
+		}
+		double ll = trainer.estep(model, hmm_model, reader, false);
 
 		SymbolTable<String> inputTable = model.getTagTable();
 		int N = (inputTable.size() - 1) / 2;
 
+		List<Tuple<Integer, Double>> merges = new ArrayList<Tuple<Integer, Double>>(N);
 		for (int index = 1; index < N + 1; index++) {
-			Tuple<Integer, Double> tuple = new Tuple<Integer, Double>(index, 0.0);
+			merges.add(new Tuple<Integer, Double>(index, 0.0));
+		}
 
-			Model clone = (Model) Copy.clone(model);
-			merger_.merge(clone, Collections.singletonList(tuple), 1);
+		if (workers_ == null) {
+			for (Tuple<Integer, Double> tuple : merges) {
+				tuple.y = getMergedLikelihood(trainer_, model, tuple, reader)
+						- ll;
+			}
+		} else {
+			estimateLosses(model, reader, merges, ll);
+		}
 
-			hmm_model = hmm_trainer_.train(clone);
-			double new_ll = trainer_.estep(clone, hmm_model, reader, false);
+		tuples.addAll(merges);
+	}
 
-			tuple.y = new_ll - ll;
-			tuples.add(tuple);
+	private void estimateLosses(Model model, Iterable<Sentence> reader,
+			List<Tuple<Integer, Double>> merges, double ll) {
+		Iterator<Tuple<Integer, Double>> iterator = merges.iterator();
+		for (Worker w : workers_) {
+			w.reset(iterator, model, reader, ll);
 		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(workers_
+				.size());
+
+		List<Future<Void>> results = null;
+		try {
+			results = executorService.invokeAll(workers_);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		for (Future<Void> f : results) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		executorService.shutdown();
+	}
+
+	private double getMergedLikelihood(EmTrainer trainer, Model model,
+			Tuple<Integer, Double> tuple, Iterable<Sentence> reader) {
+		int lindex = tuple.x;
+		int N = (model.getTagTable().size() - 1) / 2;
+		Model merged_model = getMergedModel(model);
+		List<Tuple<Integer, Integer>> indexes = merger_.mergeTags(
+				merged_model, Collections.singleton(lindex));
+		Frequencies statistics = new MergedStatistics(model.getStatistics(),
+				indexes, lindex, lindex + N);
+		HmmModel hmm_model = hmm_trainer_.train(merged_model, statistics);
+		return trainer.estep(merged_model, hmm_model, reader, false);
+	}
+
+	// A merge changes the statistics, the tag table and the trees of a model.
+	// The merged model gets its own trees and tag table, which mergeTags
+	// changes, and no statistics: The HMM is trained from a merged view of the
+	// statistics and the E-step does not update them. Everything else is
+	// shared with the original model.
+	@SuppressWarnings("unchecked")
+	private Model getMergedModel(Model model) {
+		ArrayList<Map<String, Tree>> trees = new ArrayList<Map<String, Tree>>(2);
+		trees.add(model.getTopLevel());
+		trees.add(model.getClustering());
+		// Cloned together, so the clustering points into the copied trees.
+		trees = (ArrayList<Map<String, Tree>>) Copy.clone(trees);
+
+		Model merged_model = new Model(model);
+		merged_model.shareSignatures(model);
+		merged_model.setTopLevel(trees.get(0));
+		merged_model.setClustering(trees.get(1));
+		merged_model.setStatistics(null);
+		return merged_model;
 	}
 }
@@ -5,15 +5,15 @@ package hmmla.splitmerge;
 
 import hmmla.hmm.HmmModel;
 import hmmla.hmm.Model;
-import hmmla.io.Token;
+import hmmla.io.Sentence;
 import hmmla.util.Numerics;
 
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-
 
 
+// A chart is the workspace of one thread. The HmmModel is only read, so the
+// charts of several threads can share it.
 public class ForwardChart {
 
 	protected double a[][];
@@ -36,8 +36,8 @@ public class ForwardChart {
 		return model.getTransitions(i, j);
 	}
 
-	public synchronized void update(Iterable<Iterable<Integer>> tags,
-			List<Token> sentence) {
+	public void update(Iterable<Iterable<Integer>> tags,
+			Sentence sentence) {
 
 		T = sentence.size() + 1;
 
@@ -54,13 +54,14 @@ public class ForwardChart {
 			Arrays.fill(a[t], Double.NEGATIVE_INFINITY);
 		}
 
-		double[] scores = new double[N];
+		int[] outputs = model.getOutputIndexes(sentence);
+		double[] scores;
 
 		Iterator<Iterable<Integer>> iterator = tags.iterator();
 		assert iterator.hasNext();
 		Iterable<Integer> last_tags = iterator.next();
 
-		_score(sentence, 0, scores);
+		scores = _score(outputs, 0);
 		for (Integer i : last_tags) {
 			a[0][i] = scores[i] + _score(Model.BorderIndex, i);		
 			assert (a[0][i] != Double.NEGATIVE_INFINITY);
@@ -71,7 +72,7 @@ public class ForwardChart {
 
 			Iterable<Integer> current_tags = iterator.next();
 
-			_score(sentence, t, scores);
+			scores = _score(outputs, t);
 			for (Integer j : last_tags) {
 
 				if (Double.isInfinite(a[t - 1][j])) {
@@ -97,17 +98,15 @@ public class ForwardChart {
 		}
 	}
 
-	protected void _score(List<Token> outputs, int t, double[] scores) {
-		Token token = outputs.get(t);
-		Arrays.fill(scores, 0.0);
-		model.getEmissions(token.getWordForm(), scores);
+	protected double[] _score(int[] outputs, int t) {
+		return model.getEmissions(outputs[t]);
 	}
 
-	public synchronized double score(int index, int tag) {
+	public double score(int index, int tag) {
 		return a[index][tag];
 	}
 
-	public synchronized double score() {
+	public double score() {
 		return score(T - 1, Model.BorderIndex);
 	}
 
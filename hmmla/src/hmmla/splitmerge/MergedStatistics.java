@@ -0,0 +1,120 @@
+// Copyright 2014 Thomas Müller
+// This file is part of HMMLA, which is licensed under GPLv3.
+
+package hmmla.splitmerge;
+
+import hmmla.hmm.Frequencies;
+import hmmla.hmm.Statistics;
+import hmmla.util.Tuple;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The statistics after merging two tags, read from the unmerged statistics
+// instead of copying them. The frequencies of the merged tag are summed in
+// the same order as in Merger.merge.
+public class MergedStatistics implements Frequencies {
+	private Statistics statistics_;
+	private int num_tags_;
+	private int num_words_;
+	// The old index of every new tag and the old index of the tag merged into
+	// it or -1.
+	private int[] left_;
+	private int[] right_;
+	// The new index of every old tag.
+	private int[] new_indexes_;
+
+	public MergedStatistics(Statistics statistics,
+			List<Tuple<Integer, Integer>> indexes, int lindex, int rindex) {
+		statistics_ = statistics;
+		num_tags_ = indexes.size();
+		num_words_ = statistics.getNumOutputs();
+		left_ = new int[indexes.size()];
+		right_ = new int[indexes.size()];
+		new_indexes_ = new int[statistics.getNumTags()];
+		Arrays.fill(new_indexes_, -1);
+
+		for (Tuple<Integer, Integer> tuple : indexes) {
+			int old_index = tuple.x;
+			int new_index = tuple.y;
+			left_[new_index] = old_index;
+			right_[new_index] = (old_index == lindex) ? rindex : -1;
+			new_indexes_[old_index] = new_index;
+		}
+		new_indexes_[rindex] = new_indexes_[lindex];
+	}
+
+	@Override
+	public int getNumTags() {
+		return num_tags_;
+	}
+
+	@Override
+	public int getNumOutputs() {
+		return num_words_;
+	}
+
+	@Override
+	public double getTransitions(int i, int j) {
+		int from = left_[i];
+		int merged_from = right_[i];
+		int to = left_[j];
+		int merged_to = right_[j];
+
+		double f = statistics_.getTransitions(from, to);
+		if (merged_to >= 0) {
+			f += statistics_.getTransitions(from, merged_to);
+		}
+		if (merged_from >= 0) {
+			f += statistics_.getTransitions(merged_from, to);
+		}
+		if (merged_from >= 0 && merged_to >= 0) {
+			f += statistics_.getTransitions(merged_from, merged_to);
+		}
+		return f;
+	}
+
+	@Override
+	public double getEmissions(int i, int o) {
+		double f = statistics_.getEmissions(left_[i], o);
+		if (right_[i] >= 0) {
+			f += statistics_.getEmissions(right_[i], o);
+		}
+		return f;
+	}
+
+	@Override
+	public void getEmissions(int o, double[] scores) {
+		Arrays.fill(scores, 0, num_tags_, 0.0);
+		// The entries are ordered by tag, so the left tag is added first.
+		int num_entries = statistics_.getNumEmissionEntries(o);
+		for (int entry = 0; entry < num_entries; entry++) {
+			int index = new_indexes_[statistics_.getEmissionTag(o, entry)];
+			if (index >= 0) {
+				scores[index] += statistics_.getEmissionEntry(o, entry);
+			}
+		}
+	}
+
+	@Override
+	public int getNumEmissionEntries(int o) {
+		return num_tags_;
+	}
+
+	@Override
+	public int getEmissionTag(int o, int entry) {
+		return entry;
+	}
+
+	@Override
+	public double getEmissionEntry(int o, int entry) {
+		return getEmissions(entry, o);
+	}
+
+	@Override
+	public void addTagEmissions(int i, double[] freqs) {
+		for (int o = 0; o < num_words_; o++) {
+			freqs[o] += getEmissions(i, o);
+		}
+	}
+}
@@ -84,8 +84,50 @@ public class Merger {
 
 			loss += t.y;
 		}
-		
+
+		List<Tuple<Integer, Integer>> indexes = mergeTags(model, set);
+
+		Statistics new_statistics = new Statistics(indexes.size(), word_table.size());
+
+		for (Tuple<Integer, Integer> tuple : indexes) {
+
+			int newIndex = tuple.y;
+			int oldIndex = tuple.x;
+
+			for (int o = 0; o < word_table.size(); o++) {
+				double f = statistics.getEmissions(oldIndex, o);
+				new_statistics.setEmissions(newIndex, o, f);
+				statistics.setEmissions(oldIndex, o, 0.0);
+			}
+
+			for (Tuple<Integer, Integer> tuple2 : indexes) {
+				int newIndex2 = tuple2.y;
+				int oldIndex2 = tuple2.x;
+				double f;
+				f = new_statistics.getTransitions(newIndex, newIndex2);
+				assert f == 0.0;
+				f = statistics.getTransitions(oldIndex, oldIndex2);
+				new_statistics.setTransitions(newIndex, newIndex2, f);
+				statistics.setTransitions(oldIndex, oldIndex2, 0.0);
+			}
+
+		}
+
+		assert statistics.totalEmission() == 0.0;
+		assert statistics.totalTransmission() == 0.0;
+
+		model.setStatistics(new_statistics);
+		return loss;
+	}
+
+	// Merges the trees of the merged tags and sets the new tag table. Returns
+	// the new index of every tag that is kept, with a merged pair kept under
+	// the index of its left tag.
+	public List<Tuple<Integer, Integer>> mergeTags(Model model,
+			Set<Integer> set) {
+		SymbolTable<String> tag_table = model.getTagTable();
 		Map<String, Tree> clustering = model.getClustering();
+		int N = (tag_table.size() - 1) / 2;
 
 		SymbolTable<String> new_tagtable = new SymbolTable<String>();
 		List<Tuple<Integer, Integer>> indexes = new LinkedList<Tuple<Integer, Integer>>();
@@ -128,37 +170,7 @@ public class Merger {
 
 		}
 
-		Statistics new_statistics = new Statistics(indexes.size(), word_table.size());
-
-		for (Tuple<Integer, Integer> tuple : indexes) {
-
-			int newIndex = tuple.y;
-			int oldIndex = tuple.x;
-
-			for (int o = 0; o < word_table.size(); o++) {
-				double f = statistics.getEmissions(oldIndex, o);
-				new_statistics.setEmissions(newIndex, o, f);
-				statistics.setEmissions(oldIndex, o, 0.0);
-			}
-
-			for (Tuple<Integer, Integer> tuple2 : indexes) {
-				int newIndex2 = tuple2.y;
-				int oldIndex2 = tuple2.x;
-				double f;
-				f = new_statistics.getTransitions(newIndex, newIndex2);
-				assert f == 0.0;
-				f = statistics.getTransitions(oldIndex, oldIndex2);
-				new_statistics.setTransitions(newIndex, newIndex2, f);
-				statistics.setTransitions(oldIndex, oldIndex2, 0.0);
-			}
-
-		}
-
-		assert statistics.totalEmission() == 0.0;
-		assert statistics.totalTransmission() == 0.0;
-
-		model.setStatistics(new_statistics);
 		model.setTagTable(new_tagtable);
-		return loss;
+		return indexes;
 	}
 }
@@ -13,7 +13,6 @@ import hmmla.util.Numerics;
 import hmmla.util.SymbolTable;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -96,7 +95,7 @@ public class SimpleEmTrainer extends EmTrainer {
 		return logZ;
 	}
 
-	private void addTransitionScores(Model model, List<Token> sentence,
+	private void addTransitionScores(Model model, Sentence sentence,
 			List<Iterable<Integer>> candidates, double logZ, boolean update) {
 		Statistics statistics = model.getStatistics();
 		HmmModel hmm_model = forward_.getHmmModel();
@@ -105,13 +104,11 @@ public class SimpleEmTrainer extends EmTrainer {
 		Iterator<Iterable<Integer>> iterator = candidates.iterator();
 		assert iterator.hasNext();
 		Iterable<Integer> last_tags = iterator.next();
-		Token token = sentence.get(t);
+		int[] outputs = hmm_model.getOutputIndexes(sentence);
 
 		double newLogZ = Double.NEGATIVE_INFINITY;
 		
-		double[] scores = new double[model.getTagTable().size()];
-		Arrays.fill(scores, 0.0);
-		hmm_model.getEmissions(token.getWordForm(), scores);
+		double[] scores = hmm_model.getEmissions(outputs[t]);
 		
 		for (Integer tag : last_tags) {
 
@@ -128,10 +125,7 @@ public class SimpleEmTrainer extends EmTrainer {
 		while (iterator.hasNext()) {
 
 			Iterable<Integer> current_tags = iterator.next();
-			token = sentence.get(t);
-
-			Arrays.fill(scores, 0.0);
-			hmm_model.getEmissions(token.getWordForm(), scores);
+			scores = hmm_model.getEmissions(outputs[t]);
 			
 			newLogZ = Double.NEGATIVE_INFINITY;
 			for (Integer fromIndex : last_tags) {
@@ -0,0 +1,85 @@
+// Copyright 2014 Thomas Müller
+// This file is part of HMMLA, which is licensed under GPLv3.
+
+package hmmla.test;
+
+import static org.junit.Assert.*;
+import hmmla.hmm.Frequencies;
+import hmmla.hmm.Statistics;
+import hmmla.splitmerge.MergedStatistics;
+import hmmla.util.Tuple;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MergedStatisticsTest {
+
+	private static final int NUM_WORDS = 20;
+
+	@Test
+	public void testMerge() {
+		// The border tag and two split tags: 1 and 3, 2 and 4.
+		int num_tags = 5;
+		int lindex = 1;
+		int rindex = 3;
+
+		Random random = new Random(7);
+		Statistics statistics = new Statistics(num_tags, NUM_WORDS);
+		for (int i = 0; i < num_tags; i++) {
+			for (int j = 0; j < num_tags; j++) {
+				statistics.setTransitions(i, j, random.nextDouble());
+			}
+			for (int o = 0; o < NUM_WORDS; o++) {
+				if (random.nextBoolean()) {
+					statistics.setEmissions(i, o, random.nextDouble());
+				}
+			}
+		}
+
+		// The indexes Merger.mergeTags returns for merging 1 and 3.
+		int[] old_indexes = { 0, 1, 2, 4 };
+		List<Tuple<Integer, Integer>> indexes = new LinkedList<Tuple<Integer, Integer>>();
+		for (int index = 0; index < old_indexes.length; index++) {
+			indexes.add(new Tuple<Integer, Integer>(old_indexes[index], index));
+		}
+
+		Frequencies merged = new MergedStatistics(statistics, indexes, lindex,
+				rindex);
+		assertEquals(old_indexes.length, merged.getNumTags());
+
+		double[] scores = new double[old_indexes.length];
+		for (int o = 0; o < NUM_WORDS; o++) {
+			merged.getEmissions(o, scores);
+			for (int i = 0; i < old_indexes.length; i++) {
+				double expected = statistics.getEmissions(old_indexes[i], o);
+				if (old_indexes[i] == lindex) {
+					expected += statistics.getEmissions(rindex, o);
+				}
+				assertEquals(expected, merged.getEmissions(i, o), 0.0);
+				assertEquals(expected, scores[i], 0.0);
+			}
+		}
+
+		for (int i = 0; i < old_indexes.length; i++) {
+			for (int j = 0; j < old_indexes.length; j++) {
+				int from = old_indexes[i];
+				int to = old_indexes[j];
+				double expected = statistics.getTransitions(from, to);
+				if (to == lindex) {
+					expected += statistics.getTransitions(from, rindex);
+				}
+				if (from == lindex) {
+					expected += statistics.getTransitions(rindex, to);
+				}
+				if (from == lindex && to == lindex) {
+					expected += statistics.getTransitions(rindex, rindex);
+				}
+				assertEquals(expected, merged.getTransitions(i, j), 0.0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+// Copyright 2014 Thomas Müller
+// This file is part of HMMLA, which is licensed under GPLv3.
+
+package hmmla.test;
+
+import static org.junit.Assert.*;
+import hmmla.hmm.Statistics;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StatisticsTest {
+
+	private static final int NUM_TAGS = 7;
+	private static final int NUM_WORDS = 50;
+
+	private void fill(Statistics statistics, double[][] expected, long seed) {
+		Random random = new Random(seed);
+		for (int step = 0; step < 200; step++) {
+			int tag = random.nextInt(NUM_TAGS);
+			int word = random.nextInt(NUM_WORDS);
+			double value = random.nextDouble();
+			if (random.nextBoolean()) {
+				statistics.addEmissions(tag, word, value);
+				expected[tag][word] += value;
+			} else {
+				statistics.setEmissions(tag, word, value);
+				expected[tag][word] = value;
+			}
+		}
+	}
+
+	private void assertEmissions(double[][] expected, Statistics statistics) {
+		double[] scores = new double[NUM_TAGS];
+		for (int word = 0; word < NUM_WORDS; word++) {
+			statistics.getEmissions(word, scores);
+			for (int tag = 0; tag < NUM_TAGS; tag++) {
+				assertEquals(expected[tag][word],
+						statistics.getEmissions(tag, word), 0.0);
+				assertEquals(expected[tag][word], scores[tag], 0.0);
+			}
+		}
+
+		for (int tag = 0; tag < NUM_TAGS; tag++) {
+			double[] freqs = new double[NUM_WORDS];
+			statistics.addTagEmissions(tag, freqs);
+			for (int word = 0; word < NUM_WORDS; word++) {
+				assertEquals(expected[tag][word], freqs[word], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testSparseEmissions() {
+		for (boolean dense : new boolean[] { false, true }) {
+			double[][] expected = new double[NUM_TAGS][NUM_WORDS];
+			Statistics statistics = new Statistics(NUM_TAGS, NUM_WORDS, dense);
+			fill(statistics, expected, 42);
+			assertEmissions(expected, statistics);
+			if (dense) {
+				double[] scores = new double[NUM_TAGS];
+				for (int word = 0; word < NUM_WORDS; word++) {
+					statistics.getEmissions(word, scores);
+					assertArrayEquals(scores, statistics.getEmissionRow(word),
+							0.0);
+				}
+			}
+
+			Statistics copy = new Statistics(statistics);
+			assertEmissions(expected, copy);
+
+			double total = 0.0;
+			for (int word = 0; word < NUM_WORDS; word++) {
+				int num_entries = statistics.getNumEmissionEntries(word);
+				for (int entry = 0; entry < num_entries; entry++) {
+					int tag = statistics.getEmissionTag(word, entry);
+					assertEquals(expected[tag][word],
+							statistics.getEmissionEntry(word, entry), 0.0);
+					total += statistics.getEmissionEntry(word, entry);
+				}
+			}
+			assertEquals(total, statistics.totalEmission(), 0.0);
+
+			statistics.setZero();
+			assertEquals(0.0, statistics.totalEmission(), 0.0);
+			assertEmissions(new double[NUM_TAGS][NUM_WORDS], statistics);
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		double[][] expected = new double[NUM_TAGS][NUM_WORDS];
+		Statistics statistics = new Statistics(NUM_TAGS, NUM_WORDS);
+		fill(statistics, expected, 1);
+
+		Statistics other = new Statistics(NUM_TAGS, NUM_WORDS);
+		double[][] other_expected = new double[NUM_TAGS][NUM_WORDS];
+		fill(other, other_expected, 2);
+
+		statistics.add(other);
+		for (int tag = 0; tag < NUM_TAGS; tag++) {
+			for (int word = 0; word < NUM_WORDS; word++) {
+				expected[tag][word] += other_expected[tag][word];
+			}
+		}
+		assertEmissions(expected, statistics);
+	}
+
+}
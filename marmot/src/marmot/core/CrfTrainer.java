@@ -22,6 +22,27 @@ public class CrfTrainer implements Trainer {
 	private long seed_;
 	private boolean optimize_num_iterations_;
 
+	// The update of one sentence. It is computed by getUpdates and applied
+	// after the penalty of the sentence has been set.
+	protected interface SentenceUpdate {
+		void apply(WeightVector weights);
+	}
+
+	private static class LatticeUpdate implements SentenceUpdate {
+		private SumLattice lattice_;
+		private double step_width_;
+
+		public LatticeUpdate(SumLattice lattice, double step_width) {
+			lattice_ = lattice;
+			step_width_ = step_width;
+		}
+
+		@Override
+		public void apply(WeightVector weights) {
+			lattice_.update(weights, step_width_);
+		}
+	}
+
 	@Override
 	public void train(Tagger tagger, Collection<Sequence> in_sequences,
 			Evaluator evaluator) {
@@ -44,6 +65,7 @@ public class CrfTrainer implements Trainer {
 		int fraction = Math.max(sequences.size() / 4, 1);
 		int smaller_fraction = Math.max(sequences.size() / 4000, 1);
 		int small_factor = 1;
+		int batch_size = getBatchSize();
 		WeightVector weights = tagger.getWeightVector();
 		assert weights != null;
 		
@@ -51,7 +73,7 @@ public class CrfTrainer implements Trainer {
 		double[] best_params = null;
 		double best_score = 0.0;
 
-		double accumalted_penalty = 0;
+		double accumulated_penalty = 0;
 
 		int number = 0;
 
@@ -64,58 +86,61 @@ public class CrfTrainer implements Trainer {
 
 			int current_sentence = 0;
 			long train_time = System.currentTimeMillis();
-			for (Sequence sequence : sequences) {
-				
-				double step_width = step_width_
-						/ (1 + (number / (double) sequences.size()));
-
-				double scale_factor = 1 - 2. * step_width * quadratic_penalty_  / sequences.size(); 				
-				assert !Double.isNaN(scale_factor);
-				assert !Double.isInfinite(scale_factor);
-				assert scale_factor > 1e-10;
-				assert scale_factor < 1 + 1e-10;
-				
-				step_width /= scale_factor;
-				
-				if (Math.abs(penalty_) > 1e-10) {
-					accumalted_penalty += step_width * penalty_
-							/ sequences.size();
-					weights.setPenalty(true, accumalted_penalty);
+			for (int start = 0; start < sequences.size(); start += batch_size) {
+				List<Sequence> batch = sequences.subList(start,
+						Math.min(start + batch_size, sequences.size()));
+
+				double[] step_widths = new double[batch.size()];
+				double[] scale_factors = new double[batch.size()];
+				for (int index = 0; index < batch.size(); index++) {
+					double step_width = step_width_
+							/ (1 + ((number + index) / (double) sequences.size()));
+
+					double scale_factor = 1 - 2. * step_width * quadratic_penalty_  / sequences.size(); 				
+					assert !Double.isNaN(scale_factor);
+					assert !Double.isInfinite(scale_factor);
+					assert scale_factor > 1e-10;
+					assert scale_factor < 1 + 1e-10;
+
+					step_widths[index] = step_width / scale_factor;
+					scale_factors[index] = scale_factor;
 				}
 
-				SumLattice lattice = tagger.getSumLattice(true, sequence);
-				
-				
-				if (very_verbose_) {
-					System.err.format("vv %d %d %d %d\n", number, lattice.getOrder() + lattice.getLevel() * (tagger.getModel().getOrder() + 1), lattice.getLevel(), lattice.getOrder() );
-				}
-				
-				assert lattice != null;
-				
-				lattice.update(weights, step_width);		
-				weights.scaleBy(scale_factor);
-				current_sentence++;
-
-				if (current_sentence % fraction == 0) {
-					if (verbose_)
-						System.err
-								.format("Processed %d sentences at %g sentence/s \n",
-										current_sentence,
-										current_sentence
-												/ ((System.currentTimeMillis() - train_time) / 1000.));
-
-					if (small_factor < 100) {
-						small_factor *= 10;
-						smaller_fraction = Math.max(small_factor
-								* sequences.size() / 400, 1);
+				List<SentenceUpdate> updates = getUpdates(tagger, batch,
+						number, step_widths);
+
+				for (int index = 0; index < batch.size(); index++) {
+					if (Math.abs(penalty_) > 1e-10) {
+						accumulated_penalty += step_widths[index] * penalty_
+								/ sequences.size();
+						weights.setPenalty(true, accumulated_penalty);
+					}
+
+					updates.get(index).apply(weights);
+					weights.scaleBy(scale_factors[index]);
+					current_sentence++;
+
+					if (current_sentence % fraction == 0) {
+						if (verbose_)
+							System.err
+									.format("Processed %d sentences at %g sentence/s \n",
+											current_sentence,
+											current_sentence
+													/ ((System.currentTimeMillis() - train_time) / 1000.));
+
+						if (small_factor < 100) {
+							small_factor *= 10;
+							smaller_fraction = Math.max(small_factor
+									* sequences.size() / 400, 1);
+						}
+					}
+
+					if (current_sentence % smaller_fraction == 0) {
+						tagger.setThresholds(false);
 					}
-				}
 
-				if (current_sentence % smaller_fraction == 0) {
-					tagger.setThresholds(false);
+					number++;
 				}
-				
-				number++;
 			}
 
 			if (evaluator != null && (verbose_ || optimize_num_iterations_)) {
@@ -162,6 +187,30 @@ public class CrfTrainer implements Trainer {
 		}
 	}
 
+	protected int getBatchSize() {
+		return 1;
+	}
+
+	// Computes the updates of the sentences of a batch, which are applied in
+	// batch order. number is the number of sentences trained on before the
+	// batch. The step widths already include the quadratic penalty.
+	protected List<SentenceUpdate> getUpdates(Tagger tagger,
+			List<Sequence> batch, int number, double[] step_widths) {
+		List<SentenceUpdate> updates = new ArrayList<SentenceUpdate>(
+				batch.size());
+		for (int index = 0; index < batch.size(); index++) {
+			SumLattice lattice = tagger.getSumLattice(true, batch.get(index));
+
+			if (very_verbose_) {
+				System.err.format("vv %d %d %d %d\n", number + index, lattice.getOrder() + lattice.getLevel() * (tagger.getModel().getOrder() + 1), lattice.getLevel(), lattice.getOrder() );
+			}
+
+			assert lattice != null;
+			updates.add(new LatticeUpdate(lattice, step_widths[index]));
+		}
+		return updates;
+	}
+
 	@Override
 	public void setOptions(Options options) {
 		setOptions(options.getPenalty(), options.getQuadraticPenalty(), options.getNumIterations(), options
@@ -0,0 +1,10 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.core;
+
+// Features that were extracted while the feature set was deferred and that
+// still have to be added to it. See WeightVector.setDeferFeatureSet.
+public interface DeferredFeatures {
+	boolean isEmpty();
+}
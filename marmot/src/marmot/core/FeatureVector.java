@@ -13,6 +13,7 @@ public class FeatureVector {
 	private boolean concat_;
 	private FeatureVector sub_vector_;
 	private FloatFeatureVector float_vector_;
+	private int[] flat_features_;
 
 	public FeatureVector(int capacity) {
 		this(capacity, null, false);
@@ -30,11 +31,35 @@ public class FeatureVector {
 		concat_ = concat;
 	}
 
-	public Integer get(int index) {
+	public int get(int index) {
 		if (index < length_ || !concat_)
 			return features_[index];
 
-		return sub_vector_.get(index - length_);
+		return getFeatures()[index];
+	}
+
+	// Returns all features including the ones of concatenated sub vectors.
+	// Only the first size() entries are valid.
+	public int[] getFeatures() {
+		if (!concat_ || sub_vector_ == null) {
+			return features_;
+		}
+
+		if (flat_features_ == null) {
+			int[] features = new int[size()];
+			int offset = 0;
+			FeatureVector vector = this;
+			while (vector != null) {
+				System.arraycopy(vector.features_, 0, features, offset,
+						vector.length_);
+				offset += vector.length_;
+				vector = (vector.concat_) ? vector.sub_vector_ : null;
+			}
+			assert offset == features.length;
+			flat_features_ = features;
+		}
+
+		return flat_features_;
 	}
 
 	public boolean add(int feature) {
@@ -45,16 +70,19 @@ public class FeatureVector {
 			}
 			
 			features_[length_++] = feature;
+			flat_features_ = null;
 		}
 		return true;
 	}
 
 	public int size() {
-		if (concat_ && sub_vector_ != null) {
-			return length_ + sub_vector_.size();
+		int size = length_;
+		FeatureVector vector = this;
+		while (vector.concat_ && vector.sub_vector_ != null) {
+			vector = vector.sub_vector_;
+			size += vector.length_;
 		}
-
-		return length_;
+		return size;
 	}
 
 	public boolean getIsState() {
@@ -73,8 +101,10 @@ public class FeatureVector {
 			features_ = features;
 		}
 
-		for (int index = 0; index < vector.size(); index++) {
-			add(vector.get(index));
+		int[] features = vector.getFeatures();
+		int size = vector.size();
+		for (int index = 0; index < size; index++) {
+			add(features[index]);
 		}
 	}
 
@@ -87,6 +117,7 @@ public class FeatureVector {
 
 	public void setConcat(boolean concat) {
 		concat_ = concat;
+		flat_features_ = null;
 	}
 
 	public FloatFeatureVector getFloatVector() {
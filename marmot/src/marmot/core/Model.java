@@ -9,7 +9,7 @@ import java.util.List;
 
 import marmot.util.SymbolTable;
 
-public abstract class Model implements Serializable {
+public abstract class Model implements Serializable, Cloneable {
 	private static final long serialVersionUID = 1L;
 	public static final String BORDER_SYMBOL_ = "<STOP>";
 	public static final String EMPTY_SYMBOL_ = "<EMPTY>";
@@ -46,6 +46,20 @@ public abstract class Model implements Serializable {
 		boundary_index_ = 0;
 	}
 	
+	// Returns a shallow copy that shares all tables with this model but uses
+	// different options. Only options that are not used during init may differ.
+	public Model copy(Options options) {
+		Model model;
+		try {
+			model = (Model) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+		model.options_ = options;
+		model.order_ = options.getOrder();
+		return model;
+	}
+
 	public int getBoundaryIndex() {
 		return boundary_index_;
 	}
@@ -43,6 +43,8 @@ public class Options extends java.util.Properties {
 	public static final String AVERAGING = "averaging";
 	public static final String SEED = "seed";
 	public static final String OPTIMIZE_NUM_ITERATIONS = "optimize-num-iterations";
+	public static final String NUM_THREADS = "num-threads";
+	public static final String MINI_BATCH_SIZE = "mini-batch-size";
 
 
 
@@ -94,13 +96,17 @@ public class Options extends java.util.Properties {
 		DEFALUT_VALUES_.put(TRAINER, CrfTrainer.class.getCanonicalName());
 		COMMENTS_
 				.put(TRAINER,
-						"Which trainer to use. (There is also a perceptron trainer but don't use it.)");
+						"Which trainer to use. Use marmot.core.ParallelCrfTrainer together with num-threads for parallel training. (There is also a perceptron trainer but don't use it.)");
 		DEFALUT_VALUES_.put(AVERAGING, "true");
 		COMMENTS_.put(AVERAGING, "Whether to use averaging. Perceptron only!");
 		DEFALUT_VALUES_.put(SEED, "42");
 		COMMENTS_.put(SEED, "Random seed to use for shuffling. 0 for nondeterministic seed");
 		DEFALUT_VALUES_.put(OPTIMIZE_NUM_ITERATIONS, "false");
 		COMMENTS_.put(OPTIMIZE_NUM_ITERATIONS, "Whether to optimize the number of training iterations on the dev set.");
+		DEFALUT_VALUES_.put(NUM_THREADS, "1");
+		COMMENTS_.put(NUM_THREADS, "Number of threads to use for tagging and parallel training.");
+		DEFALUT_VALUES_.put(MINI_BATCH_SIZE, "16");
+		COMMENTS_.put(MINI_BATCH_SIZE, "Number of sentences per mini batch. ParallelCrfTrainer only!");
 
 
 	}
@@ -364,4 +370,12 @@ public class Options extends java.util.Properties {
 		return Boolean.parseBoolean(getProperty(OPTIMIZE_NUM_ITERATIONS));
 	}
 
+	public int getNumThreads() {
+		return Integer.parseInt(getProperty(NUM_THREADS));
+	}
+
+	public int getMiniBatchSize() {
+		return Integer.parseInt(getProperty(MINI_BATCH_SIZE));
+	}
+
 }
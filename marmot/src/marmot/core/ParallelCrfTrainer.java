@@ -0,0 +1,183 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import marmot.core.lattice.SumLattice;
+
+// Synchronous mini-batch version of CrfTrainer: The lattices of a mini-batch
+// are built and updated concurrently against the weights of the start of the
+// batch. The updates are recorded and then applied in batch order by
+// CrfTrainer.train, so the learning rate and penalty schedule are the same as
+// for CrfTrainer. New features are
+// added to the feature set in batch order, too (unless the weight vector
+// adds them concurrently, see WeightVector.setDeferFeatureSet). So the result
+// only depends on the seed and the batch size, not on the number of threads.
+public class ParallelCrfTrainer extends CrfTrainer {
+	private int num_threads_;
+	private int batch_size_;
+	// Only set while train runs.
+	private ExecutorService executor_;
+
+	private static class Update {
+		private State state_;
+		private double value_;
+		private boolean transition_;
+
+		public Update(State state, double value, boolean transition) {
+			state_ = state;
+			value_ = value;
+			transition_ = transition;
+		}
+	}
+
+	private static class UpdateRecorder implements WeightUpdater,
+			SentenceUpdate {
+		private List<Update> updates_;
+
+		public UpdateRecorder() {
+			updates_ = new ArrayList<Update>();
+		}
+
+		@Override
+		public void updateWeights(State state, double amount, boolean transition) {
+			updates_.add(new Update(state, amount, transition));
+		}
+
+		@Override
+		public void apply(WeightVector weights) {
+			for (Update update : updates_) {
+				weights.updateWeights(update.state_, update.value_,
+						update.transition_);
+			}
+		}
+	}
+
+	private static class Gradient {
+		private UpdateRecorder recorder_;
+		private DeferredFeatures features_;
+
+		public Gradient(UpdateRecorder recorder, DeferredFeatures features) {
+			recorder_ = recorder;
+			features_ = features;
+		}
+	}
+
+	private static class GradientCallable implements Callable<Gradient> {
+		private Tagger tagger_;
+		private Sequence sequence_;
+		private double step_width_;
+
+		public GradientCallable(Tagger tagger, Sequence sequence,
+				double step_width) {
+			tagger_ = tagger;
+			sequence_ = sequence;
+			step_width_ = step_width;
+		}
+
+		@Override
+		public Gradient call() {
+			WeightVector weights = tagger_.getWeightVector();
+			UpdateRecorder recorder = new UpdateRecorder();
+			SumLattice lattice = tagger_.getSumLattice(true, sequence_);
+			assert lattice != null;
+			lattice.update(recorder, step_width_);
+			return new Gradient(recorder, weights.takeDeferredFeatures());
+		}
+	}
+
+	@Override
+	public void train(Tagger tagger, Collection<Sequence> in_sequences,
+			Evaluator evaluator) {
+		executor_ = Executors.newFixedThreadPool(num_threads_);
+		try {
+			super.train(tagger, in_sequences, evaluator);
+		} finally {
+			executor_.shutdownNow();
+			executor_ = null;
+		}
+	}
+
+	@Override
+	protected int getBatchSize() {
+		return batch_size_;
+	}
+
+	// Computes the updates of all sentences in the batch. Sentences that ran
+	// into unknown features are recomputed after the features have been added,
+	// so that they receive an update just like in CrfTrainer.
+	@Override
+	protected List<SentenceUpdate> getUpdates(Tagger tagger,
+			List<Sequence> batch, int number, double[] step_widths) {
+		WeightVector weights = tagger.getWeightVector();
+		List<SentenceUpdate> updates = new ArrayList<SentenceUpdate>(
+				Collections.nCopies(batch.size(), (SentenceUpdate) null));
+
+		List<Integer> pending = new ArrayList<Integer>(batch.size());
+		for (int index = 0; index < batch.size(); index++) {
+			pending.add(index);
+		}
+
+		while (!pending.isEmpty()) {
+			List<Future<Gradient>> futures = new ArrayList<Future<Gradient>>(
+					pending.size());
+
+			weights.setDeferFeatureSet(true);
+			try {
+				for (int index : pending) {
+					futures.add(executor_.submit(new GradientCallable(tagger,
+							batch.get(index), step_widths[index])));
+				}
+
+				for (Future<Gradient> future : futures) {
+					get(future);
+				}
+			} finally {
+				weights.setDeferFeatureSet(false);
+			}
+
+			List<Integer> next_pending = new ArrayList<Integer>();
+			for (int pending_index = 0; pending_index < pending.size(); pending_index++) {
+				int index = pending.get(pending_index);
+				Gradient gradient = get(futures.get(pending_index));
+				if (gradient.features_.isEmpty()) {
+					updates.set(index, gradient.recorder_);
+				} else {
+					weights.addDeferredFeatures(gradient.features_);
+					next_pending.add(index);
+				}
+			}
+			pending = next_pending;
+		}
+
+		return updates;
+	}
+
+	private Gradient get(Future<Gradient> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@Override
+	public void setOptions(Options options) {
+		super.setOptions(options);
+		num_threads_ = Math.max(options.getNumThreads(), 1);
+		batch_size_ = Math.max(options.getMiniBatchSize(), 1);
+	}
+
+}
@@ -6,10 +6,13 @@ package marmot.core;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import marmot.core.lattice.ArraySequenceLattice;
 import marmot.core.lattice.Hypothesis;
+import marmot.core.lattice.LatticeArena;
 import marmot.core.lattice.SequenceSumLattice;
 import marmot.core.lattice.SequenceViterbiLattice;
 import marmot.core.lattice.SumLattice;
@@ -70,11 +73,17 @@ public class SimpleTagger implements Tagger {
 			Transition[][] transitions = new Transition[last_states.size()][current_states
 					.size()];
 
+			// The states of a position are grouped by their sub level states,
+			// so the last score of every sub level is likely to be reused.
+			State[] sub_level_states = new State[level + 1];
+			double[] sub_level_scores = new double[level + 1];
+
 			int from_index = 0;
 			for (State last_state : last_states) {
 
 				FeatureVector vector = weight_vector_
 						.extractTransitionFeatures(last_state);
+				Arrays.fill(sub_level_states, null);
 
 				int to_index = 0;
 
@@ -85,10 +94,15 @@ public class SimpleTagger implements Tagger {
 								state, order);
 						transition.setVector(vector);
 
-						double score = 0.0;
-						State run = state;
-						while (run != null) {
-							score += weight_vector_.dotProduct(run, vector);
+						double score = weight_vector_.dotProduct(state, vector);
+						State run = state.getSubLevelState();
+						for (int depth = 1; run != null; depth++) {
+							if (sub_level_states[depth] != run) {
+								sub_level_states[depth] = run;
+								sub_level_scores[depth] = weight_vector_
+										.dotProduct(run, vector);
+							}
+							score += sub_level_scores[depth];
 							run = run.getSubLevelState();
 						}
 
@@ -196,9 +210,9 @@ public class SimpleTagger implements Tagger {
 
 				State state = new State(tag_index);
 				state.setVector(vector);
-				state.setScore(weight_vector_.dotProduct(state, vector));
 				states.add(state);
 			}
+			weight_vector_.setScores(states, vector);
 			assert states.size() > 0;
 			candidates.add(states);
 		}
@@ -207,7 +221,7 @@ public class SimpleTagger implements Tagger {
 	}
 
 	@Override
-	public String setThresholds(boolean print) {
+	public synchronized String setThresholds(boolean print) {
 		StringBuilder sb = null;
 
 		if (print) {
@@ -296,7 +310,7 @@ public class SimpleTagger implements Tagger {
 		return new_candidates;
 	}
 
-	protected void incrementStateCounter(int level, int order,
+	protected synchronized void incrementStateCounter(int level, int order,
 			List<List<State>> candidates) {
 		int num_states = 0;
 		for (List<State> states : candidates) {
@@ -311,6 +325,13 @@ public class SimpleTagger implements Tagger {
 
 	@Override
 	public SumLattice getSumLattice(boolean train, Sequence sentence) {
+		return getSumLattice(train, sentence, null);
+	}
+
+	// The returned lattice is only valid until the arena is used again, see
+	// LatticeArena.
+	protected SumLattice getSumLattice(boolean train, Sequence sentence,
+			LatticeArena arena) {
 		if (candidate_buffer_ != null) {
 			candidate_buffer_.clear();
 		}
@@ -391,7 +412,7 @@ public class SimpleTagger implements Tagger {
 				lattice = new SequenceSumLattice(candidates,
 						model_.getBoundaryState(level),
 						threshs_[level][current_order + 1], current_order + 1,
-						false);
+						false, arena);
 
 				if (oracle_ || train)
 					lattice.setGoldCandidates(getGoldIndexes(sentence,
@@ -561,6 +582,43 @@ public class SimpleTagger implements Tagger {
 		return strings;
 	}
 	
+	// Tags the sentences from short to long, so that the lattices of the
+	// batch can share one arena that only grows a few times. The tags are
+	// returned in input order.
+	@Override
+	public List<List<List<String>>> tagAll(List<Sequence> sentences) {
+		final List<Sequence> final_sentences = new ArrayList<Sequence>(
+				sentences);
+		Integer[] order = new Integer[sentences.size()];
+		for (int index = 0; index < order.length; index++) {
+			order[index] = index;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				int first_size = final_sentences.get(first).size();
+				int second_size = final_sentences.get(second).size();
+				return (first_size < second_size) ? -1
+						: ((first_size == second_size) ? 0 : 1);
+			}
+		});
+
+		LatticeArena arena = ArraySequenceLattice.createArena();
+		List<List<List<String>>> tags = new ArrayList<List<List<String>>>(
+				Collections.<List<List<String>>> nCopies(sentences.size(),
+						null));
+		for (int index : order) {
+			List<int[]> indexes = tag_(final_sentences.get(index), arena);
+			List<List<String>> strings = new ArrayList<List<String>>(
+					indexes.size());
+			for (int[] array : indexes) {
+				strings.add(indexesToStrings(array));
+			}
+			tags.set(index, strings);
+		}
+		return tags;
+	}
+
 	protected List<String> indexesToStrings(int[] indexes) {
 		List<String> sarray = new ArrayList<String>(indexes.length);
 
@@ -588,8 +646,12 @@ public class SimpleTagger implements Tagger {
 	}
 
 	protected List<int[]> tag_(Sequence sequence) {
+		return tag_(sequence, null);
+	}
+
+	protected List<int[]> tag_(Sequence sequence, LatticeArena arena) {
 		List<int[]> list = new ArrayList<int[]>(sequence.size());
-		SumLattice sum_lattice = getSumLattice(false, sequence);
+		SumLattice sum_lattice = getSumLattice(false, sequence, arena);
 
 		List<List<State>> candidates = sum_lattice.getCandidates();
 
@@ -80,7 +80,7 @@ public class State {
 		estimated_count_ += d;
 	}
 
-	public void updateWeights(WeightVector weights) {
+	public void updateWeights(WeightUpdater weights) {
 		if (estimated_count_ != 0.0) {
 			weights.updateWeights(this, estimated_count_, true);
 			estimated_count_ = 0.0;
@@ -12,6 +12,7 @@ import marmot.core.lattice.SumLattice;
 
 public interface Tagger extends Serializable {
 	List<List<String>> tag(Sequence sentence);
+	List<List<List<String>>> tagAll(List<Sequence> sentences);
 	Model getModel();
 	int getNumLevels();
 	SumLattice getSumLattice(boolean train, Sequence sequence);
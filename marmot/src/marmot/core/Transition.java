@@ -57,7 +57,7 @@ public class Transition extends State {
 	}
 
 	@Override
-	public void updateWeights(WeightVector weights) {
+	public void updateWeights(WeightUpdater weights) {
 		if (estimated_count_ != 0.0) {
 			weights.updateWeights(this, estimated_count_, true);
 			state_.updateWeights(weights);
@@ -0,0 +1,9 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.core;
+
+// Receives the weight updates of SumLattice.update.
+public interface WeightUpdater {
+	void updateWeights(State state, double amount, boolean transition);
+}
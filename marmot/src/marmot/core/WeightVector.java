@@ -5,19 +5,32 @@ package marmot.core;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 
-public interface WeightVector extends Serializable {
+public interface WeightVector extends WeightUpdater, Serializable {
 	static final long serialVersionUID = 1L;
 
-	void updateWeights(State state, double amount, boolean transition);
 	FeatureVector extractTransitionFeatures(State context);
 	FeatureVector extractStateFeatures(Sequence sentence, int index);
 	double dotProduct(State state, FeatureVector vector);
+	// Sets the scores of the zero order states of one token, as if every
+	// state got dotProduct(state, vector). Implementations can score all
+	// states in a single pass over the features.
+	void setScores(List<State> states, FeatureVector vector);
 	FeatureVector extractStateFeatures(State state);
 	void init(Model model, Collection<Sequence> sequence);
 	void setPenalty(boolean b, double accumalted_penalty);
 	void scaleBy(double scale_factor);
 	void setExtendFeatureSet(boolean extend);
+	// While deferred, feature extraction does not extend the feature set but
+	// collects unknown features per thread, which makes extraction safe to
+	// run concurrently. takeDeferredFeatures hands over the features collected
+	// by the calling thread, addDeferredFeatures adds them to the feature set.
+	// Implementations whose feature set can grow concurrently may extend it
+	// directly if the order of the new features doesn't change any result.
+	void setDeferFeatureSet(boolean defer);
+	DeferredFeatures takeDeferredFeatures();
+	void addDeferredFeatures(DeferredFeatures features);
 	double[] getWeights();
 	void setWeights(double[] weights);
 	double[] getFloatWeights();
@@ -0,0 +1,232 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.core.lattice;
+
+import java.util.Arrays;
+import java.util.List;
+
+import marmot.core.State;
+import marmot.core.Transition;
+import marmot.util.Numerics;
+
+// Forward and backward scores of a sequence lattice. The scores and the
+// transition structure of the candidates are copied into flat arrays once,
+// so the forward-backward passes don't have to walk the State graph.
+//
+// The boundary state gets node 0 and the candidates of position i get the
+// nodes offsets_[i + 1] to offsets_[i + 2] - 1. The incoming transitions of
+// node n are transition_offsets_[n] to transition_offsets_[n + 1] - 1 in
+// transition_sources_ and transition_scores_, sorted by the index of the
+// previous state as in State.getTransition.
+public class ArraySequenceLattice {
+	private static final int OFFSETS_ = 0;
+	private static final int TRANSITION_OFFSETS_ = 1;
+	private static final int TRANSITION_SOURCES_ = 2;
+	private static final int STATE_SCORES_ = 0;
+	private static final int TRANSITION_SCORES_ = 1;
+	private static final int FORWARD_ = 2;
+	private static final int BACKWARD_ = 3;
+
+	private List<List<State>> candidates_;
+	private LatticeArena arena_;
+	private int[] offsets_;
+	private double[] state_scores_;
+	private int[] transition_offsets_;
+	private int[] transition_sources_;
+	private double[] transition_scores_;
+	private double[] forward_;
+	private double[] backward_;
+
+	public ArraySequenceLattice(List<List<State>> candidates) {
+		this(candidates, null);
+	}
+
+	// If arena is not null the arrays are taken from it, see LatticeArena.
+	public ArraySequenceLattice(List<List<State>> candidates,
+			LatticeArena arena) {
+		candidates_ = candidates;
+		arena_ = arena;
+	}
+
+	public static LatticeArena createArena() {
+		return new LatticeArena(3, 4);
+	}
+
+	private int[] getInts(int buffer, int length) {
+		if (arena_ == null) {
+			return new int[length];
+		}
+		return arena_.getInts(buffer, length);
+	}
+
+	private double[] getDoubles(int buffer, int length) {
+		if (arena_ == null) {
+			return new double[length];
+		}
+		return arena_.getDoubles(buffer, length);
+	}
+
+	public void init() {
+		int length = candidates_.size();
+		offsets_ = getInts(OFFSETS_, length + 2);
+		offsets_[0] = 0;
+		offsets_[1] = 1;
+		int num_transitions = 0;
+		for (int index = 0; index < length; index++) {
+			List<State> states = candidates_.get(index);
+			offsets_[index + 2] = offsets_[index + 1] + states.size();
+			int num_previous_states = getNumStates(index - 1);
+			for (State state : states) {
+				for (int previous_state_index = 0; previous_state_index < num_previous_states; previous_state_index++) {
+					if (state.getTransition(previous_state_index) != null) {
+						num_transitions++;
+					}
+				}
+			}
+		}
+
+		int num_nodes = offsets_[length + 1];
+		state_scores_ = getDoubles(STATE_SCORES_, num_nodes);
+		transition_offsets_ = getInts(TRANSITION_OFFSETS_, num_nodes + 1);
+		transition_sources_ = getInts(TRANSITION_SOURCES_, num_transitions);
+		transition_scores_ = getDoubles(TRANSITION_SCORES_, num_transitions);
+
+		int transition = 0;
+		for (int index = 0; index < length; index++) {
+			int num_previous_states = getNumStates(index - 1);
+			int previous_offset = offsets_[index];
+			int node = offsets_[index + 1];
+			for (State state : candidates_.get(index)) {
+				state_scores_[node] = state.getScore();
+				transition_offsets_[node] = transition;
+				for (int previous_state_index = 0; previous_state_index < num_previous_states; previous_state_index++) {
+					Transition trans = state.getTransition(previous_state_index);
+					if (trans != null) {
+						transition_sources_[transition] = previous_offset
+								+ previous_state_index;
+						transition_scores_[transition] = trans.getScore();
+						transition++;
+					}
+				}
+				node++;
+			}
+		}
+		transition_offsets_[num_nodes] = transition;
+
+		forward();
+		backward();
+	}
+
+	private int getNumStates(int index) {
+		if (index < 0) {
+			return 1;
+		}
+		return candidates_.get(index).size();
+	}
+
+	private void forward() {
+		int length = candidates_.size();
+		forward_ = getDoubles(FORWARD_, offsets_[length + 1]);
+		for (int index = 0; index < length; index++) {
+			for (int node = offsets_[index + 1]; node < offsets_[index + 2]; node++) {
+				double score_sum = Double.NEGATIVE_INFINITY;
+				double state_score = state_scores_[node];
+				for (int transition = transition_offsets_[node]; transition < transition_offsets_[node + 1]; transition++) {
+					double score = state_score
+							+ transition_scores_[transition];
+					if (index > 0) {
+						score += forward_[transition_sources_[transition]];
+					}
+					score_sum = Numerics.sumLogProb(score_sum, score);
+				}
+				forward_[node] = score_sum;
+			}
+		}
+
+		assert offsets_[length + 1] - offsets_[length] == 1;
+	}
+
+	// The backward score of a node is the score of all paths from the node
+	// to the end of the lattice, not including the node itself. The incoming
+	// transitions of each position are visited in the order of the target
+	// states, so every sum is accumulated in the same order as when visiting
+	// the outgoing transitions of the source.
+	private void backward() {
+		int length = candidates_.size();
+		backward_ = getDoubles(BACKWARD_, offsets_[length]);
+		Arrays.fill(backward_, 0, offsets_[length], Double.NEGATIVE_INFINITY);
+		for (int index = length - 1; index >= 0; index--) {
+			for (int node = offsets_[index + 1]; node < offsets_[index + 2]; node++) {
+				double state_score = state_scores_[node];
+				for (int transition = transition_offsets_[node]; transition < transition_offsets_[node + 1]; transition++) {
+					double score = state_score
+							+ transition_scores_[transition];
+					if (index + 1 < length) {
+						score += backward_[node];
+					}
+					int source = transition_sources_[transition];
+					backward_[source] = Numerics.sumLogProb(backward_[source],
+							score);
+				}
+			}
+		}
+	}
+
+	public double partitionFunction() {
+		return forward_[offsets_[candidates_.size()]];
+	}
+
+	// Sum of all paths ending in state_index at position index.
+	// Index -1 is the boundary.
+	public double getForward(int index, int state_index) {
+		if (index == -1) {
+			return 0;
+		}
+		return forward_[offsets_[index + 1] + state_index];
+	}
+
+	// Sum of all paths starting after state_index at position index - 1.
+	// Index 0 is the boundary.
+	public double getBackward(int index, int state_index) {
+		if (index == candidates_.size()) {
+			return 0;
+		}
+		return backward_[offsets_[index] + state_index];
+	}
+
+	// Whether state_index at position index has a transition from any previous
+	// state that is mapped to a non-negative index.
+	public boolean hasTransition(int index, int state_index, int[] index_map) {
+		int node = offsets_[index + 1] + state_index;
+		int previous_offset = offsets_[index];
+		for (int transition = transition_offsets_[node]; transition < transition_offsets_[node + 1]; transition++) {
+			if (index_map[transition_sources_[transition] - previous_offset] >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getTransitionStart(int index, int state_index) {
+		return transition_offsets_[offsets_[index + 1] + state_index];
+	}
+
+	public int getTransitionEnd(int index, int state_index) {
+		return transition_offsets_[offsets_[index + 1] + state_index + 1];
+	}
+
+	// Index of the previous state of the transition.
+	public int getTransitionSource(int index, int transition) {
+		return transition_sources_[transition] - offsets_[index];
+	}
+
+	public double getTransitionScore(int transition) {
+		return transition_scores_[transition];
+	}
+
+	public double getStateScore(int index, int state_index) {
+		return state_scores_[offsets_[index + 1] + state_index];
+	}
+
+}
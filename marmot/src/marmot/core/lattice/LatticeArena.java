@@ -0,0 +1,44 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.core.lattice;
+
+// Buffers that are reused by the lattices of consecutive sentences. A lattice
+// that uses an arena is only valid until the next lattice is initialized with
+// the same arena, so an arena must not be shared between threads.
+//
+// Buffers grow to at least twice their old size, so if the sentences come
+// sorted by length the buffers are reallocated only a few times.
+public class LatticeArena {
+	private int[][] ints_;
+	private double[][] doubles_;
+
+	public LatticeArena(int num_int_buffers, int num_double_buffers) {
+		ints_ = new int[num_int_buffers][];
+		doubles_ = new double[num_double_buffers][];
+	}
+
+	// Returns a buffer of at least the given length. The content is
+	// undefined.
+	public int[] getInts(int buffer, int length) {
+		int[] array = ints_[buffer];
+		if (array == null || array.length < length) {
+			int old_length = (array == null) ? 0 : array.length;
+			array = new int[Math.max(length, 2 * old_length)];
+			ints_[buffer] = array;
+		}
+		return array;
+	}
+
+	// Returns a buffer of at least the given length. The content is
+	// undefined.
+	public double[] getDoubles(int buffer, int length) {
+		double[] array = doubles_[buffer];
+		if (array == null || array.length < length) {
+			int old_length = (array == null) ? 0 : array.length;
+			array = new double[Math.max(length, 2 * old_length)];
+			doubles_[buffer] = array;
+		}
+		return array;
+	}
+}
@@ -9,14 +9,13 @@ import java.util.List;
 
 import marmot.core.State;
 import marmot.core.Transition;
-import marmot.core.WeightVector;
+import marmot.core.WeightUpdater;
 import marmot.util.Numerics;
 
 
 
 public class SequenceSumLattice implements SumLattice {
-	private ForwardSequenceLattice forward_;
-	private BackwardSequenceLattice backward_;
+	private ArraySequenceLattice lattice_;
 	private List<List<State>> candidates_;
 	private double log_threshold_;
 	private boolean initilized_;
@@ -27,8 +26,13 @@ public class SequenceSumLattice implements SumLattice {
 	
 	public SequenceSumLattice(List<List<State>> candidates, State boundary,
 			double threshold, int order, boolean oracle) {
-		forward_ = new ForwardSequenceLattice(candidates, boundary);
-		backward_ = new BackwardSequenceLattice(candidates, boundary);
+		this(candidates, boundary, threshold, order, oracle, null);
+	}
+
+	// See ArraySequenceLattice for the arena.
+	public SequenceSumLattice(List<List<State>> candidates, State boundary,
+			double threshold, int order, boolean oracle, LatticeArena arena) {
+		lattice_ = new ArraySequenceLattice(candidates, arena);
 		candidates_ = candidates;
 		log_threshold_ = Math.log(threshold);
 		initilized_ = false;
@@ -48,8 +52,7 @@ public class SequenceSumLattice implements SumLattice {
 		}
 		initilized_ = true;
 
-		forward_.init();
-		backward_.init();
+		lattice_.init();
 	}
 
 	@Override
@@ -59,11 +62,7 @@ public class SequenceSumLattice implements SumLattice {
 	
 	public List<List<State>> pruneStates() {
 		init();
-		double score_sum_forward = forward_.partitionFunction();
-		//double score_sum_backward = backward_.partitionFunction();
-		//normalTest(score_sum_forward);
-		//normalTest(score_sum_backward);
-		//diffTest(score_sum_forward, score_sum_backward);
+		double score_sum_forward = lattice_.partitionFunction();
 
 		List<List<State>> candidates = new ArrayList<List<State>>(
 				candidates_.size());
@@ -83,22 +82,12 @@ public class SequenceSumLattice implements SumLattice {
 
 			for (int state_index = 0; state_index < num_states; state_index++) {
 				State state = candidates_.get(index).get(state_index);
-				double score = forward_.get(index, state_index)
-						+ backward_.get(index + 1, state_index);
+				double score = lattice_.getForward(index, state_index)
+						+ lattice_.getBackward(index + 1, state_index);
 				score_sum = Numerics.sumLogProb(score_sum, score);
 
 				if (index_map != null) {
-					boolean found_transition = false;
-					for (int transition_index = 0; transition_index < num_previous_states; transition_index++) {
-						State transition = state
-								.getTransition(transition_index);
-						if (transition != null
-								&& index_map[transition_index] >= 0) {
-							found_transition = true;
-							break;
-						}
-					}
-					if (!found_transition) {
+					if (!lattice_.hasTransition(index, state_index, index_map)) {
 						continue;
 					}
 				}
@@ -167,15 +156,11 @@ public class SequenceSumLattice implements SumLattice {
 	}
 
 	@Override
-	public double update(WeightVector weights, double step_width) {
+	public double update(WeightUpdater weights, double step_width) {
 		init();
 		double ll = 0;
 
-		double score_sum = forward_.partitionFunction();
-//		double score_sum_backward = backward_.partitionFunction();
-//		normalTest(score_sum);
-//		normalTest(score_sum_backward);
-//		diffTest(score_sum_backward, score_sum);
+		double score_sum = lattice_.partitionFunction();
 		
 		int last_gold_candidate_index = 0;
 		for (int index = 0; index < candidates_.size(); index++) {
@@ -191,32 +176,37 @@ public class SequenceSumLattice implements SumLattice {
 
 				boolean is_gold_sequence_state = state_index == gold_candidate_index;
 
-				int trans_index = 0;
-				for (State transition : state.getTransitions()) {
-					if (transition != null) {
-						double trans_score = forward_.get(index - 1,
-								trans_index)
-								+ state.getScore()
-								+ transition.getScore()
-								+ backward_.get(index + 1, state_index);
-
-						trans_sum = Numerics.sumLogProb(trans_sum, trans_score);
-
-						double p = Math.exp(trans_score - score_sum);
-//						trans_p_sum += p;
-
-						if (trans_index == last_gold_candidate_index && is_gold_sequence_state) {
-							ll += transition.getScore();
-							weights.updateWeights(transition, (1.0 - p) * step_width, true);
-						} else {
-							weights.updateWeights(transition, -p * step_width, true);
-						}
+				double backward_score = lattice_.getBackward(index + 1,
+						state_index);
+				int end = lattice_.getTransitionEnd(index, state_index);
+				for (int transition_index = lattice_.getTransitionStart(index,
+						state_index); transition_index < end; transition_index++) {
+					int trans_index = lattice_.getTransitionSource(index,
+							transition_index);
+					double transition_score = lattice_
+							.getTransitionScore(transition_index);
+					double trans_score = lattice_.getForward(index - 1,
+							trans_index)
+							+ state.getScore()
+							+ transition_score
+							+ backward_score;
+
+					trans_sum = Numerics.sumLogProb(trans_sum, trans_score);
+
+					double p = Math.exp(trans_score - score_sum);
+//					trans_p_sum += p;
+
+					Transition transition = state.getTransition(trans_index);
+					if (trans_index == last_gold_candidate_index && is_gold_sequence_state) {
+						ll += transition_score;
+						weights.updateWeights(transition, (1.0 - p) * step_width, true);
+					} else {
+						weights.updateWeights(transition, -p * step_width, true);
 					}
-					trans_index++;
 				}
 
-				double state_score = forward_.get(index, state_index)
-						+ backward_.get(index + 1, state_index);
+				double state_score = lattice_.getForward(index, state_index)
+						+ backward_score;
 
 				state_sum = Numerics.sumLogProb(state_sum, state_score);
 				double p = Math.exp(state_score - score_sum);
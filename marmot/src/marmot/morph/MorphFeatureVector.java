@@ -8,6 +8,7 @@ import marmot.core.FeatureVector;
 public class MorphFeatureVector extends FeatureVector {
 
 	private int word_index_ = -1;
+	private MorphWeightVector.TypeFeatures type_features_;
 
 	public MorphFeatureVector(int inital_capacity) {
 		this(inital_capacity, null, false);
@@ -30,4 +31,13 @@ public class MorphFeatureVector extends FeatureVector {
 		word_index_ = form_index;
 	}
 
+	// The cached type features this vector starts with or null.
+	public MorphWeightVector.TypeFeatures getTypeFeatures() {
+		return type_features_;
+	}
+
+	public void setTypeFeatures(MorphWeightVector.TypeFeatures type_features) {
+		type_features_ = type_features;
+	}
+
 }
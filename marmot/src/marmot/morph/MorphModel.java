@@ -4,6 +4,8 @@
 package marmot.morph;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,9 +18,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import marmot.core.Evaluator;
 import marmot.core.Model;
 import marmot.core.Options;
+import marmot.core.Result;
 import marmot.core.Sequence;
 import marmot.core.State;
 import marmot.core.Tagger;
@@ -28,6 +41,7 @@ import marmot.core.TrainerFactory;
 import marmot.core.WeightVector;
 import marmot.morph.analyzer.Analyzer;
 import marmot.morph.signature.Trie;
+import marmot.util.CompactWeights;
 import marmot.util.Copy;
 import marmot.util.Counter;
 import marmot.util.FileUtils;
@@ -57,6 +71,7 @@ public class MorphModel extends Model {
 	private int[][] transitions_;
 	private int[][][] tag_to_subtag_;
 	private List<Set<Integer>> observed_sets_;
+	private transient volatile int[][] observed_tables_;
 
 	private Trie trie_;
 	private boolean verbose_;
@@ -105,7 +120,7 @@ public class MorphModel extends Model {
 		if (shape_) {
 			shape_table_ = new SymbolTable<String>();
 		}
-		signature_cache = new HashMap<String, Integer>();
+		signature_cache = new ConcurrentHashMap<String, Integer>();
 
 		token_feature_table_ = new SymbolTable<String>();
 		weighted_token_feature_table_ = new SymbolTable<String>();
@@ -154,6 +169,7 @@ public class MorphModel extends Model {
 		vocab_ = extractVocabulary(options, sentences);
 		transitions_ = extractPossibleTransitions(options, sentences);
 		observed_sets_ = extractObservedSets(sentences);
+		observed_tables_ = null;
 		tag_classes_ = extractTagClasses(tag_tables_);
 		tag_to_subtag_ = extractSubTags(subtag_separator_);
 
@@ -180,9 +196,64 @@ public class MorphModel extends Model {
 		if (isRare(form_index)) {
 			form_index = word_table_.size();
 		}
-		Set<Integer> set = observed_sets_.get(level);
 		int index = getBiIndex(form_index, level, tag_index);
-		return set.contains(index);
+		if (index == EMPTY_SLOT_) {
+			return observed_sets_.get(level).contains(index);
+		}
+		return contains(getObservedTables()[level], index);
+	}
+
+	// The observed sets are queried for every candidate state. As open
+	// addressing tables they don't need boxing and the consecutive indexes
+	// don't collide.
+	private static final int EMPTY_SLOT_ = Integer.MIN_VALUE;
+
+	private int[][] getObservedTables() {
+		int[][] tables = observed_tables_;
+		if (tables == null) {
+			tables = new int[observed_sets_.size()][];
+			for (int level = 0; level < tables.length; level++) {
+				tables[level] = toTable(observed_sets_.get(level));
+			}
+			observed_tables_ = tables;
+		}
+		return tables;
+	}
+
+	private static int getSlot(int index, int mask) {
+		int hash = index * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private static int[] toTable(Set<Integer> set) {
+		int length = 2;
+		while (length < 2 * set.size()) {
+			length *= 2;
+		}
+
+		int[] table = new int[length];
+		Arrays.fill(table, EMPTY_SLOT_);
+		int mask = length - 1;
+		for (int index : set) {
+			int slot = getSlot(index, mask);
+			while (table[slot] != EMPTY_SLOT_) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index;
+		}
+		return table;
+	}
+
+	private static boolean contains(int[] table, int index) {
+		int mask = table.length - 1;
+		int slot = getSlot(index, mask);
+		while (table[slot] != EMPTY_SLOT_) {
+			if (table[slot] == index) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
 	}
 
 	private int[][][] extractSubTags(String subtag_separator) {
@@ -457,15 +528,17 @@ public class MorphModel extends Model {
 
 			if (char_indexes[index] < 0) {
 				if (verbose_) {
+					synchronized (this) {
 
-					if (unseen_char_set_ == null) {
-						unseen_char_set_ = new HashSet<Character>();
-					}
+						if (unseen_char_set_ == null) {
+							unseen_char_set_ = new HashSet<Character>();
+						}
 
-					if (!unseen_char_set_.contains(c)) {
-						System.err
-								.format("Warning: Unknown character: %c\n", c);
-						unseen_char_set_.add(c);
+						if (!unseen_char_set_.contains(c)) {
+							System.err.format(
+									"Warning: Unknown character: %c\n", c);
+							unseen_char_set_.add(c);
+						}
 					}
 				}
 			}
@@ -475,7 +548,7 @@ public class MorphModel extends Model {
 
 	private void addSignature(Word word, String form, boolean insert) {
 		if (signature_cache == null) {
-			signature_cache = new HashMap<String, Integer>();
+			signature_cache = new ConcurrentHashMap<String, Integer>();
 		}
 
 		Integer signature = signature_cache.get(form);
@@ -676,6 +749,13 @@ public class MorphModel extends Model {
 		return word_table_;
 	}
 
+	// Training parameters that do not change MorphModel.init. Configurations
+	// that only differ in these can share a single model setup.
+	private static final List<String> SHARED_SETUP_PARAMETERS_ = Arrays
+			.asList(Options.ORDER, Options.SEED, Options.PENALTY,
+					Options.QUADRATIC_PENALTY, Options.NUM_ITERATIONS,
+					Options.SHUFFLE);
+
 	public static Tagger trainOptimal(MorphOptions options,
 			Collection<Sequence> train_sentences,
 			Collection<Sequence> test_sentences, List<String> parameters,
@@ -688,50 +768,283 @@ public class MorphModel extends Model {
 		assert parameters.size() == values_list.size();
 		assert !parameters.isEmpty();
 
-		if (parameters.size() == 1) {
-			return trainOptimal(options, train_sentences, test_sentences,
-					parameters.get(0), values_list.get(0), results);
+		List<MorphOptions> configurations = new ArrayList<MorphOptions>();
+		addConfigurations(options, parameters, values_list, 0, configurations);
+
+		return trainConfigurations(options, train_sentences, test_sentences,
+				parameters, configurations, results);
+	}
+
+	private static void addConfigurations(MorphOptions options,
+			List<String> parameters, List<List<String>> values_list,
+			int index, List<MorphOptions> configurations) {
+		if (index == parameters.size()) {
+			configurations.add(options);
+			return;
 		}
 
-		parameters = new LinkedList<String>(parameters);
-		values_list = new LinkedList<List<String>>(values_list);
+		for (String value : values_list.get(index)) {
+			MorphOptions current_options = Copy.clone(options);
+			current_options.setProperty(parameters.get(index), value);
+			addConfigurations(current_options, parameters, values_list,
+					index + 1, configurations);
+		}
+	}
+
+	private static Tagger trainConfigurations(MorphOptions options,
+			Collection<Sequence> train_sentences,
+			Collection<Sequence> test_sentences, List<String> parameters,
+			List<MorphOptions> configurations, List<MorphEntry> results) {
+
+		// MorphModel.init writes indexes into the training sentences, so
+		// configurations that need their own setup run one after another.
+		MorphModel model = null;
+		int num_threads = 1;
+		if (SHARED_SETUP_PARAMETERS_.containsAll(parameters)) {
+			model = createModel(options, train_sentences, test_sentences);
+			num_threads = Math.max(1,
+					Math.min(options.getNumThreads(), configurations.size()));
+		}
+
+		GridMonitor monitor = new GridMonitor(
+				options.getOptimizerCancelMargin(), configurations.size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(num_threads);
+		CompletionService<Tagger> completion_service = new ExecutorCompletionService<Tagger>(
+				executor);
+		Map<Future<Tagger>, Integer> indexes = new HashMap<Future<Tagger>, Integer>();
 
 		Tagger best_tagger = null;
+		int best_index = -1;
+		MorphEntry[] entries = new MorphEntry[configurations.size()];
+
+		try {
+			for (int index = 0; index < configurations.size(); index++) {
+				Future<Tagger> future = completion_service
+						.submit(new GridCallable(model, Copy
+								.clone(configurations.get(index)),
+								train_sentences, test_sentences, monitor,
+								index));
+				indexes.put(future, index);
+			}
 
-		String parameter = ((LinkedList<String>) parameters).pollFirst();
-		Collection<String> values = ((LinkedList<List<String>>) values_list)
-				.pollFirst();
+			for (int count = 0; count < configurations.size(); count++) {
+				Future<Tagger> future = completion_service.take();
+				int index = indexes.remove(future);
+				Tagger tagger = future.get();
 
-		for (String value : values) {
-			options = Copy.clone(options);
-			options.setProperty(parameter, value);
-			Tagger tagger = trainOptimal(options, train_sentences,
-					test_sentences, parameters, values_list, results);
+				if (tagger == null) {
+					if (options.getVerbose()) {
+						System.err.format("Cancelled configuration %d\n",
+								index);
+					}
+					entries[index] = new MorphEntry(configurations.get(index),
+							(MorphResult) monitor.getCancelledResult(index),
+							true);
+					continue;
+				}
 
-			if (best_tagger == null) {
-				best_tagger = tagger;
-			} else {
-				if (tagger.getResult().getScore() > best_tagger.getResult()
-						.getScore()) {
+				entries[index] = new MorphEntry(configurations.get(index),
+						(MorphResult) tagger.getResult());
+
+				// Ties go to the configuration that comes first in the grid.
+				if (best_tagger == null) {
 					best_tagger = tagger;
+					best_index = index;
+				} else {
+					double score = tagger.getResult().getScore();
+					double best_score = best_tagger.getResult().getScore();
+					if (score > best_score
+							|| (score == best_score && index < best_index)) {
+						best_tagger = tagger;
+						best_index = index;
+					}
 				}
 			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
 		}
 
+		results.addAll(Arrays.asList(entries));
+
 		return best_tagger;
 	}
 
+	// Keeps the score of every configuration after every iteration. A
+	// configuration is only compared against configurations that come
+	// earlier in the grid, after they have finished the same iteration, so
+	// which configurations get cancelled does not depend on thread timing.
+	// The pool starts configurations in grid order, so the earlier
+	// configurations a configuration waits for are always running.
+	private static class GridMonitor {
+		private double margin_;
+		private List<double[]> scores_;
+		private int[] num_iterations_;
+		private boolean[] finished_;
+		private Result[] cancelled_results_;
+
+		public GridMonitor(double margin, int num_configurations) {
+			margin_ = margin;
+			scores_ = new ArrayList<double[]>();
+			num_iterations_ = new int[num_configurations];
+			finished_ = new boolean[num_configurations];
+			cancelled_results_ = new Result[num_configurations];
+		}
+
+		public boolean isEnabled() {
+			return margin_ >= 0;
+		}
+
+		public synchronized boolean isDominated(int index, int iteration,
+				double score) throws InterruptedException {
+			while (scores_.size() <= iteration) {
+				scores_.add(new double[finished_.length]);
+			}
+			scores_.get(iteration)[index] = score;
+			num_iterations_[index] = iteration + 1;
+			notifyAll();
+
+			double best_score = Double.NEGATIVE_INFINITY;
+			for (int other = 0; other < index; other++) {
+				while (!finished_[other] && num_iterations_[other] <= iteration) {
+					wait();
+				}
+
+				if (num_iterations_[other] > iteration) {
+					best_score = Math.max(best_score,
+							scores_.get(iteration)[other]);
+				}
+			}
+
+			return score < best_score - margin_;
+		}
+
+		public synchronized void cancel(int index, Result result) {
+			cancelled_results_[index] = result;
+		}
+
+		public synchronized void finish(int index) {
+			finished_[index] = true;
+			notifyAll();
+		}
+
+		public synchronized Result getCancelledResult(int index) {
+			return cancelled_results_[index];
+		}
+	}
+
+	// Cancels training by throwing a CancellationException after an
+	// iteration whose score is more than the margin below the best score
+	// of an earlier configuration after the same iteration. The final
+	// iteration is never cancelled.
+	private static class GridEvaluator implements Evaluator {
+		private Evaluator evaluator_;
+		private GridMonitor monitor_;
+		private int index_;
+		private int num_iterations_;
+		private int iteration_;
+
+		public GridEvaluator(Evaluator evaluator, GridMonitor monitor,
+				int index, int num_iterations) {
+			evaluator_ = evaluator;
+			monitor_ = monitor;
+			index_ = index;
+			num_iterations_ = num_iterations;
+			iteration_ = 0;
+		}
+
+		@Override
+		public Result eval(Tagger tagger) {
+			Result result = evaluator_.eval(tagger);
+			boolean dominated;
+			try {
+				dominated = monitor_.isDominated(index_, iteration_,
+						result.getScore());
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+
+			if (iteration_ + 1 < num_iterations_ && dominated) {
+				monitor_.cancel(index_, result);
+				throw new CancellationException();
+			}
+			iteration_++;
+			return result;
+		}
+	}
+
+	private static class GridCallable implements Callable<Tagger> {
+		private MorphModel model_;
+		private MorphOptions options_;
+		private Collection<Sequence> train_sentences_;
+		private Collection<Sequence> test_sentences_;
+		private GridMonitor monitor_;
+		private int index_;
+
+		public GridCallable(MorphModel model, MorphOptions options,
+				Collection<Sequence> train_sentences,
+				Collection<Sequence> test_sentences, GridMonitor monitor,
+				int index) {
+			model_ = model;
+			options_ = options;
+			train_sentences_ = train_sentences;
+			test_sentences_ = test_sentences;
+			monitor_ = monitor;
+			index_ = index;
+		}
+
+		@Override
+		public Tagger call() {
+			try {
+				MorphModel model;
+				if (model_ == null) {
+					model = createModel(options_, train_sentences_,
+							test_sentences_);
+				} else {
+					model = (MorphModel) model_.copy(options_);
+				}
+
+				Evaluator evaluator = new MorphEvaluator(test_sentences_);
+				if (monitor_.isEnabled()) {
+					evaluator = new GridEvaluator(evaluator, monitor_, index_,
+							options_.getNumIterations());
+				}
+
+				return train(model, options_, train_sentences_, evaluator);
+			} catch (CancellationException e) {
+				return null;
+			} finally {
+				monitor_.finish(index_);
+			}
+		}
+	}
+
 	public static class MorphEntry implements Comparable<MorphEntry> {
 		private MorphOptions options_;
 		private MorphResult result_;
+		private boolean cancelled_;
 
 		public MorphEntry(MorphOptions options, MorphResult result) {
+			this(options, result, false);
+		}
+
+		public MorphEntry(MorphOptions options, MorphResult result,
+				boolean cancelled) {
 			options_ = options;
 			result_ = result;
+			cancelled_ = cancelled;
 		}
 
+		// Cancelled configurations go after all finished ones.
 		@Override
 		public int compareTo(MorphEntry o) {
+			if (cancelled_ != o.cancelled_) {
+				return (cancelled_) ? 1 : -1;
+			}
 			return -Double.compare(result_.getScore(), o.result_.getScore());
 		}
 
@@ -739,42 +1052,32 @@ public class MorphModel extends Model {
 			return options_;
 		}
 
+		// For cancelled configurations the result after the iteration that
+		// got them cancelled.
 		public MorphResult getResult() {
 			return result_;
 		}
 
+		public boolean isCancelled() {
+			return cancelled_;
+		}
+
 	}
 
 	public static Tagger trainOptimal(MorphOptions options,
 			Collection<Sequence> train_sentences,
 			Collection<Sequence> test_sentences, String parameter,
 			Collection<String> values, List<MorphEntry> results) {
-		Tagger best_tagger = null;
 
 		if (test_sentences == null) {
 			throw new InvalidParameterException("test_sentebces is null!");
 		}
 
-		for (String value : values) {
-			options = Copy.clone(options);
-			options.setProperty(parameter, value);
-			Tagger tagger = train(Copy.clone(options), train_sentences,
-					test_sentences);
+		List<List<String>> values_list = new LinkedList<List<String>>();
+		values_list.add(new ArrayList<String>(values));
 
-			results.add(new MorphEntry(options, (MorphResult) tagger
-					.getResult()));
-
-			if (best_tagger == null) {
-				best_tagger = tagger;
-			} else {
-				if (tagger.getResult().getScore() > best_tagger.getResult()
-						.getScore()) {
-					best_tagger = tagger;
-				}
-			}
-		}
-
-		return best_tagger;
+		return trainOptimal(options, train_sentences, test_sentences,
+				Collections.singletonList(parameter), values_list, results);
 	}
 
 	public static Tagger trainOptimal(MorphOptions options,
@@ -811,6 +1114,9 @@ public class MorphModel extends Model {
 			}
 			sb.append('\t');
 			sb.append(result.getResult().getScore());
+			if (result.isCancelled()) {
+				sb.append("\tcancelled");
+			}
 			System.err.println(sb.toString());
 		}
 
@@ -821,6 +1127,20 @@ public class MorphModel extends Model {
 			Collection<Sequence> train_sentences,
 			Collection<Sequence> test_sentences) {
 
+		MorphModel model = createModel(options, train_sentences,
+				test_sentences);
+
+		MorphEvaluator evaluator = null;
+		if (test_sentences != null) {
+			evaluator = new MorphEvaluator(test_sentences);
+		}
+
+		return train(model, options, train_sentences, evaluator);
+	}
+
+	private static MorphModel createModel(MorphOptions options,
+			Collection<Sequence> train_sentences,
+			Collection<Sequence> test_sentences) {
 		MorphModel model = new MorphModel();
 		model.init(options, train_sentences);
 
@@ -833,18 +1153,22 @@ public class MorphModel extends Model {
 			}
 		}
 
+		return model;
+	}
+
+	private static Tagger train(MorphModel model, MorphOptions options,
+			Collection<Sequence> train_sentences, Evaluator evaluator) {
 		WeightVector weights = new MorphWeightVector(options);
 		weights.init(model, train_sentences);
 		Tagger tagger = new MorphTagger(model, model.getOrder(), weights);
 
 		Trainer trainer = TrainerFactory.create(options);
+		trainer.train(tagger, train_sentences, evaluator);
 
-		MorphEvaluator evaluator = null;
-		if (test_sentences != null) {
-			evaluator = new MorphEvaluator(test_sentences);
+		CompactWeights.Mode storage = options.getWeightStorage();
+		if (storage != null) {
+			((MorphWeightVector) weights).compact(storage);
 		}
-
-		trainer.train(tagger, train_sentences, evaluator);
 		return tagger;
 	}
 
@@ -916,4 +1240,10 @@ public class MorphModel extends Model {
 		return train(options, train_sequences, null);
 	}
 
+	private void readObject(ObjectInputStream ois)
+			throws ClassNotFoundException, IOException {
+		ois.defaultReadObject();
+		signature_cache = new ConcurrentHashMap<String, Integer>();
+	}
+
 }
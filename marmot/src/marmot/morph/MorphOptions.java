@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import marmot.core.Options;
+import marmot.util.CompactWeights;
 import marmot.util.StringUtils.Mode;
 
 public class MorphOptions extends Options {
@@ -36,6 +37,11 @@ public class MorphOptions extends Options {
 	public static final String USE_HASH_VECTOR = "use-hash-vector";
 	public static final String FEATURE_TEMPLATES = "feature-templates";
 	public static final String MAX_AFFIX_LENGTH = "max-affix-length";
+	public static final String OPTIMIZER_CANCEL_MARGIN = "optimizer-cancel-margin";
+	public static final String WEIGHT_STORAGE = "weight-storage";
+	public static final String TYPE_CACHE_SIZE = "type-cache-size";
+	public static final String MIN_FEATURE_COUNT = "min-feature-count";
+	public static final String MAX_FEATURES_PER_TEMPLATE = "max-features-per-template";
 
 
 	
@@ -92,6 +98,16 @@ public class MorphOptions extends Options {
 		COMMENTS_.put(FEATURE_TEMPLATES, "Comma separated list, activates individual templates.");
 		DEFALUT_VALUES_.put(MAX_AFFIX_LENGTH, "10");
 		COMMENTS_.put(MAX_AFFIX_LENGTH, "Max affix length to use in feature extraction.");
+		DEFALUT_VALUES_.put(OPTIMIZER_CANCEL_MARGIN, "-1.0");
+		COMMENTS_.put(OPTIMIZER_CANCEL_MARGIN, "Hyper-parameter search cancels configurations whose accuracy after an iteration is this much below the best accuracy of an earlier configuration of the grid after the same iteration. Negative values disable cancellation.");
+		DEFALUT_VALUES_.put(WEIGHT_STORAGE, "double");
+		COMMENTS_.put(WEIGHT_STORAGE, "How to store the weights of the trained model: double, float, int16, int8 or sparse. float, int16 and int8 drop zero weight blocks and quantize the rest, which makes models smaller but can cost some accuracy. sparse stores only the non-zero weights of every feature and keeps them exact.");
+		DEFALUT_VALUES_.put(TYPE_CACHE_SIZE, "20000");
+		COMMENTS_.put(TYPE_CACHE_SIZE, "Number of word types whose features and scores are cached during tagging. 0 disables the cache.");
+		DEFALUT_VALUES_.put(MIN_FEATURE_COUNT, "1");
+		COMMENTS_.put(MIN_FEATURE_COUNT, "Observation features (form, affix, context, ...) that occur fewer times in the training data are not added to the model. 1 keeps all features.");
+		DEFALUT_VALUES_.put(MAX_FEATURES_PER_TEMPLATE, "0");
+		COMMENTS_.put(MAX_FEATURES_PER_TEMPLATE, "Keeps only this many of the most frequent observation features per feature template. 0 means no limit.");
 
 	}
 
@@ -209,4 +225,31 @@ public class MorphOptions extends Options {
 		return Integer.parseInt(getProperty(MAX_AFFIX_LENGTH));
 	}
 
+	public double getOptimizerCancelMargin() {
+		return Double.parseDouble(getProperty(OPTIMIZER_CANCEL_MARGIN));
+	}
+
+	public int getTypeCacheSize() {
+		return Integer.parseInt(getProperty(TYPE_CACHE_SIZE));
+	}
+
+	public int getMinFeatureCount() {
+		return Integer.parseInt(getProperty(MIN_FEATURE_COUNT));
+	}
+
+	public int getMaxFeaturesPerTemplate() {
+		return Integer.parseInt(getProperty(MAX_FEATURES_PER_TEMPLATE));
+	}
+
+	// Returns null for the default double storage.
+	public CompactWeights.Mode getWeightStorage() {
+		String prop = getProperty(WEIGHT_STORAGE);
+
+		if (prop.equalsIgnoreCase("double")) {
+			return null;
+		}
+
+		return CompactWeights.Mode.valueOf(prop.toUpperCase());
+	}
+
 }
@@ -3,13 +3,17 @@
 
 package marmot.morph;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import marmot.core.FeatureVector;
 import marmot.core.Model;
 import marmot.core.Sequence;
 import marmot.core.SimpleTagger;
 import marmot.core.Token;
 import marmot.core.WeightVector;
+import marmot.util.BoundedCache;
 
 public class MorphTagger extends SimpleTagger {
 
@@ -29,5 +33,51 @@ public class MorphTagger extends SimpleTagger {
 		
 		return super.tag(sequence);
 	}
+
+	// Indexes the words of the batch and extracts their state features
+	// up front. The type features of repeated word forms are extracted only
+	// once per batch, or taken from the type cache of the weights if it is
+	// enabled.
+	@Override
+	public List<List<List<String>>> tagAll(List<Sequence> sentences) {
+		MorphModel model = (MorphModel) getModel();
+		MorphWeightVector weights = (MorphWeightVector) getWeightVector();
+		BoundedCache<String, MorphWeightVector.TypeFeatures> type_features = weights
+				.getTypeCache();
+		if (type_features == null) {
+			type_features = new BoundedCache<String, MorphWeightVector.TypeFeatures>(
+					Integer.MAX_VALUE);
+		}
+
+		List<FeatureVector> old_vectors = new ArrayList<FeatureVector>();
+		for (Sequence sentence : sentences) {
+			for (Token token : sentence) {
+				model.addIndexes((Word) token, false);
+			}
+			for (int index = 0; index < sentence.size(); index++) {
+				Token token = sentence.get(index);
+				old_vectors.add(token.getVector());
+				token.setVector(weights.extractStateFeatures(sentence, index,
+						type_features));
+			}
+		}
+
+		try {
+			return super.tagAll(sentences);
+		} finally {
+			Iterator<FeatureVector> iterator = old_vectors.iterator();
+			for (Sequence sentence : sentences) {
+				for (Token token : sentence) {
+					token.setVector(iterator.next());
+				}
+			}
+		}
+	}
+
+	// Tags a sequence whose words have already been indexed with
+	// MorphModel.addIndexes.
+	public List<List<String>> tagIndexed(Sequence sequence) {
+		return super.tag(sequence);
+	}
 	
 }
@@ -3,11 +3,21 @@
 
 package marmot.morph;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 import marmot.core.ArrayFloatFeatureVector;
 import marmot.core.ConcatFloatFeatureVector;
+import marmot.core.DeferredFeatures;
 import marmot.core.Feature;
 import marmot.core.FeatureVector;
 import marmot.core.FloatFeatureVector;
@@ -17,7 +27,14 @@ import marmot.core.Sequence;
 import marmot.core.State;
 import marmot.core.WeightVector;
 import marmot.core.ZeroFloatFeatureVector;
+import marmot.util.BinaryModel;
+import marmot.util.BoundedCache;
+import marmot.util.CompactWeights;
 import marmot.util.Encoder;
+import marmot.util.LongEncoder;
+import marmot.util.LongList;
+import marmot.util.LongSymbolTable;
+import marmot.util.SparseDoubleArray;
 import marmot.util.SymbolTable;
 
 public class MorphWeightVector implements WeightVector, FloatWeights {
@@ -25,23 +42,51 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 	private int max_affix_length_ ;
 	private int num_state_features_;
 
-	private static final int ENCODER_CAPACITY_ = 10;
-
 	private boolean use_hash_vector;
 
-	private transient Encoder encoder_;
+	private transient volatile ThreadLocal<LongEncoder> encoder_;
+	private transient volatile ThreadLocal<LongDeferredFeatures> deferred_;
 
 	private boolean penalize_ = false;
 	private double linear_penalty_;
 
-	private transient double[] accumulated_penalty_;
-	private transient double[] accumulated_float_penalty_;
+	// Penalty already applied to each weight. Only pages with weights that
+	// have been penalized since setPenalty are allocated.
+	private transient SparseDoubleArray accumulated_penalty_;
+	private transient SparseDoubleArray accumulated_float_penalty_;
 	private double[] weights_;
 	private double[] float_weights_;
 
+	// Set instead of weights_ and float_weights_ when loaded from a
+	// BinaryModel. Such a vector can be used for tagging only.
+	private transient DoubleBuffer mapped_weights_;
+	private transient DoubleBuffer mapped_float_weights_;
+	private int weights_block_;
+	private int float_weights_block_;
+
+	// Set instead of weights_ and float_weights_ by compact.
+	private CompactWeights compact_weights_;
+	private CompactWeights compact_float_weights_;
+
 	private boolean extend_feature_set_;
+	private int type_cache_size_;
+	private transient volatile BoundedCache<String, TypeFeatures> type_cache_;
+	// Changes whenever the weights change, see getHeadScores.
+	private transient volatile int weights_version_;
+	private boolean defer_feature_set_;
+	private int min_feature_count_;
+	private int max_features_per_template_;
+	// Set if the observation features were counted in init. Only the ones
+	// that were kept are in the feature set then and no others are added.
+	private boolean prune_observation_features_;
+	private transient FeatureCounts feature_counts_;
+	private boolean verbose_;
 	private MorphModel model_;
+	private LongSymbolTable long_feature_table_;
+	// Only set while reading models written before features were encoded
+	// as long keys, see convertFeatureTable.
 	private SymbolTable<Feature> feature_table_;
+	private LongSymbolTable prefix_table_;
 
 	private int simple_sub_morph_start_index_;
 
@@ -84,6 +129,10 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		use_state_features_ = options.getUseDefaultFeatures();
 		use_hash_vector = options.getUseHashVector();
 		max_affix_length_ = options.getMaxAffixLength();
+		type_cache_size_ = options.getTypeCacheSize();
+		min_feature_count_ = options.getMinFeatureCount();
+		max_features_per_template_ = options.getMaxFeaturesPerTemplate();
+		verbose_ = options.getVerbose();
 		
 		use_form_feature_ = true;
 		use_rare_feature_ = true;
@@ -191,6 +240,77 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 	@Override
 	public void setExtendFeatureSet(boolean flag) {
 		extend_feature_set_ = flag;
+		// Cached types would miss features added in the meantime.
+		type_cache_ = null;
+	}
+
+	// Sets the maximal number of word types in the type cache. Also works for
+	// models that were trained without the option.
+	public void setTypeCacheSize(int size) {
+		type_cache_size_ = size;
+		type_cache_ = null;
+	}
+
+	// Returns null if the cache is disabled or the feature set can still
+	// grow.
+	public BoundedCache<String, TypeFeatures> getTypeCache() {
+		if (type_cache_size_ <= 0 || extend_feature_set_) {
+			return null;
+		}
+
+		BoundedCache<String, TypeFeatures> type_cache = type_cache_;
+		if (type_cache == null) {
+			synchronized (this) {
+				if (type_cache_ == null) {
+					type_cache_ = new BoundedCache<String, TypeFeatures>(
+							type_cache_size_);
+				}
+				type_cache = type_cache_;
+			}
+		}
+		return type_cache;
+	}
+
+	// The symbol tables can grow concurrently, so deferring is only needed
+	// for hashed weights: There the indexes of new features decide which
+	// weights collide and thus have to be assigned in a fixed order. Without
+	// hashing every feature has its own weights and the order doesn't change
+	// any score.
+	@Override
+	public void setDeferFeatureSet(boolean flag) {
+		defer_feature_set_ = flag && use_hash_vector;
+	}
+
+	private static class LongDeferredFeatures implements DeferredFeatures {
+		private LongList prefixes_ = new LongList();
+		private LongList features_ = new LongList();
+
+		@Override
+		public boolean isEmpty() {
+			return prefixes_.isEmpty() && features_.isEmpty();
+		}
+	}
+
+	@Override
+	public DeferredFeatures takeDeferredFeatures() {
+		prepareThreadLocals();
+		LongDeferredFeatures features = deferred_.get();
+		deferred_.remove();
+		return features;
+	}
+
+	@Override
+	public void addDeferredFeatures(DeferredFeatures features) {
+		LongDeferredFeatures long_features = (LongDeferredFeatures) features;
+
+		for (int index = 0; index < long_features.prefixes_.size(); index++) {
+			prefix_table_.toIndex(long_features.prefixes_.get(index), true);
+		}
+
+		for (int index = 0; index < long_features.features_.size(); index++) {
+			long_feature_table_.toIndex(long_features.features_.get(index),
+					true);
+		}
 	}
 
 	@Override
@@ -203,35 +323,34 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 			penalize_ = true;
 			linear_penalty_ = (double) (linear_penalty / scale_factor_);
 			if (accumulated_penalty_ == null) {
-				accumulated_penalty_ = new double[weights_.length];
+				accumulated_penalty_ = new SparseDoubleArray();
 			}
 			if (accumulated_float_penalty_ == null && float_weights_ != null) {
-				accumulated_float_penalty_ = new double[float_weights_.length];
+				accumulated_float_penalty_ = new SparseDoubleArray();
 			}
 		}
 	}
 
 	@Override
 	public FeatureVector extractStateFeatures(State state) {
-		prepareEncoder();
+		LongEncoder encoder = prepareEncoder();
 		MorphFeatureVector new_vector = new MorphFeatureVector(
 				1 + state.getLevel(), state.getVector());
 
 		int fc = 0;
 
-		encoder_.append(0, order_bits_);
-		encoder_.append(state.getLevel() + 1, level_bits_);
-		encoder_.append(fc, 2);
+		encoder.append(0, order_bits_);
+		encoder.append(state.getLevel() + 1, level_bits_);
+		encoder.append(fc, 2);
 
 		State run = state.getZeroOrderState();
 		while (run != null) {
-			encoder_.append(run.getLevel(), level_bits_);
-			encoder_.append(run.getIndex(), tag_bits_[run.getLevel()]);
-			new_vector.add(getFeatureIndex(encoder_
-					.getFeature(extend_feature_set_)));
+			encoder.append(run.getLevel(), level_bits_);
+			encoder.append(run.getIndex(), tag_bits_[run.getLevel()]);
+			new_vector.add(getFeatureIndex(encoder));
 			run = run.getSubLevelState();
 		}
-		encoder_.reset();
+		encoder.reset();
 		fc++;
 
 		new_vector.setIsState(true);
@@ -242,9 +361,66 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 
 	@Override
 	public FeatureVector extractStateFeatures(Sequence sequence, int token_index) {
-		prepareEncoder();
+		return extractStateFeatures(sequence, token_index, getTypeCache());
+	}
+
+	// The state features that only depend on the word form: The features
+	// before and after the lexical context features.
+	public static class TypeFeatures {
+		private int[] head_;
+		private int num_head_groups_;
+		private int[] tail_;
+		private int num_tail_groups_;
+		private volatile HeadScores head_scores_;
+
+		public TypeFeatures(int[] head, int num_head_groups, int[] tail,
+				int num_tail_groups) {
+			head_ = head;
+			num_head_groups_ = num_head_groups;
+			tail_ = tail;
+			num_tail_groups_ = num_tail_groups;
+		}
+	}
+
+	private static class HeadScores {
+		private int weights_version_;
+		private double[] scores_;
+
+		public HeadScores(int weights_version, double[] scores) {
+			weights_version_ = weights_version;
+			scores_ = scores;
+		}
+	}
+
+	private static void addAll(FeatureVector features, int[] indexes) {
+		for (int index : indexes) {
+			features.add(index);
+		}
+	}
+
+	// Like extractStateFeatures(Sequence, int), but the type features of the
+	// word are taken from type_features (keyed by word form) if present and
+	// added otherwise. The returned vectors have the same features. The cache
+	// is ignored while the feature set can grow, because the type features
+	// would miss new features.
+	public FeatureVector extractStateFeatures(Sequence sequence,
+			int token_index, BoundedCache<String, TypeFeatures> type_features) {
+		LongEncoder encoder = prepareEncoder();
 		Word word = (Word) sequence.get(token_index);
 
+		if (extend_feature_set_) {
+			type_features = null;
+		}
+
+		TypeFeatures type = null;
+		if (type_features != null) {
+			type = type_features.get(word.getWordForm());
+		}
+		int[] head = new int[0];
+		int num_head_groups = 0;
+		int[] tail = new int[0];
+		int num_tail_groups = 0;
+
 		int[] mdict_indexes = null;
 		if (mdict_ != null) {
 			mdict_indexes = mdict_.getIndexes(word.getWordForm());
@@ -259,47 +435,55 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 
 		if (use_state_features_) {
 
-			if (use_form_feature_) {
+			if (type != null) {
+				addAll(features, type.head_);
+				fc += type.num_head_groups_;
+			} else {
+				if (use_form_feature_) {
+
+					if (form_index >= 0) {
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						encoder.append(form_index, word_bits_);
+						features.add(getObservationFeatureIndex(encoder, fc));
+						encoder.reset();
+					}
 
-				if (form_index >= 0) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
-					encoder_.append(form_index, word_bits_);
-					features.add(getFeatureIndex(encoder_
-							.getFeature(extend_feature_set_)));
-					encoder_.reset();
+					fc++;
 				}
 
-				fc++;
-			}
+				if (use_rare_feature_) {
 
-			if (use_rare_feature_) {
+					encoder.append(0, order_bits_);
+					encoder.append(0, level_bits_);
+					encoder.append(fc, state_feature_bits_);
+					encoder.append(is_rare);
+					features.add(getObservationFeatureIndex(encoder, fc));
+					encoder.reset();
 
-				encoder_.append(0, order_bits_);
-				encoder_.append(0, level_bits_);
-				encoder_.append(fc, state_feature_bits_);
-				encoder_.append(is_rare);
-				features.add(getFeatureIndex(encoder_
-						.getFeature(extend_feature_set_)));
-				encoder_.reset();
+					fc++;
+				}
 
-				fc++;
-			}
+				if (shape_) {
+					int shape_index = -1;
+					shape_index = word.getWordShapeIndex();
+					if (is_rare && shape_index >= 0) {
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						encoder.append(shape_index, shape_bits_);
+						features.add(getObservationFeatureIndex(encoder, fc));
+						encoder.reset();
+					}
+					fc++;
+				}
 
-			if (shape_) {
-				int shape_index = -1;
-				shape_index = word.getWordShapeIndex();
-				if (is_rare && shape_index >= 0) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
-					encoder_.append(shape_index, shape_bits_);
-					features.add(getFeatureIndex(encoder_
-							.getFeature(extend_feature_set_)));
-					encoder_.reset();
+				if (type_features != null) {
+					head = Arrays.copyOf(features.getFeatures(),
+							features.size());
+					num_head_groups = fc;
 				}
-				fc++;
 			}
 
 			if (token_index - 1 >= 0) {
@@ -311,19 +495,17 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 
 					if (pform_index >= 0) {
 
-						encoder_.append(0, order_bits_);
-						encoder_.append(0, level_bits_);
-						encoder_.append(fc, state_feature_bits_);
-						encoder_.append(pform_index, word_bits_);
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						encoder.append(pform_index, word_bits_);
+						features.add(getObservationFeatureIndex(encoder, fc));
 
 						if (form_index >= 0 && use_bigrams_) {
-							encoder_.append(form_index, word_bits_);
-							features.add(getFeatureIndex(encoder_
-									.getFeature(extend_feature_set_)));
+							encoder.append(form_index, word_bits_);
+							features.add(getObservationFeatureIndex(encoder, fc));
 						}
-						encoder_.reset();
+						encoder.reset();
 					}
 				}
 
@@ -335,16 +517,15 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 				}
 
 				if (pshape_index >= 0) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc + 1, state_feature_bits_);
-					encoder_.append(pshape_index, shape_bits_);
+					encoder.append(0, order_bits_);
+					encoder.append(0, level_bits_);
+					encoder.append(fc + 1, state_feature_bits_);
+					encoder.append(pshape_index, shape_bits_);
 
 					if (model_.isRare(pform_index)) {
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
+						features.add(getObservationFeatureIndex(encoder, fc + 1));
 					}
-					encoder_.reset();
+					encoder.reset();
 				}
 			}
 
@@ -364,19 +545,17 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 				if (use_lexical_context_feature_) {
 
 					if (nform_index >= 0) {
-						encoder_.append(0, order_bits_);
-						encoder_.append(0, level_bits_);
-						encoder_.append(fc, state_feature_bits_);
-						encoder_.append(nform_index, word_bits_);
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						encoder.append(nform_index, word_bits_);
+						features.add(getObservationFeatureIndex(encoder, fc));
 
 						if (form_index >= 0 && use_bigrams_) {
-							encoder_.append(form_index, word_bits_);
-							features.add(getFeatureIndex(encoder_
-									.getFeature(extend_feature_set_)));
+							encoder.append(form_index, word_bits_);
+							features.add(getObservationFeatureIndex(encoder, fc));
 						}
-						encoder_.reset();
+						encoder.reset();
 					}
 				}
 
@@ -386,17 +565,16 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 							.getWordShapeIndex();
 				}
 				if (nshape_index >= 0) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc + 1, state_feature_bits_);
-					encoder_.append(nshape_index, shape_bits_);
+					encoder.append(0, order_bits_);
+					encoder.append(0, level_bits_);
+					encoder.append(fc + 1, state_feature_bits_);
+					encoder.append(nshape_index, shape_bits_);
 
 					if (model_.isRare(nform_index)) {
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
+						features.add(getObservationFeatureIndex(encoder, fc + 1));
 					}
 
-					encoder_.reset();
+					encoder.reset();
 				}
 			}
 
@@ -408,118 +586,133 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 				fc++;
 			}
 
-			if (use_signature_features_) {
-				if (is_rare) {
-					int signature = word.getWordSignature();
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
-					encoder_.append(signature, signature_bits_);
-					features.add(getFeatureIndex(encoder_
-							.getFeature(extend_feature_set_)));
-					encoder_.reset();
+			int tail_start = features.size();
+			int tail_fc = fc;
+			if (type != null) {
+				addAll(features, type.tail_);
+				fc += type.num_tail_groups_;
+			} else {
+				if (use_signature_features_) {
+					if (is_rare) {
+						int signature = word.getWordSignature();
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						encoder.append(signature, signature_bits_);
+						features.add(getObservationFeatureIndex(encoder, fc));
+						encoder.reset();
+					}
+					fc++;
 				}
-				fc++;
-			}
 
-			// Infix feature
-			if (use_infix_features_) {
-				if (is_rare) {
-					assert chars != null;
+				// Infix feature
+				if (use_infix_features_) {
+					if (is_rare) {
+						assert chars != null;
 					
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
 
-					for (int position = 0; position < chars.length; position ++) {
+						for (int position = 0; position < chars.length; position ++) {
 						
-						for (int length = 0; length < max_affix_length_; length ++) {
+							for (int length = 0; length < max_affix_length_; length ++) {
 							
-							int end_position = position + length;
+								int end_position = position + length;
 							
-							if (end_position >= chars.length) {
-								break;
-							}
+								if (end_position >= chars.length) {
+									break;
+								}
 							
-							short c = chars[end_position];
-							if (c < 0) {
-								break;
-							}
-							encoder_.append(c, char_bits_);
-							features.add(getFeatureIndex(encoder_
-									.getFeature(extend_feature_set_)));
+								short c = chars[end_position];
+								if (c < 0) {
+									break;
+								}
+								encoder.append(c, char_bits_);
+								features.add(getObservationFeatureIndex(encoder, fc));
 							
 							
-						}
+							}
 						
-						encoder_.reset();					
-					}
+							encoder.reset();					
+						}
 					
+					}
+					fc++;
 				}
-				fc++;
-			}
 			
-			// Prefix feature
-			if (use_affix_features_) {
-				if (is_rare) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
-
-					for (int position = 0; position < Math.min(chars.length,
-							max_affix_length_); position++) {
-						assert chars != null;
-						short c = chars[position];
-						if (c < 0) {
-							// Unknown character!
-							break;
+				// Prefix feature
+				if (use_affix_features_) {
+					if (is_rare) {
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+
+						for (int position = 0; position < Math.min(chars.length,
+								max_affix_length_); position++) {
+							assert chars != null;
+							short c = chars[position];
+							if (c < 0) {
+								// Unknown character!
+								break;
+							}
+							encoder.append(c, char_bits_);
+							features.add(getObservationFeatureIndex(encoder, fc));
 						}
-						encoder_.append(c, char_bits_);
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
+						encoder.reset();
 					}
-					encoder_.reset();
+					fc++;
 				}
-				fc++;
-			}
 
-			// Suffix feature
-			if (use_affix_features_) {
-				if (is_rare) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
-					for (int position = 0; position < Math.min(chars.length,
-							max_affix_length_); position++) {
-						short c = chars[chars.length - position - 1];
-						if (c < 0) {
-							// Unknown character!
-							break;
-						}
-						encoder_.append(c, char_bits_);
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
+				// Suffix feature
+				if (use_affix_features_) {
+					if (is_rare) {
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						for (int position = 0; position < Math.min(chars.length,
+								max_affix_length_); position++) {
+							short c = chars[chars.length - position - 1];
+							if (c < 0) {
+								// Unknown character!
+								break;
+							}
+							encoder.append(c, char_bits_);
+							features.add(getObservationFeatureIndex(encoder, fc));
 
+						}
+						encoder.reset();
 					}
-					encoder_.reset();
+					fc++;
+				}
+
+				if (type_features != null) {
+					tail = Arrays.copyOfRange(features.getFeatures(),
+							tail_start, features.size());
+					num_tail_groups = fc - tail_fc;
 				}
-				fc++;
 			}
 		}
 
+		if (type == null && type_features != null) {
+			type = new TypeFeatures(head, num_head_groups, tail,
+					num_tail_groups);
+			type_features.put(word.getWordForm(), type);
+		}
+		features.setTypeFeatures(type);
+
 		int[] token_feature_indexes = word.getTokenFeatureIndexes();
 		if (token_feature_indexes != null) {
 
 			for (int token_feature_index : token_feature_indexes) {
 				if (token_feature_index >= 0) {
-					encoder_.append(0, order_bits_);
-					encoder_.append(0, level_bits_);
-					encoder_.append(fc, state_feature_bits_);
+					encoder.append(0, order_bits_);
+					encoder.append(0, level_bits_);
+					encoder.append(fc, state_feature_bits_);
 
-					encoder_.append(token_feature_index, token_feature_bits_);
-					features.add(getFeatureIndex(encoder_
-							.getFeature(extend_feature_set_)));
-					encoder_.reset();
+					encoder.append(token_feature_index, token_feature_bits_);
+					features.add(getObservationFeatureIndex(encoder, fc));
+					encoder.reset();
 				}
 			}
 			fc++;
@@ -546,13 +739,12 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 			if (mdict_indexes != null) {
 				for (int index : mdict_indexes) {
 					if (index >= 0) {
-						encoder_.append(0, order_bits_);
-						encoder_.append(0, level_bits_);
-						encoder_.append(fc, state_feature_bits_);
-						encoder_.append(index, mdict_bits_);
-						features.add(getFeatureIndex(encoder_
-								.getFeature(extend_feature_set_)));
-						encoder_.reset();
+						encoder.append(0, order_bits_);
+						encoder.append(0, level_bits_);
+						encoder.append(fc, state_feature_bits_);
+						encoder.append(index, mdict_bits_);
+						features.add(getObservationFeatureIndex(encoder, fc));
+						encoder.reset();
 					}
 				}
 			}
@@ -596,14 +788,48 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		return vector;
 	}
 
-	private int getFeatureIndex(Feature feature) {
-		int index = feature_table_.toIndex(feature, -1, extend_feature_set_);
+	// The features of extractStateFeatures(Sequence, int, BoundedCache). The
+	// template is the feature group (fc) of the feature.
+	private int getObservationFeatureIndex(LongEncoder encoder, int template) {
+		if (encoder.isUnknown()) {
+			return -1;
+		}
+
+		FeatureCounts counts = feature_counts_;
+		if (counts != null) {
+			counts.add(encoder.getKey(), template);
+			return -1;
+		}
+
+		if (prune_observation_features_) {
+			return long_feature_table_.toIndex(encoder.getKey(), -1, false);
+		}
+
+		return getFeatureIndex(encoder);
+	}
+
+	private int getFeatureIndex(LongEncoder encoder) {
+		if (encoder.isUnknown()) {
+			return -1;
+		}
+
+		if (defer_feature_set_ && extend_feature_set_) {
+			long key = encoder.getKey();
+			int index = long_feature_table_.toIndex(key, -1, false);
+			if (index < 0) {
+				deferred_.get().features_.add(key);
+			}
+			return index;
+		}
+
+		int index = long_feature_table_.toIndex(encoder.getKey(), -1,
+				extend_feature_set_);
 		return index;
 	}
 
 	@Override
 	public FeatureVector extractTransitionFeatures(State state) {
-		prepareEncoder();
+		LongEncoder encoder = prepareEncoder();
 
 		int max_level = state.getLevel();
 		int order = state.getOrder();
@@ -617,27 +843,32 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 				continue;
 			}
 
-			encoder_.append(order, order_bits_);
-			encoder_.append(level, level_bits_);
-			encoder_.append(0, 1);
+			encoder.append(order, order_bits_);
+			encoder.append(level, level_bits_);
+			encoder.append(0, 1);
 			State run = state;
 			while (run != null) {
 
 				State sub_state = run.getSubLevel(depth);
 				int index = sub_state.getIndex();
 
-				encoder_.append(index, tag_bits_[level]);
+				encoder.append(index, tag_bits_[level]);
 				run = run.getPreviousSubOrderState();
 			}
-			features.add(getFeatureIndex(encoder_
-					.getFeature(extend_feature_set_)));
-			encoder_.reset();
+			features.add(getFeatureIndex(encoder));
+			encoder.reset();
 
 		}
 		return features;
 	}
 
 	protected double getWeight(int index) {
+		if (weights_ == null) {
+			if (compact_weights_ != null) {
+				return compact_weights_.get(index);
+			}
+			return mapped_weights_.get(index);
+		}
 		return weights_[index];
 	}
 
@@ -647,20 +878,39 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 
 		State zero_order_state = state.getZeroOrderState();
 		int tag_index = getUniversalIndex(zero_order_state);
-		double score = 0.0;
+		int[] features = vector.getFeatures();
+		int size = vector.size();
 
-		for (int findex = 0; findex < vector.size(); findex++) {
-			int feature = vector.get(findex);
-			int index = getIndex(feature, tag_index);
-			score += getWeight(index);
+		TypeFeatures type = null;
+		if (zero_order_state.getLevel() == 0
+				&& vector instanceof MorphFeatureVector) {
+			type = ((MorphFeatureVector) vector).getTypeFeatures();
 		}
 
+		double score;
+		if (type != null) {
+			score = dotProduct(features, type.head_.length, size, tag_index,
+					getHeadScores(type)[tag_index]);
+		} else {
+			score = dotProduct(features, 0, size, tag_index, 0.0);
+		}
+
+		return dotProduct(state, vector, score);
+	}
+
+	// Adds everything but the weights of the plain features.
+	private double dotProduct(State state, FeatureVector vector, double score) {
+		State zero_order_state = state.getZeroOrderState();
+		int tag_index = getUniversalIndex(zero_order_state);
+		int[] features = vector.getFeatures();
+		int size = vector.size();
+
 		FloatFeatureVector float_vector = vector.getFloatVector();
 		if (float_vector != null) {
 			score += float_vector.getDotProduct(this, tag_index, 0);
 		}
 
-		score += dotProductSubTags(zero_order_state, vector);
+		score += dotProductSubTags(zero_order_state, vector, features, size);
 
 		if (vector.getIsState()) {
 			int index = getObservedIndex((MorphFeatureVector) vector, state);
@@ -672,7 +922,91 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		return score * scale_factor_;
 	}
 
+	// The weights of a feature for the tags of the first level are contiguous
+	// unless the weights are hashed or compact. The scores of all these tags
+	// are then summed up row by row, in a loop the JIT can vectorize. Every
+	// tag gets the same sum in the same order as from dotProduct.
+	@Override
+	public void setScores(List<State> states, FeatureVector vector) {
+		double[] scores = null;
+		if (states.size() > 1) {
+			scores = getZeroLevelScores(vector);
+		}
+
+		for (State state : states) {
+			double score;
+			if (scores != null && state.getLevel() == 0) {
+				score = dotProduct(state, vector, scores[state.getIndex()]);
+			} else {
+				score = dotProduct(state, vector);
+			}
+			state.setScore(score);
+		}
+	}
+
+	// Returns null if the weights have no row layout.
+	private double[] getZeroLevelScores(FeatureVector vector) {
+		double[] scores = new double[num_tags_[0]];
+		int start = 0;
+
+		if (vector instanceof MorphFeatureVector) {
+			TypeFeatures type = ((MorphFeatureVector) vector)
+					.getTypeFeatures();
+			if (type != null) {
+				double[] head_scores = getHeadScores(type);
+				System.arraycopy(head_scores, 0, scores, 0, scores.length);
+				start = type.head_.length;
+			}
+		}
+
+		if (!addRows(vector.getFeatures(), start, vector.size(), scores)) {
+			return null;
+		}
+		return scores;
+	}
+
+	private boolean addRows(int[] features, int start, int size,
+			double[] scores) {
+		if (use_hash_vector) {
+			return false;
+		}
+
+		double[] weights = weights_;
+		if (weights != null) {
+			int capacity = weights.length - 2 * max_level_;
+			for (int findex = start; findex < size; findex++) {
+				int offset = features[findex] * total_num_tags_;
+				int length = Math.min(scores.length, capacity - offset);
+				for (int tag_index = 0; tag_index < length; tag_index++) {
+					scores[tag_index] += weights[offset + tag_index];
+				}
+			}
+			return true;
+		}
+
+		DoubleBuffer mapped_weights = mapped_weights_;
+		if (mapped_weights != null) {
+			int capacity = mapped_weights.capacity() - 2 * max_level_;
+			for (int findex = start; findex < size; findex++) {
+				int offset = features[findex] * total_num_tags_;
+				int length = Math.min(scores.length, capacity - offset);
+				for (int tag_index = 0; tag_index < length; tag_index++) {
+					scores[tag_index] += mapped_weights.get(offset + tag_index);
+				}
+			}
+			return true;
+		}
+
+		return false;
+	}
+
 	public double getFloatWeight(int index) {
+		if (float_weights_ == null) {
+			if (compact_float_weights_ != null) {
+				return compact_float_weights_.get(index);
+			}
+			return mapped_float_weights_.get(index);
+		}
 		return float_weights_[index];
 	}
 
@@ -680,7 +1014,123 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		return feature * total_num_tags_ + tag_index;
 	}
 
-	private double dotProductSubTags(State state, FeatureVector vector) {
+	// The head features of a type are the first features of its state
+	// vectors. Their scores for the tags of the first level are computed once
+	// per type and used as the starting value of the dot product, so the sum
+	// is the same as without the cache.
+	private double[] getHeadScores(TypeFeatures type) {
+		int weights_version = weights_version_;
+		HeadScores head_scores = type.head_scores_;
+		if (head_scores != null
+				&& head_scores.weights_version_ == weights_version) {
+			return head_scores.scores_;
+		}
+
+		double[] scores = new double[num_tags_[0]];
+		if (!addRows(type.head_, 0, type.head_.length, scores)) {
+			for (int tag_index = 0; tag_index < scores.length; tag_index++) {
+				scores[tag_index] = dotProduct(type.head_, 0,
+						type.head_.length, tag_index, 0.0);
+			}
+		}
+		type.head_scores_ = new HeadScores(weights_version, scores);
+		return scores;
+	}
+
+	private double dotProduct(int[] features, int size, int tag_index,
+			double score) {
+		return dotProduct(features, 0, size, tag_index, score);
+	}
+
+	private double dotProduct(int[] features, int start, int size,
+			int tag_index, double score) {
+		double[] weights = weights_;
+		if (weights == null) {
+			if (compact_weights_ != null) {
+				return dotProduct(compact_weights_, features, start, size,
+						tag_index, score);
+			}
+			return dotProduct(mapped_weights_, features, start, size,
+					tag_index, score);
+		}
+
+		int capacity = weights.length - 2 * max_level_;
+
+		for (int findex = start; findex < size; findex++) {
+			int index = features[findex] * total_num_tags_ + tag_index;
+
+			if (use_hash_vector) {
+				index = getHashIndex(index, capacity);
+			} else if (index >= capacity) {
+				// Weights beyond the capacity haven't been updated yet.
+				continue;
+			}
+
+			score += weights[index];
+		}
+
+		return score;
+	}
+
+	private double dotProduct(DoubleBuffer weights, int[] features,
+			int start, int size, int tag_index, double score) {
+		int capacity = weights.capacity() - 2 * max_level_;
+
+		for (int findex = start; findex < size; findex++) {
+			int index = features[findex] * total_num_tags_ + tag_index;
+
+			if (use_hash_vector) {
+				index = getHashIndex(index, capacity);
+			} else if (index >= capacity) {
+				continue;
+			}
+
+			score += weights.get(index);
+		}
+
+		return score;
+	}
+
+	private double dotProduct(CompactWeights weights, int[] features,
+			int start, int size, int tag_index, double score) {
+		int capacity = weights.length() - 2 * max_level_;
+
+		if (!use_hash_vector
+				&& weights.getRowLength() == total_num_tags_) {
+			// Sparse weights are stored per feature.
+			for (int findex = start; findex < size; findex++) {
+				int feature = features[findex];
+				if (feature * total_num_tags_ + tag_index < capacity) {
+					score += weights.get(feature, tag_index);
+				}
+			}
+			return score;
+		}
+
+		for (int findex = start; findex < size; findex++) {
+			int index = features[findex] * total_num_tags_ + tag_index;
+
+			if (use_hash_vector) {
+				index = getHashIndex(index, capacity);
+			} else if (index >= capacity) {
+				continue;
+			}
+
+			score += weights.get(index);
+		}
+
+		return score;
+	}
+
+	private void update(int[] features, int size, int tag_index, double value) {
+		for (int findex = 0; findex < size; findex++) {
+			int index = getIndex(features[findex], tag_index);
+			updateWeight(index, value);
+		}
+	}
+
+	private double dotProductSubTags(State state, FeatureVector vector,
+			int[] features, int size) {
 		int level = state.getLevel();
 
 		if (level >= model_.getTagToSubTags().length) {
@@ -703,11 +1153,7 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		for (int index : indexes) {
 			int simple_index = getSimpleSubMorphIndex(index);
 
-			for (int findex = 0; findex < vector.size(); findex++) {
-				int feature = vector.get(findex);
-				int f_index = getIndex(feature, simple_index);
-				score += getWeight(f_index);
-			}
+			score = dotProduct(features, size, simple_index, score);
 
 			FloatFeatureVector float_vector = vector.getFloatVector();
 			if (float_vector != null) {
@@ -749,9 +1195,7 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		int h = index;
 		if (use_hash_vector) {
 
-			h ^= (h >>> 20) ^ (h >>> 12);
-			h = h ^ (h >>> 7) ^ (h >>> 4);
-			h = h & (capacity - 1);
+			h = getHashIndex(index, capacity);
 
 		} else {
 
@@ -764,19 +1208,16 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 
 				weights_ = Arrays.copyOf(weights_, length);
 
-				if (accumulated_penalty_ != null) {
-					accumulated_penalty_ = Arrays.copyOf(accumulated_penalty_,
-							length);
-				}
-
 				for (int i = 0; i < 2 * max_level_; i++) {
 
 					weights_[capacity + i] = weights_[old_capacity + i];
 					weights_[old_capacity + i] = 0.0;
 					if (accumulated_penalty_ != null) {
-						accumulated_penalty_[capacity + i] = accumulated_penalty_[old_capacity
-								+ i];
-						accumulated_penalty_[old_capacity + i] = 0.0;
+						double penalty = accumulated_penalty_
+								.remove(old_capacity + i);
+						if (penalty != 0.0) {
+							accumulated_penalty_.add(capacity + i, penalty);
+						}
 					}
 
 				}
@@ -789,10 +1230,114 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		return h;
 	}
 
+	// Counts of observation features in the order they were first seen.
+	private static class FeatureCounts {
+		private LongSymbolTable table_ = new LongSymbolTable();
+		private LongList keys_ = new LongList();
+		private int[] templates_ = new int[1024];
+		private int[] counts_ = new int[1024];
+
+		public void add(long key, int template) {
+			int index = table_.toIndex(key, -1, true);
+			if (index == keys_.size()) {
+				keys_.add(key);
+				if (index == counts_.length) {
+					templates_ = Arrays.copyOf(templates_, 2 * index);
+					counts_ = Arrays.copyOf(counts_, 2 * index);
+				}
+				templates_[index] = template;
+			}
+			counts_[index]++;
+		}
+
+		public int size() {
+			return keys_.size();
+		}
+	}
+
+	// Counts the observation features of the training sentences and adds the
+	// ones that occur at least min_feature_count_ times to the feature set.
+	// If max_features_per_template_ is set only the most frequent features of
+	// every template are added, ties are broken by first occurrence.
+	private void addFrequentFeatures(Collection<Sequence> sequences) {
+		final FeatureCounts counts = new FeatureCounts();
+		feature_counts_ = counts;
+		try {
+			for (Sequence sequence : sequences) {
+				for (int index = 0; index < sequence.size(); index++) {
+					extractStateFeatures(sequence, index, null);
+				}
+			}
+		} finally {
+			feature_counts_ = null;
+		}
+
+		boolean[] keep = new boolean[counts.size()];
+		for (int index = 0; index < counts.size(); index++) {
+			keep[index] = counts.counts_[index] >= min_feature_count_;
+		}
+
+		if (max_features_per_template_ > 0) {
+			Integer[] order = new Integer[counts.size()];
+			for (int index = 0; index < order.length; index++) {
+				order[index] = index;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					if (counts.templates_[a] != counts.templates_[b]) {
+						return counts.templates_[a] - counts.templates_[b];
+					}
+					if (counts.counts_[a] != counts.counts_[b]) {
+						return counts.counts_[b] - counts.counts_[a];
+					}
+					return a - b;
+				}
+			});
+
+			int template = -1;
+			int num_kept = 0;
+			for (int index : order) {
+				if (counts.templates_[index] != template) {
+					template = counts.templates_[index];
+					num_kept = 0;
+				}
+				if (keep[index]) {
+					if (num_kept < max_features_per_template_) {
+						num_kept++;
+					} else {
+						keep[index] = false;
+					}
+				}
+			}
+		}
+
+		int num_kept = 0;
+		for (int index = 0; index < counts.size(); index++) {
+			if (keep[index]) {
+				long_feature_table_.toIndex(counts.keys_.get(index), true);
+				num_kept++;
+			}
+		}
+
+		if (verbose_) {
+			System.err.format("Kept %d of %d observation features\n",
+					num_kept, counts.size());
+		}
+	}
+
+	private static int getHashIndex(int index, int capacity) {
+		int h = index;
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h = h ^ (h >>> 7) ^ (h >>> 4);
+		return h & (capacity - 1);
+	}
+
 	@Override
 	public void init(Model model, Collection<Sequence> sequences) {
 		int max_level = model.getTagTables().size();
-		feature_table_ = new SymbolTable<Feature>();
+		long_feature_table_ = new LongSymbolTable();
+		prefix_table_ = new LongSymbolTable();
 		model_ = (MorphModel) model;
 		max_level_ = max_level;
 		num_tags_ = new int[max_level];
@@ -831,12 +1376,25 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		}
 
 		extend_feature_set_ = true;
+		type_cache_ = null;
 		scale_factor_ = 1.;
 
+		prune_observation_features_ = false;
+		if (min_feature_count_ > 1 || max_features_per_template_ > 0) {
+			addFrequentFeatures(sequences);
+			prune_observation_features_ = true;
+		}
+
 		int capacity = 1;
-		int initial_size = initial_vector_size_;
-		while (capacity < initial_size)
-			capacity <<= 1;
+		if (prune_observation_features_ && !use_hash_vector) {
+			// The observation features are known, so there is no need for
+			// the default size. The transition features are added on demand.
+			capacity = long_feature_table_.size() * total_num_tags_;
+		} else {
+			int initial_size = initial_vector_size_;
+			while (capacity < initial_size)
+				capacity <<= 1;
+		}
 
 		weights_ = new double[capacity + 2 * max_level];
 	}
@@ -849,11 +1407,7 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 			while (run != null) {
 
 				int tag_index = getUniversalIndex(run);
-				for (int findex = 0; findex < vector.size(); findex++) {
-					int feature = vector.get(findex);
-					int index = getIndex(feature, tag_index);
-					updateWeight(index, value);
-				}
+				update(vector.getFeatures(), vector.size(), tag_index, value);
 
 				FloatFeatureVector float_vector = vector.getFloatVector();
 				if (float_vector != null) {
@@ -903,13 +1457,11 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 			return;
 		}
 
+		int[] features = vector.getFeatures();
+		int size = vector.size();
 		for (int index : indexes) {
 			int simple_index = getSimpleSubMorphIndex(index);
-			for (int findex = 0; findex < vector.size(); findex++) {
-				int feature = vector.get(findex);
-				int f_index = getIndex(feature, simple_index);
-				updateWeight(f_index, value);
-			}
+			update(features, size, simple_index, value);
 
 			FloatFeatureVector float_vector = vector.getFloatVector();
 			if (float_vector != null) {
@@ -947,32 +1499,62 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		int feature = model_.hasBeenObserved(word_index, level, product_index) ? 0
 				: 1;
 
-		int start_index = weights_.length - max_level_ * 2;
+		int start_index = getWeightsLength() - max_level_ * 2;
 		int index = start_index + level * 2 + feature;
 		return index;
 	}
 
 	protected double applyPenalty(int index, double weight,
-			double[] accumulated_penalty) {
+			SparseDoubleArray accumulated_penalty) {
 		double z = weight;
 
 		if (z - 1e-10 > 0.) {
 			weight = Math.max(0, z
-					- (linear_penalty_ + accumulated_penalty[index]));
+					- (linear_penalty_ + accumulated_penalty.get(index)));
 		} else if (z + 1e-10 < 0.) {
 			weight = Math.min(0, z
-					+ (linear_penalty_ - accumulated_penalty[index]));
+					+ (linear_penalty_ - accumulated_penalty.get(index)));
 		}
 
-		accumulated_penalty[index] += weight - z;
+		if (weight != z) {
+			accumulated_penalty.add(index, weight - z);
+		}
 		return weight;
 	}
 
-	protected void prepareEncoder() {
-		if (encoder_ == null) {
-			encoder_ = new Encoder(ENCODER_CAPACITY_);
+	protected LongEncoder prepareEncoder() {
+		prepareThreadLocals();
+		LongEncoder encoder = encoder_.get();
+		encoder.reset();
+		if (defer_feature_set_ && extend_feature_set_) {
+			encoder.setInsert(false);
+			encoder.setMissingPrefixes(deferred_.get().prefixes_);
+		} else {
+			encoder.setInsert(extend_feature_set_);
+			encoder.setMissingPrefixes(null);
+		}
+		return encoder;
+	}
+
+	private void prepareThreadLocals() {
+		if (deferred_ == null) {
+			synchronized (this) {
+				if (deferred_ == null) {
+					encoder_ = new ThreadLocal<LongEncoder>() {
+						@Override
+						protected LongEncoder initialValue() {
+							return new LongEncoder(prefix_table_);
+						}
+					};
+					deferred_ = new ThreadLocal<LongDeferredFeatures>() {
+						@Override
+						protected LongDeferredFeatures initialValue() {
+							return new LongDeferredFeatures();
+						}
+					};
+				}
+			}
 		}
-		encoder_.reset();
 	}
 
 	@Override
@@ -985,6 +1567,7 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 				update(state, value);
 			}
 		}
+		weights_version_++;
 	}
 
 	@Override
@@ -993,31 +1576,335 @@ public class MorphWeightVector implements WeightVector, FloatWeights {
 		scale_factor_ *= scale_factor;
 	}
 
+	private int getWeightsLength() {
+		if (weights_ == null) {
+			if (compact_weights_ != null) {
+				return compact_weights_.length();
+			}
+			return mapped_weights_.capacity();
+		}
+		return weights_.length;
+	}
+
 	@Override
 	public double[] getWeights() {
+		if (weights_ == null) {
+			if (compact_weights_ != null) {
+				return compact_weights_.toArray();
+			}
+			return toArray(mapped_weights_);
+		}
 		return weights_;
 	}
 
 	@Override
 	public void setWeights(double[] weights) {
 		weights_ = weights;
+		weights_version_++;
 	}
 
 	public MorphDictionary getMorphDict() {
 		return mdict_;
 	}
 
-	public SymbolTable<Feature> getFeatureTable() {
-		return feature_table_;
+	public LongSymbolTable getFeatureTable() {
+		return long_feature_table_;
 	}
 
 	@Override
 	public double[] getFloatWeights() {
+		if (float_weights_ == null) {
+			if (compact_float_weights_ != null) {
+				return compact_float_weights_.toArray();
+			}
+			return toArray(mapped_float_weights_);
+		}
 		return float_weights_;
 	}
 
+	private static double[] toArray(DoubleBuffer buffer) {
+		if (buffer == null) {
+			return null;
+		}
+		double[] array = new double[buffer.capacity()];
+		buffer.duplicate().get(array);
+		return array;
+	}
+
+	private static int addBlock(double[] array, DoubleBuffer mapped) {
+		if (array != null) {
+			return BinaryModel.addBlock(array);
+		}
+		if (mapped != null) {
+			return BinaryModel.addBlock(mapped);
+		}
+		return -1;
+	}
+
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		double[] weights = weights_;
+		double[] float_weights = float_weights_;
+
+		weights_block_ = addBlock(weights_, mapped_weights_);
+		if (weights_block_ > 0) {
+			weights_ = null;
+		} else if (weights_ == null) {
+			weights_ = toArray(mapped_weights_);
+		}
+
+		float_weights_block_ = addBlock(float_weights_, mapped_float_weights_);
+		if (float_weights_block_ > 0) {
+			float_weights_ = null;
+		} else if (float_weights_ == null) {
+			float_weights_ = toArray(mapped_float_weights_);
+		}
+
+		try {
+			oos.defaultWriteObject();
+		} finally {
+			weights_ = weights;
+			float_weights_ = float_weights;
+			weights_block_ = 0;
+			float_weights_block_ = 0;
+		}
+	}
+
+	private void readObject(ObjectInputStream ois) throws IOException,
+			ClassNotFoundException {
+		ois.defaultReadObject();
+		if (weights_block_ > 0) {
+			mapped_weights_ = BinaryModel.getDoubleBlock(weights_block_);
+			weights_block_ = 0;
+		}
+		if (float_weights_block_ > 0) {
+			mapped_float_weights_ = BinaryModel
+					.getDoubleBlock(float_weights_block_);
+			float_weights_block_ = 0;
+		}
+		if (feature_table_ != null) {
+			convertFeatureTable();
+		}
+	}
+
+	// Models written before features were encoded as long keys store every
+	// feature as the bits of an Encoder. The bits are split into the values
+	// the feature extraction appended and these are appended to a LongEncoder
+	// again, so the feature gets the key it gets today. The features are
+	// inserted in the order of their indexes and thus keep them.
+	private void convertFeatureTable() throws InvalidObjectException {
+		Feature[] features = new Feature[feature_table_.size()];
+		for (Map.Entry<Feature, Integer> entry : feature_table_.entrySet()) {
+			features[entry.getValue()] = entry.getKey();
+		}
+		feature_table_ = null;
+
+		long_feature_table_ = new LongSymbolTable(features.length);
+		prefix_table_ = new LongSymbolTable();
+		LongEncoder encoder = new LongEncoder(prefix_table_);
+		encoder.setInsert(true);
+
+		for (int index = 0; index < features.length; index++) {
+			FeatureReader reader = new FeatureReader(features[index]);
+			List<Integer> widths = getWidths(reader);
+			if (widths == null) {
+				throw new InvalidObjectException(String.format(
+						"Cannot convert feature %d", index));
+			}
+
+			reader.rewind();
+			for (int width : widths) {
+				encoder.append(reader.read(width), width);
+			}
+			long_feature_table_.toIndex(encoder.getKey(), true);
+			encoder.reset();
+		}
+	}
+
+	// The widths of the values appended to get a feature or null if the
+	// bits don't fit any template. A LongEncoder only folds keys of more
+	// than 62 bits and only there the split matters.
+	private List<Integer> getWidths(FeatureReader reader) {
+		int num_bits = reader.getNumBits();
+		List<Integer> widths = new ArrayList<Integer>();
+		if (num_bits <= 62) {
+			for (int bits = num_bits; bits > 0; bits -= Short.SIZE) {
+				widths.add(Math.min(bits, Short.SIZE));
+			}
+			return widths;
+		}
+
+		if (addTemplateWidths(reader, widths)) {
+			return widths;
+		}
+
+		// The infix template resets the encoder after every position, so the
+		// features of the later positions are characters without a header.
+		if (use_infix_features_ && num_bits % char_bits_ == 0) {
+			widths.clear();
+			addRepeatedWidths(widths, num_bits, char_bits_);
+			return widths;
+		}
+
+		return null;
+	}
+
+	private boolean addTemplateWidths(FeatureReader reader,
+			List<Integer> widths) {
+		int order = reader.read(order_bits_);
+		int level = reader.read(level_bits_);
+		widths.add(order_bits_);
+		widths.add(level_bits_);
+
+		if (order > 0) {
+			// extractTransitionFeatures
+			if (level >= max_level_) {
+				return false;
+			}
+			reader.read(1);
+			widths.add(1);
+			return addRepeatedWidths(widths, reader.getNumBits(),
+					tag_bits_[level]);
+		}
+
+		if (level > 0) {
+			// extractStateFeatures(State)
+			reader.read(2);
+			widths.add(2);
+			while (reader.getNumBits() > 0) {
+				int sub_level = reader.read(level_bits_);
+				if (sub_level >= max_level_
+						|| reader.getNumBits() < tag_bits_[sub_level]) {
+					return false;
+				}
+				reader.read(tag_bits_[sub_level]);
+				widths.add(level_bits_);
+				widths.add(tag_bits_[sub_level]);
+			}
+			return true;
+		}
+
+		int fc = reader.read(state_feature_bits_);
+		widths.add(state_feature_bits_);
+		int bits = getRepeatedBits(fc);
+		if (bits < 0) {
+			bits = reader.getNumBits();
+		}
+		return addRepeatedWidths(widths, reader.getNumBits(), bits);
+	}
+
+	private static boolean addRepeatedWidths(List<Integer> widths,
+			int num_bits, int bits) {
+		if (bits <= 0 || bits >= Integer.SIZE || num_bits % bits != 0) {
+			return false;
+		}
+		for (int bit = 0; bit < num_bits; bit += bits) {
+			widths.add(bits);
+		}
+		return true;
+	}
+
+	// The width of the values the observation feature group fc appends
+	// repeatedly (context bigrams and affixes) or -1 for the groups that
+	// append a single value. Follows the group order of
+	// extractStateFeatures(Sequence, int, BoundedCache).
+	private int getRepeatedBits(int fc) {
+		if (!use_state_features_) {
+			return -1;
+		}
+
+		int group = 0;
+		if (use_form_feature_) {
+			group++;
+		}
+		if (use_rare_feature_) {
+			group++;
+		}
+		if (shape_) {
+			group++;
+		}
+		for (int context = 0; context < 2; context++) {
+			if (use_lexical_context_feature_) {
+				if (fc == group) {
+					return word_bits_;
+				}
+				group++;
+			}
+			if (shape_) {
+				group++;
+			}
+		}
+		if (use_signature_features_) {
+			group++;
+		}
+		int num_char_groups = 0;
+		if (use_infix_features_) {
+			num_char_groups++;
+		}
+		if (use_affix_features_) {
+			num_char_groups += 2;
+		}
+		if (fc >= group && fc < group + num_char_groups) {
+			return char_bits_;
+		}
+		return -1;
+	}
+
+	// Reads the bits of a Feature in the order Encoder appended them.
+	private static class FeatureReader {
+		private int[] bytes_;
+		private int num_bits_;
+		private int position_;
+
+		public FeatureReader(Feature feature) {
+			bytes_ = feature.getBytes();
+			num_bits_ = (feature.getCurrentLength() - 1) * Integer.SIZE
+					+ feature.getCurrentBitIndex();
+		}
+
+		public int getNumBits() {
+			return num_bits_ - position_;
+		}
+
+		public void rewind() {
+			position_ = 0;
+		}
+
+		// Returns 0 for the bits after the end.
+		public int read(int bits) {
+			int value = 0;
+			for (int bit = 0; bit < bits && position_ < num_bits_; bit++) {
+				int b = bytes_[position_ / Integer.SIZE]
+						>>> (position_ % Integer.SIZE);
+				value |= (b & 1) << bit;
+				position_++;
+			}
+			return value;
+		}
+	}
+
 	@Override
 	public void setFloatWeights(double[] weights) {
 		float_weights_ = weights;
 	}
+
+	// Replaces the double weights by a smaller read-only representation.
+	// Afterwards the vector can only be used for tagging.
+	public void compact(CompactWeights.Mode mode) {
+		double[] weights = getWeights();
+		double[] float_weights = getFloatWeights();
+
+		compact_weights_ = new CompactWeights(weights, mode, total_num_tags_);
+		if (float_weights != null) {
+			compact_float_weights_ = new CompactWeights(float_weights, mode,
+					total_num_tags_);
+		}
+
+		weights_ = null;
+		float_weights_ = null;
+		mapped_weights_ = null;
+		mapped_float_weights_ = null;
+		accumulated_penalty_ = null;
+		accumulated_float_penalty_ = null;
+		weights_version_++;
+	}
 }
@@ -7,25 +7,34 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import marmot.core.Sequence;
 import marmot.core.Tagger;
+import marmot.core.Token;
 import marmot.morph.MorphDictionary;
+import marmot.morph.MorphModel;
 import marmot.morph.MorphOptions;
+import marmot.morph.MorphTagger;
 import marmot.morph.MorphWeightVector;
 import marmot.morph.Sentence;
 import marmot.morph.Word;
 import marmot.morph.io.SentenceReader;
+import marmot.util.BoundedCache;
 import marmot.util.FileUtils;
+import marmot.util.Pipeline;
 
 public class Annotator {
 	
 	private static final char SEPARATOR_ = '\t';
 	private static final String EMPTY_ = "_";
+	private static final int SENTENCES_PER_THREAD_ = 64;
+	private static final int SENTENCES_PER_BATCH_ = 16;
 	
 	public static void main(String[] args) {
 		MorphOptions options = new MorphOptions();
@@ -37,6 +46,10 @@ public class Annotator {
 		
 		Tagger tagger = FileUtils.loadFromFile(options.getModelFile());
 		
+		if (tagger.getWeightVector() instanceof MorphWeightVector) {
+			((MorphWeightVector) tagger.getWeightVector()).setTypeCacheSize(options.getTypeCacheSize());
+		}
+		
 		if (!options.getMorphDict().isEmpty()) {
 			MorphWeightVector vector = (MorphWeightVector) tagger.getWeightVector();
 			MorphDictionary dict = vector.getMorphDict();
@@ -59,7 +72,7 @@ public class Annotator {
 			
 			writer = new BufferedWriter(writer);
 			
-			annotate(tagger, options.getTestFile(), writer);
+			annotate(tagger, new SentenceReader(options.getTestFile()), writer, options.getNumThreads(), options.getVerbose() ? System.err : null);
 			
 			writer.close();
 			
@@ -69,11 +82,155 @@ public class Annotator {
 	}
 
 	public static void annotate(Tagger tagger, String text_file, Writer writer) throws IOException {	
-		SentenceReader reader = new SentenceReader(text_file);
+		annotate(tagger, text_file, writer, 1);
+	}
+
+	public static void annotate(Tagger tagger, String text_file, Writer writer, int num_threads) throws IOException {	
+		annotate(tagger, new SentenceReader(text_file), writer, num_threads, null);
+	}
+
+	// Reads, tags and writes the sentences in a pipeline, see
+	// createBatchPipeline. If stats is not null, the throughput of every stage
+	// is printed to it at the end. The stages count batches, not sentences.
+	public static void annotate(Tagger tagger, Iterable<Sequence> sequences, final Writer writer, int num_threads, PrintStream stats) throws IOException {
+		Pipeline<List<Sequence>, List<List<List<String>>>> pipeline = createBatchPipeline(tagger, batches(sequences.iterator(), SENTENCES_PER_BATCH_), num_threads);
+		
+		pipeline.run("write", new Pipeline.Sink<List<Sequence>, List<List<List<String>>>>() {
+			@Override
+			public void accept(List<Sequence> batch, List<List<List<String>>> batch_tags) throws IOException {
+				for (int index = 0; index < batch.size(); index ++) {
+					List<List<String>> tags = batch_tags.get(index);
+					if (tags == null) {
+						System.err.println("Warning: Skipping empty sentence!");
+						continue;
+					}
+					write((Sentence) batch.get(index), tags, writer);
+				}
+			}
+		});
+		
+		if (stats != null) {
+			stats.print(pipeline.getStatistics());
+			if (tagger.getWeightVector() instanceof MorphWeightVector) {
+				BoundedCache<?, ?> type_cache = ((MorphWeightVector) tagger.getWeightVector()).getTypeCache();
+				if (type_cache != null) {
+					stats.println("type cache: " + type_cache.getStatistics());
+				}
+			}
+		}
+	}
+
+	// The source reads (and decompresses) the sentences on its own thread,
+	// one thread looks up the indexes and num_threads threads tag. Only a
+	// bounded number of sentences is in flight, so a slow sentence blocks the
+	// reader instead of filling the heap. Empty sentences are tagged as null.
+	public static Pipeline<Sequence, List<List<String>>> createPipeline(final Tagger tagger, Iterator<Sequence> sequences, int num_threads) {
+		num_threads = Math.max(1, num_threads);
+		Pipeline<Sequence, List<List<String>>> pipeline = new Pipeline<Sequence, List<List<String>>>(sequences, "read", num_threads * SENTENCES_PER_THREAD_);
+		
+		if (tagger instanceof MorphTagger) {
+			final MorphTagger morph_tagger = (MorphTagger) tagger;
+			final MorphModel model = (MorphModel) tagger.getModel();
+			
+			pipeline.addStage("index", 1, new Pipeline.Stage<Sequence, Sequence>() {
+				@Override
+				public Sequence apply(Sequence sequence) {
+					for (Token token : sequence) {
+						model.addIndexes((Word) token, false);
+					}
+					return sequence;
+				}
+			});
+			
+			pipeline.addStage("tag", num_threads, new Pipeline.Stage<Sequence, List<List<String>>>() {
+				@Override
+				public List<List<String>> apply(Sequence sequence) {
+					if (sequence.isEmpty()) {
+						return null;
+					}
+					return tag(morph_tagger, sequence, true);
+				}
+			});
+		} else {
+			pipeline.addStage("tag", num_threads, new Pipeline.Stage<Sequence, List<List<String>>>() {
+				@Override
+				public List<List<String>> apply(Sequence sequence) {
+					if (sequence.isEmpty()) {
+						return null;
+					}
+					return tag(tagger, sequence, false);
+				}
+			});
+		}
+		
+		return pipeline;
+	}
+
+	// Like createPipeline, but tags batches of sentences with Tagger.tagAll,
+	// which indexes the words itself. Within a batch, empty sentences are
+	// tagged as null.
+	public static Pipeline<List<Sequence>, List<List<List<String>>>> createBatchPipeline(final Tagger tagger, Iterator<List<Sequence>> batches, int num_threads) {
+		num_threads = Math.max(1, num_threads);
+		Pipeline<List<Sequence>, List<List<List<String>>>> pipeline = new Pipeline<List<Sequence>, List<List<List<String>>>>(batches, "read", num_threads * SENTENCES_PER_THREAD_ / SENTENCES_PER_BATCH_);
+		
+		pipeline.addStage("tag", num_threads, new Pipeline.Stage<List<Sequence>, List<List<List<String>>>>() {
+			@Override
+			public List<List<List<String>>> apply(List<Sequence> batch) {
+				return tagAll(tagger, batch);
+			}
+		});
 		
-		for (Sequence sequence : reader) {
-			annotate(tagger, sequence, writer);
+		return pipeline;
+	}
+
+	static Iterator<List<Sequence>> batches(final Iterator<Sequence> sequences, final int batch_size) {
+		return new Iterator<List<Sequence>>() {
+			@Override
+			public boolean hasNext() {
+				return sequences.hasNext();
+			}
+
+			@Override
+			public List<Sequence> next() {
+				List<Sequence> batch = new ArrayList<Sequence>(batch_size);
+				while (batch.size() < batch_size && sequences.hasNext()) {
+					batch.add(sequences.next());
+				}
+				return batch;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	static List<List<List<String>>> tagAll(Tagger tagger, List<Sequence> batch) {
+		List<Sequence> sentences = new ArrayList<Sequence>(batch.size());
+		for (Sequence sentence : batch) {
+			if (!sentence.isEmpty()) {
+				sentences.add(sentence);
+			}
+		}
+		
+		List<List<List<String>>> sentence_tags;
+		try {
+			sentence_tags = tagger.tagAll(sentences);
+		} catch (OutOfMemoryError e) {
+			// Only the sentences that don't fit on their own are lost.
+			sentence_tags = new ArrayList<List<List<String>>>(sentences.size());
+			for (Sequence sentence : sentences) {
+				sentence_tags.add(tag(tagger, sentence, false));
+			}
+		}
+		
+		List<List<List<String>>> tags = new ArrayList<List<List<String>>>(batch.size());
+		Iterator<List<List<String>>> iterator = sentence_tags.iterator();
+		for (Sequence sentence : batch) {
+			tags.add(sentence.isEmpty() ? null : iterator.next());
 		}
+		return tags;
 	}
 
 	public static void annotate(Tagger tagger, Sequence sequence, Writer writer) throws IOException {
@@ -84,11 +241,19 @@ public class Annotator {
 			return;
 		}
 		
+		write(sentence, tag(tagger, sentence, false), writer);
+	}
+
+	static List<List<String>> tag(Tagger tagger, Sequence sentence, boolean indexed) {
 		List<List<String>> tags;
 		
 		try {
 		
-		tags = tagger.tag(sentence);
+		if (indexed) {
+			tags = ((MorphTagger) tagger).tagIndexed(sentence);
+		} else {
+			tags = tagger.tag(sentence);
+		}
 		
 		} catch (OutOfMemoryError e) {
 			
@@ -104,6 +269,10 @@ public class Annotator {
 			
 		}
 		
+		return tags;
+	}
+
+	static void write(Sentence sentence, List<List<String>> tags, Writer writer) throws IOException {
 		for (int i = 0; i < sentence.size(); i ++) {
 			Word word = sentence.getWord(i);
 			
@@ -68,9 +68,7 @@ public class CrossAnnotator {
 
 			Tagger tagger = MorphModel.train(options, complement, chunk);
 
-			for (Sequence sequence : chunk) {
-				Annotator.annotate(tagger, sequence, writer);
-			}
+			Annotator.annotate(tagger, chunk, writer, options.getNumThreads(), null);
 			
 			if (options.getVerbose()) {
 				MorphEvaluator eval = new MorphEvaluator(chunk);
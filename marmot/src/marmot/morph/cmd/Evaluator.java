@@ -3,6 +3,7 @@
 
 package marmot.morph.cmd;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -25,6 +26,7 @@ import marmot.morph.Word;
 import marmot.morph.io.SentenceReader;
 import marmot.util.Counter;
 import marmot.util.LineIterator;
+import marmot.util.Pipeline;
 import marmot.util.StringUtils;
 import marmot.util.StringUtils.Mode;
 
@@ -177,33 +179,54 @@ public class Evaluator {
 
 	public EvalResult eval(MorphTagger tagger, String filename, int rareness,
 			boolean punct) {
-		List<EvalToken> tokens = new LinkedList<EvalToken>();
-		Set<String> cats = new HashSet<String>();
-		
-		for (Sequence sequence : new SentenceReader(filename)) {
-			List<List<String>> tags = tagger.tag(sequence);
-			
-			for (int i=0; i<tags.size(); i++) {
-				List<String> tag_list = tags.get(i);
-				Word word = (Word) sequence.get(i);
-				
-				String ppos = tag_list.get(0);
-				
-				String pfeats = "_";
-				if (tag_list.size() > 1) {
-					pfeats = tag_list.get(1);
-				}
-				
-				String form = word.getWordForm();
-				form = StringUtils.normalize(form, normalize_);
-				
-				EvalToken eval_token = new EvalToken(form, word.getPosTag(), ppos, word.getMorphTag(),
-						pfeats, cats);
-				
-				tokens.add(eval_token);	
-			}
+		return eval(tagger, filename, rareness, punct, 1);
+	}
+
+	public EvalResult eval(MorphTagger tagger, String filename, int rareness,
+			boolean punct, int num_threads) {
+		final List<EvalToken> tokens = new LinkedList<EvalToken>();
+		final Set<String> cats = new HashSet<String>();
+
+		Pipeline<Sequence, List<List<String>>> pipeline = Annotator
+				.createPipeline(tagger,
+						new SentenceReader(filename).iterator(), num_threads);
+
+		try {
+			pipeline.run("eval",
+					new Pipeline.Sink<Sequence, List<List<String>>>() {
+						@Override
+						public void accept(Sequence sequence,
+								List<List<String>> tags) {
+							if (tags == null) {
+								return;
+							}
+
+							for (int i = 0; i < tags.size(); i++) {
+								List<String> tag_list = tags.get(i);
+								Word word = (Word) sequence.get(i);
+
+								String ppos = tag_list.get(0);
+
+								String pfeats = "_";
+								if (tag_list.size() > 1) {
+									pfeats = tag_list.get(1);
+								}
+
+								String form = word.getWordForm();
+								form = StringUtils.normalize(form, normalize_);
+
+								EvalToken eval_token = new EvalToken(form,
+										word.getPosTag(), ppos,
+										word.getMorphTag(), pfeats, cats);
+
+								tokens.add(eval_token);
+							}
+						}
+					});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-	
+
 		return eval(tokens, rareness, punct);
 	}
 
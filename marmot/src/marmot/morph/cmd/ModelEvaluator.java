@@ -53,6 +53,11 @@ public class ModelEvaluator {
 				.setDefault("none");
 		jsap.registerParameter(opt);
 
+		opt = new FlaggedOption("num-threads").setRequired(false)
+				.setLongFlag("num-threads").setStringParser(JSAP.INTEGER_PARSER)
+				.setDefault("1");
+		jsap.registerParameter(opt);
+
 		opt = new FlaggedOption("verbose").setRequired(false)
 				.setLongFlag("verbose").setStringParser(JSAP.BOOLEAN_PARSER)
 				.setDefault("false");
@@ -83,7 +88,8 @@ public class ModelEvaluator {
 
 		for (String test_file : test_files) {
 			EvalResult result = eval.eval(tagger, test_file,
-					config.getInt("rareness"), config.getBoolean("punct"));
+					config.getInt("rareness"), config.getBoolean("punct"),
+					config.getInt("num-threads"));
 
 			result.report(config.getBoolean("verbose"));
 		}
@@ -0,0 +1,365 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.morph.cmd;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import marmot.core.Sequence;
+import marmot.core.Tagger;
+import marmot.morph.MorphWeightVector;
+import marmot.morph.Sentence;
+import marmot.morph.io.FileOptions;
+import marmot.morph.io.SentenceReader;
+import marmot.util.BoundedCache;
+import marmot.util.FileUtils;
+import marmot.util.Pipeline;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+
+// Keeps a model in memory and tags sentences read from the standard input or
+// from connections to a local port. Requests use the input format of the
+// Annotator: One token per line and an empty line after every sentence. Every
+// request is answered with the Annotator output for the sentence, which also
+// ends with an empty line. Requests of the same connection are answered in
+// order.
+//
+// The model file is checked for changes every reload-interval seconds. A
+// changed model is loaded in the background and replaces the old one once it
+// is complete, sentences that are already being tagged finish with the old
+// model. Request latencies are reported to stderr every report-interval
+// seconds.
+public class Server {
+	private static final int SENTENCES_PER_THREAD_ = 4;
+
+	private File model_file_;
+	private FileOptions input_options_;
+	private int num_threads_;
+	private int type_cache_size_;
+
+	private volatile Tagger tagger_;
+	private long model_timestamp_;
+
+	private Latencies latencies_;
+
+	public Server(String model_file, String input_format, int num_threads,
+			int type_cache_size) {
+		model_file_ = new File(model_file);
+		input_options_ = new FileOptions(input_format + ","
+				+ FileOptions.STDIN_);
+		num_threads_ = Math.max(1, num_threads);
+		type_cache_size_ = type_cache_size;
+		latencies_ = new Latencies(1 << 16);
+
+		if (!reload()) {
+			throw new RuntimeException("Can't load model: " + model_file);
+		}
+	}
+
+	public static void main(String[] args) throws JSAPException, IOException {
+		FlaggedOption opt;
+		JSAP jsap = new JSAP();
+
+		opt = new FlaggedOption("model-file").setRequired(true).setLongFlag(
+				"model-file");
+		jsap.registerParameter(opt);
+
+		opt = new FlaggedOption("input-format").setRequired(false)
+				.setLongFlag("input-format").setDefault("form-index=1");
+		jsap.registerParameter(opt);
+
+		opt = new FlaggedOption("port").setRequired(false)
+				.setLongFlag("port").setStringParser(JSAP.INTEGER_PARSER)
+				.setDefault("-1");
+		jsap.registerParameter(opt);
+
+		opt = new FlaggedOption("num-threads").setRequired(false)
+				.setLongFlag("num-threads").setStringParser(JSAP.INTEGER_PARSER)
+				.setDefault("1");
+		jsap.registerParameter(opt);
+
+		opt = new FlaggedOption("type-cache-size").setRequired(false)
+				.setLongFlag("type-cache-size")
+				.setStringParser(JSAP.INTEGER_PARSER).setDefault("20000");
+		jsap.registerParameter(opt);
+
+		opt = new FlaggedOption("reload-interval").setRequired(false)
+				.setLongFlag("reload-interval")
+				.setStringParser(JSAP.INTEGER_PARSER).setDefault("10");
+		jsap.registerParameter(opt);
+
+		opt = new FlaggedOption("report-interval").setRequired(false)
+				.setLongFlag("report-interval")
+				.setStringParser(JSAP.INTEGER_PARSER).setDefault("60");
+		jsap.registerParameter(opt);
+
+		JSAPResult config = jsap.parse(args);
+
+		if (!config.success()) {
+			for (Iterator<?> errs = config.getErrorMessageIterator(); errs
+					.hasNext();) {
+				System.err.println("Error: " + errs.next());
+			}
+			System.err.println("Usage: ");
+			System.err.println(jsap.getUsage());
+			System.err.println(jsap.getHelp());
+			System.err.println();
+			System.exit(1);
+		}
+
+		final Server server = new Server(config.getString("model-file"),
+				config.getString("input-format"), config.getInt("num-threads"),
+				config.getInt("type-cache-size"));
+
+		final int reload_interval = config.getInt("reload-interval");
+		if (reload_interval > 0) {
+			startDaemon(new Runnable() {
+				@Override
+				public void run() {
+					while (sleep(reload_interval)) {
+						server.reload();
+					}
+				}
+			}, "reload");
+		}
+
+		final int report_interval = config.getInt("report-interval");
+		if (report_interval > 0) {
+			startDaemon(new Runnable() {
+				@Override
+				public void run() {
+					while (sleep(report_interval)) {
+						System.err.println(server.getStatistics());
+					}
+				}
+			}, "report");
+		}
+
+		int port = config.getInt("port");
+		if (port < 0) {
+			server.serve(System.in, System.out);
+			System.err.println(server.getStatistics());
+		} else {
+			server.listen(port);
+		}
+	}
+
+	private static void startDaemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static boolean sleep(int seconds) {
+		try {
+			Thread.sleep(seconds * 1000L);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	// Loads the model file if it changed since the last load. If the file
+	// can't be read (for example because it is still being written) the
+	// current model is kept and the next call tries again.
+	public synchronized boolean reload() {
+		long timestamp = model_file_.lastModified();
+		if (tagger_ != null && timestamp == model_timestamp_) {
+			return false;
+		}
+
+		Tagger tagger;
+		try {
+			tagger = FileUtils.loadFromFile(model_file_);
+		} catch (RuntimeException e) {
+			System.err.format("Warning: Can't load model %s: %s\n",
+					model_file_, e);
+			return false;
+		}
+
+		if (tagger.getWeightVector() instanceof MorphWeightVector) {
+			((MorphWeightVector) tagger.getWeightVector())
+					.setTypeCacheSize(type_cache_size_);
+		}
+
+		tagger_ = tagger;
+		model_timestamp_ = timestamp;
+		System.err.format("Loaded model %s\n", model_file_);
+		return true;
+	}
+
+	public Tagger getTagger() {
+		return tagger_;
+	}
+
+	// Accepts connections from the local host only. Every connection is
+	// served by its own thread.
+	public void listen(int port) throws IOException {
+		ServerSocket server_socket = new ServerSocket(port, 50,
+				InetAddress.getByName(null));
+		System.err.format("Listening on port %d\n",
+				server_socket.getLocalPort());
+
+		try {
+			while (true) {
+				final Socket socket = server_socket.accept();
+				startDaemon(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							serve(socket.getInputStream(),
+									socket.getOutputStream());
+						} catch (IOException e) {
+							System.err.format("Warning: %s\n", e);
+						} catch (RuntimeException e) {
+							System.err.format("Warning: %s\n", e);
+						} finally {
+							try {
+								socket.close();
+							} catch (IOException e) {
+							}
+						}
+					}
+				}, "connection-" + socket.getPort());
+			}
+		} finally {
+			server_socket.close();
+		}
+	}
+
+	// Tags the sentences of input until it ends. Up to num_threads sentences
+	// are tagged at the same time.
+	public void serve(InputStream input, OutputStream output)
+			throws IOException {
+		// The reader closes its stream at the end of the input, which for a
+		// socket would also close the output.
+		InputStream unclosable_input = new FilterInputStream(input) {
+			@Override
+			public void close() {
+			}
+		};
+
+		final Iterator<Sequence> sentences = new SentenceReader(
+				input_options_, unclosable_input).iterator();
+		Iterator<Request> requests = new Iterator<Request>() {
+			@Override
+			public boolean hasNext() {
+				return sentences.hasNext();
+			}
+
+			@Override
+			public Request next() {
+				Sequence sentence = sentences.next();
+				return new Request((Sentence) sentence, System.nanoTime());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		Pipeline<Request, List<List<String>>> pipeline = new Pipeline<Request, List<List<String>>>(
+				requests, "read", num_threads_ * SENTENCES_PER_THREAD_);
+
+		pipeline.addStage("tag", num_threads_,
+				new Pipeline.Stage<Request, List<List<String>>>() {
+					@Override
+					public List<List<String>> apply(Request request) {
+						if (request.sentence_.isEmpty()) {
+							return Collections.emptyList();
+						}
+						return Annotator.tag(tagger_, request.sentence_, false);
+					}
+				});
+
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(
+				output, "UTF-8"));
+
+		pipeline.run("write", new Pipeline.Sink<Request, List<List<String>>>() {
+			@Override
+			public void accept(Request request, List<List<String>> tags)
+					throws IOException {
+				Annotator.write(request.sentence_, tags, writer);
+				writer.flush();
+				latencies_.add(System.nanoTime() - request.start_time_);
+			}
+		});
+	}
+
+	public String getStatistics() {
+		String statistics = String.format(
+				"Requests: %d latency ms p50: %.3f p90: %.3f p99: %.3f",
+				latencies_.getCount(), latencies_.getPercentile(0.5) / 1e6,
+				latencies_.getPercentile(0.9) / 1e6,
+				latencies_.getPercentile(0.99) / 1e6);
+
+		Tagger tagger = tagger_;
+		if (tagger.getWeightVector() instanceof MorphWeightVector) {
+			BoundedCache<?, ?> type_cache = ((MorphWeightVector) tagger
+					.getWeightVector()).getTypeCache();
+			if (type_cache != null) {
+				statistics += "\nType cache: " + type_cache.getStatistics();
+			}
+		}
+		return statistics;
+	}
+
+	private static class Request {
+		private Sentence sentence_;
+		private long start_time_;
+
+		public Request(Sentence sentence, long start_time) {
+			sentence_ = sentence;
+			start_time_ = start_time;
+		}
+	}
+
+	// The most recent latencies in a ring buffer.
+	private static class Latencies {
+		private long[] latencies_;
+		private long count_;
+
+		public Latencies(int capacity) {
+			latencies_ = new long[capacity];
+		}
+
+		public synchronized void add(long latency) {
+			latencies_[(int) (count_ % latencies_.length)] = latency;
+			count_++;
+		}
+
+		public synchronized long getCount() {
+			return count_;
+		}
+
+		public synchronized long getPercentile(double percentile) {
+			int size = (int) Math.min(count_, latencies_.length);
+			if (size == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(latencies_, size);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile * size) - 1;
+			return sorted[Math.max(0, Math.min(index, size - 1))];
+		}
+	}
+
+}
@@ -4,6 +4,7 @@
 package marmot.morph.cmd;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
@@ -18,7 +19,7 @@ import marmot.morph.MorphOptions;
 import marmot.morph.Word;
 import marmot.morph.io.FileOptions;
 import marmot.morph.io.SentenceReader;
-import marmot.util.FileUtils;
+import marmot.util.BinaryModel;
 
 
 public class Trainer {
@@ -55,7 +56,7 @@ public class Trainer {
 		Tagger tagger = MorphModel.train(options, train_sentences, test_sentences);
 
 		if (!options.getModelFile().isEmpty())			
-			FileUtils.saveToFile(tagger, options.getModelFile());
+			BinaryModel.save(tagger, new File(options.getModelFile()));
 
 		if (options.getVerbose())
 			System.err.format("Training took: %ds\n",
@@ -18,6 +18,9 @@ public class FileOptions {
 	public static final String MORPH_INDEX = "morph-index";
 	public static final String LIMIT = "limit";
 	public static final String FST_MORPH_INDEX = "token-feature-index";
+	
+	// Filename of the standard input.
+	public static final String STDIN_ = "-";
 
 	private int form_index_;
 	private int lemma_index_;
@@ -145,7 +148,11 @@ public class FileOptions {
 
 		try {
 
-			if (filename_.toLowerCase().startsWith("res://")) {
+			if (filename_.equals(STDIN_)) {
+				
+				return System.in;
+				
+			} else if (filename_.toLowerCase().startsWith("res://")) {
 				
 				String name = filename_.substring(6);
 				input_stream = getClass().getResourceAsStream(name);
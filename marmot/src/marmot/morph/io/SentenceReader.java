@@ -3,6 +3,8 @@
 
 package marmot.morph.io;
 
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -11,12 +13,13 @@ import java.util.NoSuchElementException;
 import marmot.core.Sequence;
 import marmot.morph.Sentence;
 import marmot.morph.Word;
+import marmot.util.ColumnReader;
 import marmot.util.Converter;
-import marmot.util.LineIterator;
 
 public class SentenceReader implements Iterable<Sequence> {
 
 	private FileOptions options_;
+	private InputStream stream_;
 
 	public SentenceReader(String option_string) {
 		this(new FileOptions(option_string));
@@ -26,13 +29,21 @@ public class SentenceReader implements Iterable<Sequence> {
 		options_ = options;
 	}
 
+	// Reads from stream instead of the file in options. The stream can only
+	// be iterated once.
+	public SentenceReader(FileOptions options, InputStream stream) {
+		options_ = options;
+		stream_ = stream;
+	}
+
 	public Iterator<Sequence> iterator() {
 
 		return new Iterator<Sequence>() {
 
 			int number_ = 0;
-			LineIterator line_iterator_ = new LineIterator(
-					options_.getInputStream());
+			ColumnReader reader_ = new ColumnReader(
+					(stream_ != null) ? stream_ : options_.getInputStream());
+			List<Word> tokens_ = new ArrayList<Word>();
 
 			@Override
 			public Sequence next() {
@@ -46,18 +57,18 @@ public class SentenceReader implements Iterable<Sequence> {
 					throw new NoSuchElementException();
 				}
 
-				List<Word> tokens = new LinkedList<Word>();
+				List<Word> tokens = tokens_;
+				tokens.clear();
 
-				while (line_iterator_.hasNext()) {
-					List<String> row = line_iterator_.next();
-					if (row.isEmpty()) {
+				while (reader_.nextLine()) {
+					if (reader_.getNumColumns() == 0) {
 						break;
 					}
 
-					String word = check_index(form_index, "form_index", row, true);
-					String lemma = check_index(lemma_index, "lemma_index", row, false);
-					String tag = check_index(tag_index, "tag_index", row, false);
-					String morph = check_index(morph_index, "morph_index", row, false);
+					String word = check_index(form_index, "form_index", true);
+					String lemma = check_index(lemma_index, "lemma_index", false);
+					String tag = check_index(tag_index, "tag_index", false);
+					String morph = check_index(morph_index, "morph_index", false);
 					
 							
 					List<String> token_feature_list = null;
@@ -66,8 +77,8 @@ public class SentenceReader implements Iterable<Sequence> {
 
 					for (int token_feature_index : token_feature_indexes) {
 					
-					if (token_feature_index >= 0 && token_feature_index < row.size()) {
-						String[] token_features = row.get(token_feature_index)
+					if (token_feature_index >= 0 && token_feature_index < reader_.getNumColumns()) {
+						String[] token_features = reader_.getColumn(token_feature_index)
 								.split("#");
 						
 
@@ -120,10 +131,10 @@ public class SentenceReader implements Iterable<Sequence> {
 				return sentence;
 			}
 
-			private String check_index(int index, String string, List<String> row, boolean check_zero) {
-				if ((index < 0 && check_zero) || index >= row.size()) {
+			private String check_index(int index, String string, boolean check_zero) {
+				if ((index < 0 && check_zero) || index >= reader_.getNumColumns()) {
 					RuntimeException e = new RuntimeException(String.format(
-							"%s out of range: %d : %s\n", index, string, row));
+							"%s out of range: %d : %s\n", string, index, reader_.getColumns()));
 					throw e;					
 				}
 				
@@ -131,7 +142,7 @@ public class SentenceReader implements Iterable<Sequence> {
 					return null;
 				}
 				
-				return row.get(index);
+				return reader_.getInternedColumn(index);
 			}
 
 			@Override
@@ -140,7 +151,7 @@ public class SentenceReader implements Iterable<Sequence> {
 				if (limit >= 0 && number_ > limit) {
 					return false;
 				}
-				return line_iterator_.hasNext();
+				return reader_.hasNext();
 			}
 
 			@Override
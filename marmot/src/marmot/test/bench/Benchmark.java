@@ -0,0 +1,37 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.bench;
+
+// A benchmark is a fixed list of operations (usually one per sentence). The
+// runner times every operation, so that it can report latency percentiles
+// in addition to the throughput.
+public abstract class Benchmark {
+	private String name_;
+
+	// Benchmarks add their results here, so that the JIT can't drop the
+	// computation.
+	protected double blackhole_;
+
+	public Benchmark(String name) {
+		name_ = name;
+	}
+
+	public String getName() {
+		return name_;
+	}
+
+	// Called once before the warm-up iterations.
+	public void setUp() {
+	}
+
+	public abstract int getNumOperations();
+
+	// Runs the operation and returns the number of processed tokens, or 0 if
+	// the operation isn't token based.
+	public abstract int run(int operation);
+
+	public double getBlackhole() {
+		return blackhole_;
+	}
+}
@@ -0,0 +1,263 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import marmot.core.Sequence;
+import marmot.core.Tagger;
+import marmot.core.Token;
+import marmot.morph.MorphModel;
+import marmot.morph.MorphOptions;
+import marmot.morph.Sentence;
+import marmot.morph.Word;
+import marmot.morph.io.SentenceReader;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+
+// Runs the tagger benchmarks on the bundled corpus and on a synthetic corpus
+// of random sentences. Models of every order are trained on the fly, so that
+// the numbers only depend on the code and the options.
+//
+// For every benchmark and corpus the runner prints the throughput, latency
+// percentiles per operation and the number of bytes allocated per token (or
+// per operation for benchmarks that are not token based).
+public class BenchmarkRunner {
+	private static final String BUNDLED_DIR_ = "src/marmot/test/morph/";
+
+	private int warmup_iterations_;
+	private int iterations_;
+	private Pattern filter_;
+	private ThreadMXBean thread_bean_;
+
+	public BenchmarkRunner(int warmup_iterations, int iterations,
+			String filter) {
+		warmup_iterations_ = warmup_iterations;
+		iterations_ = iterations;
+		filter_ = Pattern.compile(filter);
+		thread_bean_ = ManagementFactory.getThreadMXBean();
+	}
+
+	public static void main(String[] args) throws JSAPException {
+		JSAP jsap = new JSAP();
+		registerOption(jsap, "train-file", "form-index=1,tag-index=4,morph-index=6,"
+				+ BUNDLED_DIR_ + "trn.txt");
+		registerOption(jsap, "test-file", "form-index=1,tag-index=4,morph-index=6,"
+				+ BUNDLED_DIR_ + "tst.txt");
+		registerOption(jsap, "orders", "1,2,3");
+		registerOption(jsap, "warmup-iterations", "2");
+		registerOption(jsap, "iterations", "5");
+		registerOption(jsap, "benchmarks", ".*");
+		registerOption(jsap, "synthetic-sentences", "500");
+		registerOption(jsap, "synthetic-max-length", "80");
+		registerOption(jsap, "seed", "42");
+		registerOption(jsap, "use-hash-vector", "true");
+
+		JSAPResult config = jsap.parse(args);
+
+		if (!config.success()) {
+			for (Iterator<?> errs = config.getErrorMessageIterator(); errs
+					.hasNext();) {
+				System.err.println("Error: " + errs.next());
+			}
+			System.err.println("Usage: ");
+			System.err.println(jsap.getUsage());
+			System.err.println(jsap.getHelp());
+			System.err.println();
+			System.exit(1);
+		}
+
+		List<Sequence> train_sentences = readSentences(config
+				.getString("train-file"));
+		List<Sequence> test_sentences = readSentences(config
+				.getString("test-file"));
+		List<Sequence> synthetic_sentences = createSyntheticSentences(
+				test_sentences, Integer.parseInt(config
+						.getString("synthetic-sentences")),
+				Integer.parseInt(config.getString("synthetic-max-length")),
+				Long.parseLong(config.getString("seed")));
+
+		BenchmarkRunner runner = new BenchmarkRunner(Integer.parseInt(config
+				.getString("warmup-iterations")), Integer.parseInt(config
+				.getString("iterations")), config.getString("benchmarks"));
+
+		runner.printHeader();
+		for (String order : config.getString("orders").split(",")) {
+			MorphOptions options = new MorphOptions();
+			options.setProperty(MorphOptions.ORDER, order);
+			options.setProperty(MorphOptions.NUM_ITERATIONS, "1");
+			options.setProperty(MorphOptions.SEED, config.getString("seed"));
+			options.setProperty(MorphOptions.VERBOSE, "false");
+			options.setProperty(MorphOptions.USE_HASH_VECTOR, config
+					.getString("use-hash-vector"));
+			Tagger tagger = MorphModel.train(options, train_sentences, null);
+
+			String suffix = "-order" + order;
+			runner.runSentenceBenchmarks(tagger, "bundled" + suffix,
+					test_sentences, train_sentences);
+			runner.runSentenceBenchmarks(tagger, "synthetic" + suffix,
+					synthetic_sentences, null);
+
+			if (order.equals("1")) {
+				runner.run(new TaggerBenchmarks.ModelLoad(tagger, true),
+						"bundled");
+				runner.run(new TaggerBenchmarks.ModelLoad(tagger, false),
+						"bundled");
+			}
+		}
+	}
+
+	private static void registerOption(JSAP jsap, String name,
+			String default_value) throws JSAPException {
+		jsap.registerParameter(new FlaggedOption(name).setLongFlag(name)
+				.setDefault(default_value));
+	}
+
+	private static List<Sequence> readSentences(String option_string) {
+		List<Sequence> sentences = new ArrayList<Sequence>();
+		for (Sequence sentence : new SentenceReader(option_string)) {
+			sentences.add(sentence);
+		}
+		return sentences;
+	}
+
+	// Random sentences made of the tokens of the given sentences. Lengths are
+	// uniform between 1 and max_length, so long sentences are much more
+	// frequent than in natural text.
+	public static List<Sequence> createSyntheticSentences(
+			List<Sequence> sentences, int num_sentences, int max_length,
+			long seed) {
+		List<Word> words = new ArrayList<Word>();
+		for (Sequence sentence : sentences) {
+			for (Token token : sentence) {
+				words.add((Word) token);
+			}
+		}
+
+		Random random = new Random(seed);
+		List<Sequence> synthetic_sentences = new ArrayList<Sequence>(
+				num_sentences);
+		for (int index = 0; index < num_sentences; index++) {
+			int length = 1 + random.nextInt(max_length);
+			List<Word> tokens = new ArrayList<Word>(length);
+			for (int token_index = 0; token_index < length; token_index++) {
+				tokens.add(words.get(random.nextInt(words.size()))
+						.shallowCopy());
+			}
+			synthetic_sentences.add(new Sentence(tokens));
+		}
+		return synthetic_sentences;
+	}
+
+	// The update benchmark needs gold tags, so it only runs on the training
+	// sentences.
+	private void runSentenceBenchmarks(Tagger tagger, String corpus,
+			List<Sequence> sentences, List<Sequence> train_sentences) {
+		run(new TaggerBenchmarks.FeatureExtraction(tagger, sentences), corpus);
+		run(new TaggerBenchmarks.DotProduct(tagger, sentences), corpus);
+		run(new TaggerBenchmarks.StateScores(tagger, sentences), corpus);
+		run(new TaggerBenchmarks.SumLatticeBenchmark(tagger, sentences), corpus);
+		run(new TaggerBenchmarks.Viterbi(tagger, sentences), corpus);
+		run(new TaggerBenchmarks.BatchTagging(tagger, sentences), corpus);
+		if (train_sentences != null) {
+			run(new TaggerBenchmarks.Update(tagger, train_sentences), corpus);
+		}
+	}
+
+	private void printHeader() {
+		System.out.format("%-16s %-18s %12s %10s %10s %10s %10s %12s\n",
+				"benchmark", "corpus", "tokens/s", "ops/s", "p50 ms",
+				"p90 ms", "p99 ms", "alloc B/unit");
+	}
+
+	public void run(Benchmark benchmark, String corpus) {
+		if (!filter_.matcher(benchmark.getName()).matches()) {
+			return;
+		}
+
+		benchmark.setUp();
+		for (int iteration = 0; iteration < warmup_iterations_; iteration++) {
+			runIteration(benchmark, null);
+		}
+
+		int num_operations = benchmark.getNumOperations();
+		long[] latencies = new long[iterations_ * num_operations];
+		long tokens = 0;
+		long time = 0;
+		long allocated_bytes = 0;
+		for (int iteration = 0; iteration < iterations_; iteration++) {
+			long[] iteration_latencies = new long[num_operations];
+			long start_bytes = getAllocatedBytes();
+			long start_time = System.nanoTime();
+			tokens += runIteration(benchmark, iteration_latencies);
+			time += System.nanoTime() - start_time;
+			allocated_bytes += getAllocatedBytes() - start_bytes;
+			System.arraycopy(iteration_latencies, 0, latencies, iteration
+					* num_operations, num_operations);
+		}
+		Arrays.sort(latencies);
+
+		double seconds = time / 1e9;
+		long units = (tokens > 0) ? tokens : (long) iterations_
+				* num_operations;
+		String allocated = (getAllocatedBytes() < 0) ? "n/a" : String.format(
+				"%.0f", allocated_bytes / (double) units);
+
+		String throughput = (tokens > 0) ? String.format("%.0f", tokens
+				/ seconds) : "-";
+
+		System.out.format("%-16s %-18s %12s %10.1f %10.3f %10.3f %10.3f %12s\n",
+				benchmark.getName(), corpus, throughput, iterations_
+						* num_operations / seconds,
+				getPercentile(latencies, 0.5), getPercentile(latencies, 0.9),
+				getPercentile(latencies, 0.99), allocated);
+
+		if (Double.isNaN(benchmark.getBlackhole())) {
+			System.err.println("NaN result in " + benchmark.getName());
+		}
+	}
+
+	private int runIteration(Benchmark benchmark, long[] latencies) {
+		int tokens = 0;
+		for (int operation = 0; operation < benchmark.getNumOperations(); operation++) {
+			long start_time = System.nanoTime();
+			tokens += benchmark.run(operation);
+			if (latencies != null) {
+				latencies[operation] = System.nanoTime() - start_time;
+			}
+		}
+		return tokens;
+	}
+
+	private static double getPercentile(long[] sorted_latencies,
+			double percentile) {
+		int index = (int) Math.ceil(percentile * sorted_latencies.length) - 1;
+		index = Math.max(0, Math.min(index, sorted_latencies.length - 1));
+		return sorted_latencies[index] / 1e6;
+	}
+
+	// Returns -1 if the JVM doesn't count allocations per thread.
+	private long getAllocatedBytes() {
+		if (thread_bean_ instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) thread_bean_;
+			if (bean.isThreadAllocatedMemorySupported()
+					&& bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+			}
+		}
+		return -1;
+	}
+
+}
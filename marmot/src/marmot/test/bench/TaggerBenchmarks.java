@@ -0,0 +1,262 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import marmot.core.FeatureVector;
+import marmot.core.Sequence;
+import marmot.core.State;
+import marmot.core.Tagger;
+import marmot.core.Token;
+import marmot.core.WeightVector;
+import marmot.core.lattice.SumLattice;
+import marmot.morph.MorphModel;
+import marmot.morph.Word;
+import marmot.util.BinaryModel;
+import marmot.util.FileUtils;
+
+public class TaggerBenchmarks {
+
+	// Base class of the per sentence benchmarks. Word indexes depend on the
+	// model, so the sentences are indexed again for every benchmark.
+	public static abstract class SentenceBenchmark extends Benchmark {
+		protected Tagger tagger_;
+		protected List<Sequence> sentences_;
+
+		public SentenceBenchmark(String name, Tagger tagger,
+				List<Sequence> sentences) {
+			super(name);
+			tagger_ = tagger;
+			sentences_ = sentences;
+		}
+
+		@Override
+		public void setUp() {
+			MorphModel model = (MorphModel) tagger_.getModel();
+			for (Sequence sentence : sentences_) {
+				for (Token token : sentence) {
+					Word word = (Word) token;
+					word.setVector(null);
+					model.addIndexes(word, false);
+				}
+			}
+		}
+
+		@Override
+		public int getNumOperations() {
+			return sentences_.size();
+		}
+	}
+
+	public static class FeatureExtraction extends SentenceBenchmark {
+		public FeatureExtraction(Tagger tagger, List<Sequence> sentences) {
+			super("features", tagger, sentences);
+		}
+
+		@Override
+		public int run(int operation) {
+			Sequence sentence = sentences_.get(operation);
+			WeightVector weights = tagger_.getWeightVector();
+			for (int index = 0; index < sentence.size(); index++) {
+				FeatureVector vector = weights.extractStateFeatures(sentence,
+						index);
+				blackhole_ += vector.size();
+			}
+			return sentence.size();
+		}
+	}
+
+	// Scores all tag candidates of every token. The features are extracted
+	// during setUp.
+	public static abstract class ScoringBenchmark extends SentenceBenchmark {
+		// The candidate states of every token of every sentence.
+		protected List<List<List<State>>> states_;
+
+		public ScoringBenchmark(String name, Tagger tagger,
+				List<Sequence> sentences) {
+			super(name, tagger, sentences);
+		}
+
+		@Override
+		public void setUp() {
+			super.setUp();
+			MorphModel model = (MorphModel) tagger_.getModel();
+			WeightVector weights = tagger_.getWeightVector();
+
+			states_ = new ArrayList<List<List<State>>>(sentences_.size());
+			for (Sequence sentence : sentences_) {
+				List<List<State>> token_states = new ArrayList<List<State>>();
+				for (int index = 0; index < sentence.size(); index++) {
+					FeatureVector vector = weights.extractStateFeatures(
+							sentence, index);
+					List<State> states = new ArrayList<State>();
+					for (int tag_index : model.getTagCandidates(sentence,
+							index, null)) {
+						if (tag_index == -1) {
+							break;
+						}
+						State state = new State(tag_index);
+						state.setVector(vector);
+						states.add(state);
+					}
+					token_states.add(states);
+				}
+				states_.add(token_states);
+			}
+		}
+	}
+
+	// One dot product per state.
+	public static class DotProduct extends ScoringBenchmark {
+		public DotProduct(Tagger tagger, List<Sequence> sentences) {
+			super("dot-product", tagger, sentences);
+		}
+
+		@Override
+		public int run(int operation) {
+			WeightVector weights = tagger_.getWeightVector();
+			for (List<State> states : states_.get(operation)) {
+				for (State state : states) {
+					blackhole_ += weights.dotProduct(state, state.getVector());
+				}
+			}
+			return sentences_.get(operation).size();
+		}
+	}
+
+	// All states of a token at once, as the tagger scores them.
+	public static class StateScores extends ScoringBenchmark {
+		public StateScores(Tagger tagger, List<Sequence> sentences) {
+			super("state-scores", tagger, sentences);
+		}
+
+		@Override
+		public int run(int operation) {
+			WeightVector weights = tagger_.getWeightVector();
+			for (List<State> states : states_.get(operation)) {
+				weights.setScores(states, states.get(0).getVector());
+				for (State state : states) {
+					blackhole_ += state.getScore();
+				}
+			}
+			return sentences_.get(operation).size();
+		}
+	}
+
+	public static class SumLatticeBenchmark extends SentenceBenchmark {
+		public SumLatticeBenchmark(Tagger tagger, List<Sequence> sentences) {
+			super("sum-lattice", tagger, sentences);
+		}
+
+		@Override
+		public int run(int operation) {
+			Sequence sentence = sentences_.get(operation);
+			SumLattice lattice = tagger_.getSumLattice(false, sentence);
+			blackhole_ += lattice.getCandidates().size();
+			return sentence.size();
+		}
+	}
+
+	// Complete tagging including pruning and Viterbi decoding.
+	public static class Viterbi extends SentenceBenchmark {
+		public Viterbi(Tagger tagger, List<Sequence> sentences) {
+			super("tag", tagger, sentences);
+		}
+
+		@Override
+		public int run(int operation) {
+			Sequence sentence = sentences_.get(operation);
+			blackhole_ += tagger_.tag(sentence).size();
+			return sentence.size();
+		}
+	}
+
+	// Tags batches of BATCH_SIZE_ consecutive sentences with Tagger.tagAll.
+	public static class BatchTagging extends SentenceBenchmark {
+		private static final int BATCH_SIZE_ = 64;
+
+		public BatchTagging(Tagger tagger, List<Sequence> sentences) {
+			super("tag-all", tagger, sentences);
+		}
+
+		@Override
+		public int getNumOperations() {
+			return (sentences_.size() + BATCH_SIZE_ - 1) / BATCH_SIZE_;
+		}
+
+		@Override
+		public int run(int operation) {
+			int start = operation * BATCH_SIZE_;
+			List<Sequence> batch = sentences_.subList(start,
+					Math.min(start + BATCH_SIZE_, sentences_.size()));
+			int tokens = 0;
+			for (List<List<String>> tags : tagger_.tagAll(batch)) {
+				tokens += tags.size();
+			}
+			blackhole_ += tokens;
+			return tokens;
+		}
+	}
+
+	// A training step without the learning rate schedule. The step width is
+	// 0, so the weights don't change between iterations.
+	public static class Update extends SentenceBenchmark {
+		public Update(Tagger tagger, List<Sequence> sentences) {
+			super("update", tagger, sentences);
+		}
+
+		@Override
+		public int run(int operation) {
+			Sequence sentence = sentences_.get(operation);
+			SumLattice lattice = tagger_.getSumLattice(true, sentence);
+			blackhole_ += lattice.update(tagger_.getWeightVector(), 0.0);
+			return sentence.size();
+		}
+	}
+
+	public static class ModelLoad extends Benchmark {
+		private Tagger tagger_;
+		private boolean binary_;
+		private File file_;
+
+		public ModelLoad(Tagger tagger, boolean binary) {
+			super(binary ? "load-binary" : "load-serialized");
+			tagger_ = tagger;
+			binary_ = binary;
+		}
+
+		@Override
+		public void setUp() {
+			try {
+				file_ = File.createTempFile("benchmark", ".marmot");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			file_.deleteOnExit();
+
+			if (binary_) {
+				BinaryModel.save(tagger_, file_);
+			} else {
+				FileUtils.saveToFile(tagger_, file_);
+			}
+		}
+
+		@Override
+		public int getNumOperations() {
+			return 1;
+		}
+
+		@Override
+		public int run(int operation) {
+			Tagger tagger = FileUtils.loadFromFile(file_);
+			blackhole_ += tagger.getNumLevels();
+			return 0;
+		}
+	}
+
+}
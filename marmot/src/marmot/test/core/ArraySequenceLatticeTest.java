@@ -0,0 +1,131 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marmot.core.State;
+import marmot.core.Transition;
+import marmot.core.lattice.ArraySequenceLattice;
+import marmot.util.Numerics;
+
+import org.junit.Test;
+
+public class ArraySequenceLatticeTest {
+
+	// Random lattice with the given number of states per position. The last
+	// position is the boundary. Some transitions are left out.
+	private List<List<State>> createCandidates(Random random, int[] sizes) {
+		List<List<State>> candidates = new ArrayList<List<State>>();
+		State boundary = new State(0);
+		List<State> previous_states = new ArrayList<State>();
+		previous_states.add(boundary);
+
+		for (int size : sizes) {
+			List<State> states = new ArrayList<State>();
+			for (int state_index = 0; state_index < size; state_index++) {
+				State state = new State(state_index + 1);
+				state.setScore(random.nextGaussian());
+
+				Transition[] transitions = new Transition[previous_states
+						.size()];
+				for (int index = 0; index < transitions.length; index++) {
+					if (index == 0 || random.nextInt(3) > 0) {
+						transitions[index] = new Transition(
+								previous_states.get(index), state, 1);
+						transitions[index].setScore(random.nextGaussian());
+					}
+				}
+				state.setTransitions(transitions);
+				states.add(state);
+			}
+			candidates.add(states);
+			previous_states = states;
+		}
+
+		return candidates;
+	}
+
+	// Log sum of the scores of all paths from previous_state_index at
+	// position index - 1 to the end of the lattice.
+	private double sumPaths(List<List<State>> candidates, int index,
+			int previous_state_index) {
+		if (index == candidates.size()) {
+			return 0;
+		}
+		double score_sum = Double.NEGATIVE_INFINITY;
+		int state_index = 0;
+		for (State state : candidates.get(index)) {
+			Transition transition = state.getTransition(previous_state_index);
+			if (transition != null) {
+				double score = state.getScore() + transition.getScore()
+						+ sumPaths(candidates, index + 1, state_index);
+				score_sum = Numerics.sumLogProb(score_sum, score);
+			}
+			state_index++;
+		}
+		return score_sum;
+	}
+
+	@Test
+	public void partitionFunctionTest() {
+		Random random = new Random(42);
+		int[] sizes = { 3, 4, 2, 4, 1 };
+		List<List<State>> candidates = createCandidates(random, sizes);
+
+		ArraySequenceLattice lattice = new ArraySequenceLattice(candidates);
+		lattice.init();
+
+		double partition_function = sumPaths(candidates, 0, 0);
+		assertEquals(partition_function, lattice.partitionFunction(), 1e-10);
+		assertEquals(partition_function, lattice.getBackward(0, 0), 1e-10);
+
+		// The marginals of every position sum to one.
+		for (int index = 0; index < sizes.length; index++) {
+			double sum = 0.0;
+			for (int state_index = 0; state_index < sizes[index]; state_index++) {
+				double score = lattice.getForward(index, state_index)
+						+ lattice.getBackward(index + 1, state_index);
+				sum += Math.exp(score - partition_function);
+			}
+			assertEquals(1.0, sum, 1e-10);
+		}
+	}
+
+	@Test
+	public void transitionTest() {
+		Random random = new Random(42);
+		int[] sizes = { 2, 3, 1 };
+		List<List<State>> candidates = createCandidates(random, sizes);
+
+		ArraySequenceLattice lattice = new ArraySequenceLattice(candidates);
+		lattice.init();
+
+		for (int state_index = 0; state_index < sizes[1]; state_index++) {
+			State state = candidates.get(1).get(state_index);
+			int transition = lattice.getTransitionStart(1, state_index);
+			for (int previous_state_index = 0; previous_state_index < sizes[0]; previous_state_index++) {
+				Transition trans = state.getTransition(previous_state_index);
+				if (trans != null) {
+					assertEquals(previous_state_index,
+							lattice.getTransitionSource(1, transition));
+					assertEquals(trans.getScore(),
+							lattice.getTransitionScore(transition), 0.0);
+					transition++;
+				}
+
+				int[] index_map = { -1, -1 };
+				index_map[previous_state_index] = 0;
+				assertEquals(trans != null,
+						lattice.hasTransition(1, state_index, index_map));
+			}
+			assertEquals(lattice.getTransitionEnd(1, state_index), transition);
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.core;
+
+import static org.junit.Assert.*;
+
+import marmot.core.FeatureVector;
+
+import org.junit.Test;
+
+public class FeatureVectorTest {
+
+	@Test
+	public void concatFeaturesTest() {
+		FeatureVector base = new FeatureVector(1);
+		base.add(3);
+		base.add(5);
+		base.add(-1);
+		base.add(7);
+
+		FeatureVector middle = new FeatureVector(1, base);
+		middle.add(11);
+
+		FeatureVector top = new FeatureVector(2, middle);
+		top.add(13);
+		top.add(17);
+
+		int[] expected = { 13, 17, 11, 3, 5, 7 };
+		assertEquals(expected.length, top.size());
+
+		int[] features = top.getFeatures();
+		for (int index = 0; index < expected.length; index++) {
+			assertEquals(expected[index], features[index]);
+			assertEquals(expected[index], top.get(index));
+		}
+
+		top.add(19);
+		assertEquals(expected.length + 1, top.size());
+		assertEquals(19, top.getFeatures()[2]);
+		assertEquals(3, top.getFeatures()[4]);
+	}
+
+}
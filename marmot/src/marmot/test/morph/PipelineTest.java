@@ -3,6 +3,8 @@
 
 package marmot.test.morph;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
@@ -27,6 +29,7 @@ import marmot.morph.MorphResult;
 import marmot.morph.Sentence;
 import marmot.morph.Word;
 import marmot.morph.io.SentenceReader;
+import marmot.util.BinaryModel;
 import marmot.util.FileUtils;
 import marmot.util.StringUtils.Mode;
 
@@ -238,6 +241,26 @@ public class PipelineTest {
 		realTestWithOptions(options, 98.51, 54.10);
 	}
 	
+	@Test
+	public void realMinFeatureCountTest() {
+		MorphOptions options = new MorphOptions();
+		options.setProperty(Options.SEED, "42");
+		options.setProperty(Options.NUM_ITERATIONS, "10");
+		options.setProperty(Options.VECTOR_SIZE, "1");
+		options.setProperty(MorphOptions.USE_HASH_VECTOR, "false");
+		options.setProperty(MorphOptions.MIN_FEATURE_COUNT, "2");
+		options.setProperty(MorphOptions.MAX_FEATURES_PER_TEMPLATE, "1000");
+		options.setProperty(Options.CANDIDATES_PER_STATE, "[4, 2, 1.5, 1.25]");
+		options.setProperty(Options.PRUNE, "true");
+		options.setProperty(Options.ORDER, "3");
+		options.setProperty(Options.PENALTY, "0.1");
+		options.setProperty(MorphOptions.TRAIN_FILE,
+				"form-index=1,tag-index=4,morph-index=6," + getResourceFile("trn.txt"));
+		options.setProperty(MorphOptions.TEST_FILE,
+				"form-index=1,tag-index=4,morph-index=6," + getResourceFile("tst.txt"));
+		realTestWithOptions(options, 89.81, 52.70);
+	}
+	
 	@Test
 	public void realNormalizeFormTest() {
 		MorphOptions options = new MorphOptions();
@@ -418,6 +441,30 @@ public class PipelineTest {
 		realTestWithOptions(options, 99.83, 70.94);
 	}
 
+	@Test
+	public void binaryOverwriteTest() throws IOException {
+		MorphOptions options = new MorphOptions();
+		options.setProperty(Options.SEED, "42");
+		options.setProperty(MorphOptions.NUM_ITERATIONS, "10");
+		options.setProperty(MorphOptions.SHAPE, "false");
+		Tagger tagger = MorphModel.train(options, getTrainSentences());
+
+		File tempfile = File.createTempFile("tagger", ".marmot");
+		tempfile.deleteOnExit();
+		BinaryModel.save(tagger, tempfile);
+		Tagger loaded_tagger = FileUtils.loadFromFile(tempfile);
+		Sequence sentence = getTestSentences().get(0);
+		List<List<String>> tags = loaded_tagger.tag(sentence);
+
+		// The weights of the loaded tagger are mapped from the file, so
+		// replacing the model (here by a smaller one) must not change the
+		// file they are mapped from.
+		options.setProperty(MorphOptions.VECTOR_SIZE, "1024");
+		BinaryModel.save(MorphModel.train(options, getTrainSentences()),
+				tempfile);
+		assertEquals(tags, loaded_tagger.tag(sentence));
+	}
+
 	public void toyTestWithOptions(MorphOptions options) {
 		options.setProperty(MorphOptions.SHAPE, "false");
 		testWithOptions(options, getTrainSentences(), getTestSentences(), 100.0, 100.0);
@@ -448,6 +495,7 @@ public class PipelineTest {
 
 		assertModelPerformanceOnTestset(caller + " Train", tagger, train_sentences, train_threshold);
 		assertModelPerformanceOnTestset(caller + " Test ", tagger, test_sentences, test_threshold);
+		assertTagAllEqualsTag(tagger, test_sentences);
 		
 		File tempfile;
 		try {
@@ -461,6 +509,17 @@ public class PipelineTest {
 			throw new RuntimeException(e);
 		}
 	}
+
+	private void assertTagAllEqualsTag(Tagger tagger, List<Sequence> sentences) {
+		List<List<List<String>>> tags = tagger.tagAll(sentences);
+		assertEquals(sentences.size(), tags.size());
+		
+		int index = 0;
+		for (Sequence sentence : sentences) {
+			assertEquals(tagger.tag(sentence), tags.get(index));
+			index ++;
+		}
+	}
 	
 	public void testOptimizerWithOptions(MorphOptions options,
 			List<Sequence> train_sentences, List<Sequence> test_sentences,
@@ -0,0 +1,89 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import marmot.util.BinaryModel;
+import marmot.util.FileUtils;
+import marmot.util.LongSymbolTable;
+
+import org.junit.Test;
+
+public class BinaryModelTest {
+
+	private long[] fillTable(LongSymbolTable table, int num_keys) {
+		Random random = new Random(42);
+		long[] keys = new long[num_keys];
+		for (int index = 0; index < num_keys; index++) {
+			long key;
+			do {
+				key = random.nextLong();
+			} while (key == 0L);
+			keys[index] = key;
+			table.toIndex(key, -1, true);
+		}
+		return keys;
+	}
+
+	private void assertTable(long[] keys, LongSymbolTable table) {
+		assertEquals(keys.length, table.size());
+		for (int index = 0; index < keys.length; index++) {
+			assertEquals(index, table.toIndex(keys[index]));
+		}
+		assertEquals(-1, table.toIndex(0x5555L, -1, false));
+	}
+
+	@Test
+	public void roundTripTest() {
+		LongSymbolTable table = new LongSymbolTable();
+		long[] keys = fillTable(table, 5000);
+
+		File file = TestUtils.createTempFile("binary");
+		BinaryModel.save(table, file);
+		assertTrue(BinaryModel.isBinaryModel(file));
+
+		LongSymbolTable mapped = FileUtils.loadFromFile(file);
+		assertTable(keys, mapped);
+
+		// Saving must not detach the arrays of the original table.
+		assertTable(keys, table);
+		table.toIndex(0x5555L, -1, true);
+	}
+
+	@Test
+	public void mappedTableTest() {
+		LongSymbolTable table = new LongSymbolTable();
+		long[] keys = fillTable(table, 1000);
+
+		File file = TestUtils.createTempFile("binary");
+		BinaryModel.save(table, file);
+		LongSymbolTable mapped = BinaryModel.load(file);
+
+		// A mapped table can be saved again in both formats.
+		File binary_file = TestUtils.createTempFile("binary");
+		BinaryModel.save(mapped, binary_file);
+		assertTable(keys, (LongSymbolTable) BinaryModel.load(binary_file));
+
+		File serial_file = TestUtils.createTempFile("binary");
+		FileUtils.saveToFile(mapped, serial_file);
+		assertFalse(BinaryModel.isBinaryModel(serial_file));
+		assertTable(keys, (LongSymbolTable) FileUtils.loadFromFile(serial_file));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void mappedInsertTest() {
+		LongSymbolTable table = new LongSymbolTable();
+		fillTable(table, 10);
+
+		File file = TestUtils.createTempFile("binary");
+		BinaryModel.save(table, file);
+		LongSymbolTable mapped = BinaryModel.load(file);
+		mapped.toIndex(0x5555L, -1, true);
+	}
+
+}
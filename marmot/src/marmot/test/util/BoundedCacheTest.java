@@ -0,0 +1,58 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import marmot.util.BoundedCache;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void getTest() {
+		BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(
+				100);
+		assertNull(cache.get("a"));
+		Integer value = 1000;
+		cache.put("a", value);
+		assertSame(value, cache.get("a"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+
+		cache.clear();
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void evictionTest() {
+		int capacity = 50;
+		BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(
+				capacity);
+		for (int key = 0; key < 1000; key++) {
+			cache.put(key, key);
+			// Recently used entries stay in the cache.
+			assertEquals(Integer.valueOf(0), cache.get(0));
+		}
+		assertEquals(capacity, cache.size());
+		assertEquals(1000 - capacity, cache.getEvictions());
+	}
+
+	@Test
+	public void smallTest() {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(
+				1);
+		cache.put(1, 1);
+		cache.put(2, 2);
+		assertNull(cache.get(1));
+		assertEquals(Integer.valueOf(2), cache.get(2));
+		assertEquals(1, cache.size());
+	}
+
+}
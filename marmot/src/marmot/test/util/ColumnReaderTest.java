@@ -0,0 +1,103 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import marmot.util.ColumnReader;
+
+import org.junit.Test;
+
+public class ColumnReaderTest {
+
+	private List<List<String>> read(String text, int buffer_size) {
+		return read(text, buffer_size, 1 << 16);
+	}
+
+	private List<List<String>> read(String text, int buffer_size,
+			int max_interned) {
+		ColumnReader reader;
+		try {
+			reader = new ColumnReader(new ByteArrayInputStream(
+					text.getBytes("UTF-8")), buffer_size, max_interned);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+
+		List<List<String>> lines = new ArrayList<List<String>>();
+		while (reader.nextLine()) {
+			List<String> columns = new ArrayList<String>();
+			for (int index = 0; index < reader.getNumColumns(); index++) {
+				String column = reader.getInternedColumn(index);
+				assertEquals(reader.getColumn(index), column);
+				columns.add(column);
+			}
+			assertEquals(reader.getColumns(), columns);
+			lines.add(columns);
+		}
+		assertFalse(reader.hasNext());
+		return lines;
+	}
+
+	// Same splitting as LineIterator.
+	private List<List<String>> split(String text) {
+		List<List<String>> lines = new ArrayList<List<String>>();
+		if (text.isEmpty()) {
+			return lines;
+		}
+		for (String line : text.split("\r\n|\r|\n", -1)) {
+			List<String> columns = new ArrayList<String>();
+			for (String column : line.split("\\s+")) {
+				if (!column.isEmpty()) {
+					columns.add(column);
+				}
+			}
+			lines.add(columns);
+		}
+		if (text.endsWith("\n") || text.endsWith("\r")) {
+			lines.remove(lines.size() - 1);
+		}
+		return lines;
+	}
+
+	@Test
+	public void splitTest() {
+		String[] texts = { "", "a", "a\n", "\n", "\n\n", "a b\tc\n\nd",
+				"a\r\nb\rc\n\r\n", " a  b \t\nüß €\f\u000Bx\n",
+				"Wort\tWort\tNN\tcase=nom|number=sg\n\nZweites  Wort\r\n" };
+
+		for (String text : texts) {
+			for (int buffer_size = 1; buffer_size < 12; buffer_size++) {
+				assertEquals(text, split(text), read(text, buffer_size));
+			}
+			assertEquals(text, split(text), read(text, 1 << 20));
+		}
+	}
+
+	@Test
+	public void internTest() {
+		List<List<String>> lines = read("a b\nb a\n", 1024);
+		assertSame(lines.get(0).get(0), lines.get(1).get(1));
+		assertSame(lines.get(0).get(1), lines.get(1).get(0));
+	}
+
+	@Test
+	public void internLimitTest() {
+		StringBuilder sb = new StringBuilder();
+		for (int index = 0; index < 100; index++) {
+			sb.append(index);
+			sb.append(' ');
+			sb.append(index % 3);
+			sb.append('\n');
+		}
+		String text = sb.toString();
+		assertEquals(split(text), read(text, 16, 10));
+	}
+
+}
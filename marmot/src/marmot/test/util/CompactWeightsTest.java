@@ -0,0 +1,100 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import marmot.util.BinaryModel;
+import marmot.util.CompactWeights;
+import marmot.util.CompactWeights.Mode;
+import marmot.util.FileUtils;
+
+import org.junit.Test;
+
+public class CompactWeightsTest {
+
+	private double[] createWeights(int length) {
+		Random random = new Random(42);
+		double[] weights = new double[length];
+		for (int index = 0; index < length; index++) {
+			// Leave long runs of zeros, like the L1 penalty does.
+			if ((index / 100) % 3 == 0) {
+				weights[index] = random.nextGaussian();
+			}
+		}
+		return weights;
+	}
+
+	private void assertWeights(double[] weights, CompactWeights compact,
+			double delta) {
+		assertEquals(weights.length, compact.length());
+		for (int index = 0; index < weights.length; index++) {
+			if (weights[index] == 0.0) {
+				assertEquals(0.0, compact.get(index), 0.0);
+			} else {
+				assertEquals(weights[index], compact.get(index), delta);
+			}
+		}
+	}
+
+	@Test
+	public void quantizationTest() {
+		double[] weights = createWeights(10001);
+		assertWeights(weights, new CompactWeights(weights, Mode.FLOAT), 1e-6);
+		assertWeights(weights, new CompactWeights(weights, Mode.INT16), 1e-3);
+		assertWeights(weights, new CompactWeights(weights, Mode.INT8), 5e-2);
+	}
+
+	@Test
+	public void sparseTest() {
+		int row_length = 222;
+		double[] weights = createWeights(row_length * 97);
+		// A few single weights in otherwise empty rows.
+		for (int row = 3; row < 97; row += 9) {
+			for (int column = 0; column < row_length; column++) {
+				weights[row * row_length + column] = 0.0;
+			}
+			weights[row * row_length + row] = row;
+		}
+
+		CompactWeights compact = new CompactWeights(weights, Mode.SPARSE,
+				row_length);
+		assertWeights(weights, compact, 0.0);
+		for (int row = 0; row < 97; row++) {
+			for (int column = 0; column < row_length; column++) {
+				assertEquals(weights[row * row_length + column],
+						compact.get(row, column), 0.0);
+			}
+		}
+		assertArrayEquals(weights, compact.toArray(), 0.0);
+
+		File binary_file = TestUtils.createTempFile("compact");
+		BinaryModel.save(compact, binary_file);
+		CompactWeights mapped = BinaryModel.load(binary_file);
+		assertArrayEquals(weights, mapped.toArray(), 0.0);
+		assertEquals(compact.get(3, 3), mapped.get(3, 3), 0.0);
+	}
+
+	@Test
+	public void saveTest() {
+		double[] weights = createWeights(5003);
+		for (Mode mode : Mode.values()) {
+			CompactWeights compact = new CompactWeights(weights, mode);
+
+			File binary_file = TestUtils.createTempFile("compact");
+			BinaryModel.save(compact, binary_file);
+			CompactWeights mapped = BinaryModel.load(binary_file);
+			assertArrayEquals(compact.toArray(), mapped.toArray(), 0.0);
+
+			File serial_file = TestUtils.createTempFile("compact");
+			FileUtils.saveToFile(mapped, serial_file);
+			CompactWeights loaded = FileUtils.loadFromFile(serial_file);
+			assertArrayEquals(compact.toArray(), loaded.toArray(), 0.0);
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import marmot.util.LongEncoder;
+import marmot.util.LongSymbolTable;
+
+import org.junit.Test;
+
+public class LongEncoderTest {
+
+	@Test
+	public void lengthIsPartOfKeyTest() {
+		LongEncoder encoder = new LongEncoder(new LongSymbolTable());
+		encoder.setInsert(true);
+
+		encoder.append(5, 3);
+		long short_key = encoder.getKey();
+
+		encoder.append(0, 4);
+		long long_key = encoder.getKey();
+
+		assertTrue(short_key != long_key);
+	}
+
+	@Test
+	public void foldingTest() {
+		LongSymbolTable prefix_table = new LongSymbolTable();
+		LongEncoder encoder = new LongEncoder(prefix_table);
+		encoder.setInsert(true);
+
+		Set<Long> keys = new HashSet<Long>();
+		for (int first = 0; first < 8; first++) {
+			encoder.reset();
+			encoder.append(first, 3);
+			for (int position = 0; position < 20; position++) {
+				encoder.append(position % 128, 7);
+				assertFalse(encoder.isUnknown());
+				assertTrue(keys.add(encoder.getKey()));
+			}
+		}
+
+		assertTrue(prefix_table.size() > 0);
+
+		encoder.setInsert(false);
+		encoder.reset();
+		encoder.append(7, 3);
+		for (int position = 0; position < 20; position++) {
+			encoder.append(position % 128, 7);
+			assertFalse(encoder.isUnknown());
+			assertTrue(keys.contains(encoder.getKey()));
+		}
+
+		encoder.reset();
+		encoder.append(7, 3);
+		for (int position = 0; position < 20; position++) {
+			encoder.append(127, 7);
+		}
+		assertTrue(encoder.isUnknown());
+	}
+
+}
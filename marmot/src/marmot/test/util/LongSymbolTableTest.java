@@ -0,0 +1,88 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marmot.util.LongSymbolTable;
+
+import org.junit.Test;
+
+public class LongSymbolTableTest {
+
+	@Test
+	public void toIndexTest() {
+		LongSymbolTable table = new LongSymbolTable(4);
+		Random random = new Random(42);
+
+		int num_keys = 10000;
+		long[] keys = new long[num_keys];
+		for (int index = 0; index < num_keys; index++) {
+			long key;
+			do {
+				key = random.nextLong();
+			} while (key == 0L);
+			keys[index] = key;
+			assertEquals(index, table.toIndex(key, -1, true));
+		}
+
+		assertEquals(num_keys, table.size());
+
+		for (int index = 0; index < num_keys; index++) {
+			assertEquals(index, table.toIndex(keys[index], -1, false));
+			assertEquals(index, table.toIndex(keys[index], -1, true));
+		}
+
+		assertEquals(num_keys, table.size());
+		assertEquals(-1, table.toIndex(3L, -1, false));
+		assertFalse(table.hasSymbol(3L));
+	}
+
+	@Test
+	public void concurrentInsertTest() throws InterruptedException {
+		final LongSymbolTable table = new LongSymbolTable(4);
+		final int num_keys = 20000;
+		int num_threads = 4;
+		final int[][] indexes = new int[num_threads][num_keys];
+
+		// Every thread inserts all keys, in a different order.
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int thread = 0; thread < num_threads; thread++) {
+			final int thread_index = thread;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int index = 0; index < num_keys; index++) {
+						int key_index = (thread_index % 2 == 0) ? index
+								: num_keys - 1 - index;
+						indexes[thread_index][key_index] = table.toIndex(
+								key_index + 1, -1, true);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(num_keys, table.size());
+		boolean[] seen = new boolean[num_keys];
+		for (int key_index = 0; key_index < num_keys; key_index++) {
+			int index = table.toIndex(key_index + 1, -1, false);
+			for (int thread = 0; thread < num_threads; thread++) {
+				assertEquals(index, indexes[thread][key_index]);
+			}
+			assertFalse(seen[index]);
+			seen[index] = true;
+		}
+	}
+
+}
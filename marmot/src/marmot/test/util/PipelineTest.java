@@ -0,0 +1,157 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marmot.util.Pipeline;
+
+import org.junit.Test;
+
+public class PipelineTest {
+
+	private List<Integer> range(int size) {
+		List<Integer> list = new ArrayList<Integer>(size);
+		for (int index = 0; index < size; index++) {
+			list.add(index);
+		}
+		return list;
+	}
+
+	@Test
+	public void orderTest() throws IOException {
+		Pipeline<Integer, String> pipeline = new Pipeline<Integer, String>(
+				range(1000).iterator(), "read", 8);
+
+		pipeline.addStage("square", 1, new Pipeline.Stage<Integer, Long>() {
+			@Override
+			public Long apply(Integer input) {
+				return (long) input * input;
+			}
+		});
+
+		// Every even item waits until the odd item after it has finished, so
+		// the workers always finish out of order.
+		final CountDownLatch[] latches = new CountDownLatch[500];
+		for (int index = 0; index < latches.length; index++) {
+			latches[index] = new CountDownLatch(1);
+		}
+		final List<Integer> finished = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		pipeline.addStage("format", 4, new Pipeline.Stage<Long, String>() {
+			@Override
+			public String apply(Long input) {
+				int index = (int) Math.round(Math.sqrt(input));
+				CountDownLatch latch = latches[index / 2];
+				if (index % 2 == 0) {
+					try {
+						assertTrue(latch.await(10, TimeUnit.SECONDS));
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					finished.add(index);
+				} else {
+					finished.add(index);
+					latch.countDown();
+				}
+				return Long.toString(input);
+			}
+		});
+
+		final List<String> output = new ArrayList<String>();
+		final AtomicInteger next = new AtomicInteger();
+		pipeline.run("write", new Pipeline.Sink<Integer, String>() {
+			@Override
+			public void accept(Integer input, String value) {
+				assertEquals(next.getAndIncrement(), input.intValue());
+				output.add(value);
+			}
+		});
+
+		assertEquals(1000, output.size());
+		for (int index = 0; index < output.size(); index++) {
+			assertEquals(Long.toString((long) index * index), output.get(index));
+		}
+
+		for (int index = 0; index < 1000; index += 2) {
+			assertTrue(finished.indexOf(index + 1) < finished.indexOf(index));
+		}
+
+		for (Pipeline.StageCounter counter : pipeline.getCounters()) {
+			assertEquals(1000, counter.getItems());
+		}
+		assertEquals(4, pipeline.getCounters().size());
+	}
+
+	// The source may only run capacity items ahead of the sink.
+	@Test
+	public void capacityTest() throws IOException {
+		final AtomicInteger read = new AtomicInteger();
+		final Iterator<Integer> iterator = range(100).iterator();
+		Iterator<Integer> source = new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Integer next() {
+				read.incrementAndGet();
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		Pipeline<Integer, Integer> pipeline = new Pipeline<Integer, Integer>(
+				source, "read", 5);
+		pipeline.run("write", new Pipeline.Sink<Integer, Integer>() {
+			@Override
+			public void accept(Integer input, Integer value) {
+				assertTrue(read.get() <= input + 1 + 5);
+			}
+		});
+		assertEquals(100, read.get());
+	}
+
+	@Test
+	public void errorTest() throws IOException {
+		Pipeline<Integer, Integer> pipeline = new Pipeline<Integer, Integer>(
+				range(100).iterator(), "read", 4);
+		pipeline.addStage("fail", 2, new Pipeline.Stage<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer input) {
+				if (input == 50) {
+					throw new IllegalStateException("fail");
+				}
+				return input;
+			}
+		});
+
+		try {
+			pipeline.run("write", new Pipeline.Sink<Integer, Integer>() {
+				@Override
+				public void accept(Integer input, Integer value) {
+					assertTrue(input < 50);
+				}
+			});
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import marmot.util.SparseDoubleArray;
+
+import org.junit.Test;
+
+public class SparseDoubleArrayTest {
+
+	@Test
+	public void randomTest() {
+		Random random = new Random(42);
+		int length = 100000;
+		SparseDoubleArray array = new SparseDoubleArray();
+		double[] expected = new double[length];
+
+		for (int operation = 0; operation < 20000; operation++) {
+			// Only touch the first third of every block of 30 entries.
+			int index = random.nextInt(length / 30) * 30
+					+ random.nextInt(10);
+
+			if (random.nextInt(4) == 0) {
+				assertEquals(expected[index], array.remove(index), 0.0);
+				expected[index] = 0.0;
+			} else {
+				double value = random.nextGaussian();
+				array.add(index, value);
+				expected[index] += value;
+			}
+		}
+
+		for (int index = 0; index < length; index++) {
+			assertEquals(expected[index], array.get(index), 0.0);
+		}
+		assertEquals(0.0, array.get(10 * length), 0.0);
+	}
+
+	@Test
+	public void emptyPageTest() {
+		Random random = new Random(42);
+		int page_size = SparseDoubleArray.getPageSize();
+		int num_pages = 20;
+		SparseDoubleArray array = new SparseDoubleArray();
+		double[] expected = new double[num_pages * page_size];
+
+		// Only touch every third page, the others stay empty.
+		for (int operation = 0; operation < 5000; operation++) {
+			int index = random.nextInt(num_pages / 3 + 1) * 3 * page_size
+					+ random.nextInt(page_size);
+			double value = random.nextGaussian();
+			array.add(index, value);
+			expected[index] += value;
+		}
+		assertEquals(num_pages / 3 + 1, array.getNumPages());
+
+		for (int index = 0; index < expected.length; index++) {
+			assertEquals(expected[index], array.get(index), 0.0);
+			if ((index / page_size) % 3 != 0) {
+				assertEquals(0.0, array.remove(index), 0.0);
+			}
+		}
+		assertEquals(num_pages / 3 + 1, array.getNumPages());
+	}
+
+	@Test
+	public void pageTest() {
+		SparseDoubleArray array = new SparseDoubleArray();
+		int page_size = SparseDoubleArray.getPageSize();
+
+		array.add(5 * page_size, 0.0);
+		assertEquals(0, array.getNumPages());
+		assertEquals(0.0, array.remove(5 * page_size), 0.0);
+
+		array.add(5 * page_size + 1, 1.0);
+		array.add(1000 * page_size, 2.0);
+		assertEquals(2, array.getNumPages());
+		assertEquals(1.0, array.get(5 * page_size + 1), 0.0);
+		assertEquals(0.0, array.get(5 * page_size), 0.0);
+		assertEquals(2.0, array.get(1000 * page_size), 0.0);
+	}
+
+}
@@ -0,0 +1,22 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.test.util;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TestUtils {
+
+	// Returns a new model file that is deleted when the tests end.
+	public static File createTempFile(String prefix) {
+		try {
+			File file = File.createTempFile(prefix, ".marmot");
+			file.deleteOnExit();
+			return file;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,434 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Versioned binary model format. The object graph is stored as gzipped
+// Java serialization, but large primitive arrays are moved into separate
+// aligned blocks that are memory-mapped on load. Classes take part by
+// calling addBlock in writeObject and get*Block in readObject, which is only
+// possible while save or load of a binary model runs on the current thread.
+//
+// Layout (little endian):
+// magic, version, number of blocks, graph offset, graph length,
+// a table of (type, number of elements, offset) per block,
+// the blocks, each aligned to 8 bytes, and the serialized graph.
+public class BinaryModel {
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC_ = { 'M', 'A', 'R', 'M', 'O', 'T',
+			'B', 'M' };
+	private static final int HEADER_SIZE_ = MAGIC_.length + 4 + 4 + 8 + 8;
+	private static final int BLOCK_ENTRY_SIZE_ = 4 + 4 + 8;
+	private static final int ALIGNMENT_ = 8;
+	private static final int CHUNK_SIZE_ = 1 << 20;
+
+	private static final int DOUBLE_BLOCK_ = 0;
+	private static final int LONG_BLOCK_ = 1;
+	private static final int INT_BLOCK_ = 2;
+	private static final int FLOAT_BLOCK_ = 3;
+	private static final int SHORT_BLOCK_ = 4;
+	private static final int BYTE_BLOCK_ = 5;
+
+	private static final ThreadLocal<List<Buffer>> blocks_ = new ThreadLocal<List<Buffer>>();
+
+	public static boolean isBinaryModel(File file) {
+		byte[] magic = new byte[MAGIC_.length];
+		try {
+			InputStream stream = new FileInputStream(file);
+			try {
+				int length = 0;
+				while (length < magic.length) {
+					int read = stream.read(magic, length, magic.length - length);
+					if (read < 0) {
+						return false;
+					}
+					length += read;
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		return Arrays.equals(magic, MAGIC_);
+	}
+
+	// Returns the positive id of the new block or 0 if no binary model is
+	// being saved, in which case the caller has to serialize the array itself.
+	// Ids are 0 by default, so objects serialized before a field holding an id
+	// was added don't refer to any block.
+	public static int addBlock(double[] array) {
+		return addBlock(DoubleBuffer.wrap(array));
+	}
+
+	public static int addBlock(long[] array) {
+		return addBlock(LongBuffer.wrap(array));
+	}
+
+	public static int addBlock(int[] array) {
+		return addBlock(IntBuffer.wrap(array));
+	}
+
+	public static int addBlock(Buffer buffer) {
+		List<Buffer> blocks = blocks_.get();
+		if (blocks == null) {
+			return 0;
+		}
+		blocks.add(buffer);
+		return blocks.size();
+	}
+
+	public static DoubleBuffer getDoubleBlock(int id) {
+		return (DoubleBuffer) getBlock(id);
+	}
+
+	public static LongBuffer getLongBlock(int id) {
+		return (LongBuffer) getBlock(id);
+	}
+
+	public static IntBuffer getIntBlock(int id) {
+		return (IntBuffer) getBlock(id);
+	}
+
+	public static FloatBuffer getFloatBlock(int id) {
+		return (FloatBuffer) getBlock(id);
+	}
+
+	public static ShortBuffer getShortBlock(int id) {
+		return (ShortBuffer) getBlock(id);
+	}
+
+	public static ByteBuffer getByteBlock(int id) {
+		return (ByteBuffer) getBlock(id);
+	}
+
+	private static Buffer getBlock(int id) {
+		List<Buffer> blocks = blocks_.get();
+		if (blocks == null) {
+			throw new IllegalStateException(
+					"Block requested outside of BinaryModel.load");
+		}
+		return blocks.get(id - 1);
+	}
+
+	public static void save(Serializable object, File file) {
+		try {
+			List<Buffer> blocks = new ArrayList<Buffer>();
+			ByteArrayOutputStream graph = new ByteArrayOutputStream();
+
+			blocks_.set(blocks);
+			try {
+				ObjectOutputStream stream = new ObjectOutputStream(
+						new GZIPOutputStream(graph));
+				stream.writeObject(object);
+				stream.close();
+			} finally {
+				blocks_.remove();
+			}
+
+			long offset = HEADER_SIZE_ + blocks.size() * BLOCK_ENTRY_SIZE_;
+			ByteBuffer table = ByteBuffer.allocate(
+					blocks.size() * BLOCK_ENTRY_SIZE_).order(
+					ByteOrder.LITTLE_ENDIAN);
+			for (Buffer block : blocks) {
+				offset = align(offset);
+				table.putInt(getType(block));
+				table.putInt(block.capacity());
+				table.putLong(offset);
+				offset += (long) block.capacity() * getElementSize(block);
+			}
+			long graph_offset = align(offset);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_).order(
+					ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC_);
+			header.putInt(VERSION);
+			header.putInt(blocks.size());
+			header.putLong(graph_offset);
+			header.putLong(graph.size());
+
+			// Loaded models map their blocks from the file, so the file is
+			// never rewritten in place: The model is written to a temporary
+			// file that then replaces it.
+			File absolute_file = file.getAbsoluteFile();
+			File temp_file = File.createTempFile(absolute_file.getName(),
+					".tmp", absolute_file.getParentFile());
+			boolean renamed = false;
+			RandomAccessFile raf = new RandomAccessFile(temp_file, "rw");
+			try {
+				FileChannel channel = raf.getChannel();
+				header.flip();
+				writeFully(channel, header);
+				table.flip();
+				writeFully(channel, table);
+
+				for (Buffer block : blocks) {
+					channel.position(align(channel.position()));
+					writeBlock(channel, block);
+				}
+
+				channel.position(graph_offset);
+				writeFully(channel, ByteBuffer.wrap(graph.toByteArray()));
+				raf.close();
+				renamed = rename(temp_file, absolute_file);
+			} finally {
+				raf.close();
+				if (!renamed) {
+					temp_file.delete();
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// On POSIX systems the rename replaces the target atomically and mappings
+	// of the old file stay valid. Other systems can't rename over an existing
+	// file, so there the target is deleted first.
+	private static boolean rename(File source, File target) throws IOException {
+		if (source.renameTo(target)) {
+			return true;
+		}
+		if (target.delete() && source.renameTo(target)) {
+			return true;
+		}
+		throw new IOException(String.format("Can't rename %s to %s",
+				source, target));
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E extends Serializable> E load(File file) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_).order(
+						ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, header, 0);
+
+				byte[] magic = new byte[MAGIC_.length];
+				header.get(magic);
+				if (!Arrays.equals(magic, MAGIC_)) {
+					throw new RuntimeException("Not a binary model: "
+							+ file.getAbsolutePath());
+				}
+
+				int version = header.getInt();
+				if (version != VERSION) {
+					throw new RuntimeException(String.format(
+							"Unsupported binary model version %d: %s",
+							version, file.getAbsolutePath()));
+				}
+
+				int num_blocks = header.getInt();
+				long graph_offset = header.getLong();
+				long graph_length = header.getLong();
+
+				ByteBuffer table = ByteBuffer.allocate(
+						num_blocks * BLOCK_ENTRY_SIZE_).order(
+						ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, table, HEADER_SIZE_);
+
+				List<Buffer> blocks = new ArrayList<Buffer>(num_blocks);
+				for (int index = 0; index < num_blocks; index++) {
+					int type = table.getInt();
+					int length = table.getInt();
+					long offset = table.getLong();
+					blocks.add(mapBlock(channel, type, length, offset));
+				}
+
+				ByteBuffer graph = ByteBuffer.allocate((int) graph_length);
+				readFully(channel, graph, graph_offset);
+
+				blocks_.set(blocks);
+				try {
+					ObjectInputStream stream = new ObjectInputStream(
+							new GZIPInputStream(new ByteArrayInputStream(
+									graph.array())));
+					Object object = stream.readObject();
+					stream.close();
+					return (E) object;
+				} finally {
+					blocks_.remove();
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Buffer mapBlock(FileChannel channel, int type, int length,
+			long offset) throws IOException {
+		long size = (long) length * getElementSize(type);
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+				size).order(ByteOrder.LITTLE_ENDIAN);
+
+		switch (type) {
+		case DOUBLE_BLOCK_:
+			return buffer.asDoubleBuffer();
+		case LONG_BLOCK_:
+			return buffer.asLongBuffer();
+		case INT_BLOCK_:
+			return buffer.asIntBuffer();
+		case FLOAT_BLOCK_:
+			return buffer.asFloatBuffer();
+		case SHORT_BLOCK_:
+			return buffer.asShortBuffer();
+		case BYTE_BLOCK_:
+			return buffer;
+		default:
+			throw new RuntimeException("Unknown block type: " + type);
+		}
+	}
+
+	private static void writeBlock(FileChannel channel, Buffer block)
+			throws IOException {
+		int element_size = getElementSize(block);
+		int chunk_length = CHUNK_SIZE_ / element_size;
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE_).order(
+				ByteOrder.LITTLE_ENDIAN);
+
+		for (int start = 0; start < block.capacity(); start += chunk_length) {
+			int end = Math.min(start + chunk_length, block.capacity());
+			chunk.clear();
+
+			if (block instanceof DoubleBuffer) {
+				DoubleBuffer source = (DoubleBuffer) block;
+				DoubleBuffer target = chunk.asDoubleBuffer();
+				for (int index = start; index < end; index++) {
+					target.put(source.get(index));
+				}
+			} else if (block instanceof LongBuffer) {
+				LongBuffer source = (LongBuffer) block;
+				LongBuffer target = chunk.asLongBuffer();
+				for (int index = start; index < end; index++) {
+					target.put(source.get(index));
+				}
+			} else if (block instanceof IntBuffer) {
+				IntBuffer source = (IntBuffer) block;
+				IntBuffer target = chunk.asIntBuffer();
+				for (int index = start; index < end; index++) {
+					target.put(source.get(index));
+				}
+			} else if (block instanceof FloatBuffer) {
+				FloatBuffer source = (FloatBuffer) block;
+				FloatBuffer target = chunk.asFloatBuffer();
+				for (int index = start; index < end; index++) {
+					target.put(source.get(index));
+				}
+			} else if (block instanceof ShortBuffer) {
+				ShortBuffer source = (ShortBuffer) block;
+				ShortBuffer target = chunk.asShortBuffer();
+				for (int index = start; index < end; index++) {
+					target.put(source.get(index));
+				}
+			} else {
+				ByteBuffer source = (ByteBuffer) block;
+				for (int index = start; index < end; index++) {
+					chunk.put(index - start, source.get(index));
+				}
+			}
+
+			chunk.limit((end - start) * element_size);
+			writeFully(channel, chunk);
+		}
+	}
+
+	private static int getType(Buffer block) {
+		if (block instanceof DoubleBuffer) {
+			return DOUBLE_BLOCK_;
+		}
+		if (block instanceof LongBuffer) {
+			return LONG_BLOCK_;
+		}
+		if (block instanceof IntBuffer) {
+			return INT_BLOCK_;
+		}
+		if (block instanceof FloatBuffer) {
+			return FLOAT_BLOCK_;
+		}
+		if (block instanceof ShortBuffer) {
+			return SHORT_BLOCK_;
+		}
+		if (block instanceof ByteBuffer) {
+			return BYTE_BLOCK_;
+		}
+		throw new IllegalArgumentException("Unsupported block: " + block);
+	}
+
+	private static int getElementSize(Buffer block) {
+		return getElementSize(getType(block));
+	}
+
+	private static int getElementSize(int type) {
+		switch (type) {
+		case DOUBLE_BLOCK_:
+		case LONG_BLOCK_:
+			return 8;
+		case INT_BLOCK_:
+		case FLOAT_BLOCK_:
+			return 4;
+		case SHORT_BLOCK_:
+			return 2;
+		case BYTE_BLOCK_:
+			return 1;
+		default:
+			throw new RuntimeException("Unknown block type: " + type);
+		}
+	}
+
+	private static long align(long offset) {
+		return (offset + ALIGNMENT_ - 1) / ALIGNMENT_ * ALIGNMENT_;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			position += read;
+		}
+		buffer.flip();
+	}
+
+}
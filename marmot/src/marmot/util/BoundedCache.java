@@ -0,0 +1,130 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A thread safe map with a maximum number of entries. The entries are split
+// into segments with their own locks. A full segment evicts its least
+// recently used entry.
+public class BoundedCache<K, V> {
+	private static final int MAX_SEGMENTS_ = 16;
+
+	private static class Segment<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+		private int capacity_;
+		private AtomicLong evictions_;
+
+		public Segment(int capacity, AtomicLong evictions) {
+			super(16, 0.75f, true);
+			capacity_ = capacity;
+			evictions_ = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity_) {
+				evictions_.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private Segment<K, V>[] segments_;
+	private AtomicLong hits_;
+	private AtomicLong misses_;
+	private AtomicLong evictions_;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BoundedCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: "
+					+ capacity);
+		}
+
+		hits_ = new AtomicLong();
+		misses_ = new AtomicLong();
+		evictions_ = new AtomicLong();
+
+		int num_segments = Math.min(MAX_SEGMENTS_, capacity);
+		segments_ = new Segment[num_segments];
+		for (int index = 0; index < num_segments; index++) {
+			int segment_capacity = capacity / num_segments;
+			if (index < capacity % num_segments) {
+				segment_capacity++;
+			}
+			segments_[index] = new Segment<K, V>(segment_capacity,
+					evictions_);
+		}
+	}
+
+	private Segment<K, V> getSegment(Object key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return segments_[(hash & 0x7fffffff) % segments_.length];
+	}
+
+	public V get(K key) {
+		Segment<K, V> segment = getSegment(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value == null) {
+			misses_.incrementAndGet();
+		} else {
+			hits_.incrementAndGet();
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		Segment<K, V> segment = getSegment(key);
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+	}
+
+	public void clear() {
+		for (Segment<K, V> segment : segments_) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments_) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits_.get();
+	}
+
+	public long getMisses() {
+		return misses_.get();
+	}
+
+	public long getEvictions() {
+		return evictions_.get();
+	}
+
+	public String getStatistics() {
+		long lookups = getHits() + getMisses();
+		double hit_rate = (lookups > 0) ? 100. * getHits() / lookups : 0.0;
+		return String.format(
+				"size: %d hits: %d misses: %d (%.1f%% hit rate) evictions: %d",
+				size(), getHits(), getMisses(), hit_rate, getEvictions());
+	}
+
+}
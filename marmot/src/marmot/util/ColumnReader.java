@@ -0,0 +1,283 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Reads whitespace separated columns from UTF-8 input. Lines are scanned in a
+// byte buffer and only the requested columns are decoded. Columns behave like
+// the ones returned by LineIterator: Lines end at \n, \r or \r\n and columns
+// are separated by runs of ASCII whitespace.
+//
+// Columns with few distinct values (word forms, tags) can be read with
+// getInternedColumn, which returns the same String object for equal bytes
+// without decoding them again. The interner starts over once it holds
+// max_interned values, so its memory stays bounded on long inputs.
+public class ColumnReader {
+	private static final Charset UTF8_ = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE_ = 1 << 20;
+	private static final int MAX_INTERNED_ = 1 << 16;
+
+	private InputStream stream_;
+	private byte[] buffer_;
+	private int position_;
+	private int limit_;
+	private boolean eof_;
+
+	private int[] starts_;
+	private int[] ends_;
+	private int num_columns_;
+
+	private Interner interner_;
+
+	public ColumnReader(InputStream stream) {
+		this(stream, BUFFER_SIZE_);
+	}
+
+	public ColumnReader(InputStream stream, int buffer_size) {
+		this(stream, buffer_size, MAX_INTERNED_);
+	}
+
+	public ColumnReader(InputStream stream, int buffer_size, int max_interned) {
+		stream_ = stream;
+		buffer_ = new byte[Math.max(buffer_size, 1)];
+		starts_ = new int[16];
+		ends_ = new int[16];
+		interner_ = new Interner(max_interned);
+	}
+
+	public boolean hasNext() {
+		return position_ < limit_ || fill() > 0;
+	}
+
+	// Moves to the next line. Returns false at the end of the input.
+	public boolean nextLine() {
+		if (!hasNext()) {
+			return false;
+		}
+
+		int end = position_;
+		while (true) {
+			while (end < limit_ && buffer_[end] != '\n' && buffer_[end] != '\r') {
+				end++;
+			}
+
+			if (end < limit_ || eof_) {
+				break;
+			}
+
+			int offset = end - position_;
+			fill();
+			end = position_ + offset;
+		}
+
+		// A \r\n split between two reads still counts as one line break.
+		if (end + 1 == limit_ && buffer_[end] == '\r' && !eof_) {
+			int offset = end - position_;
+			fill();
+			end = position_ + offset;
+		}
+
+		split(position_, end);
+
+		if (end < limit_) {
+			if (buffer_[end] == '\r' && end + 1 < limit_
+					&& buffer_[end + 1] == '\n') {
+				end++;
+			}
+			end++;
+		}
+		position_ = end;
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f'
+				|| b == 0x0B;
+	}
+
+	private void split(int start, int end) {
+		num_columns_ = 0;
+		int index = start;
+		while (true) {
+			while (index < end && isWhitespace(buffer_[index])) {
+				index++;
+			}
+			if (index == end) {
+				break;
+			}
+
+			if (num_columns_ == starts_.length) {
+				starts_ = Arrays.copyOf(starts_, 2 * starts_.length);
+				ends_ = Arrays.copyOf(ends_, 2 * ends_.length);
+			}
+
+			starts_[num_columns_] = index;
+			while (index < end && !isWhitespace(buffer_[index])) {
+				index++;
+			}
+			ends_[num_columns_] = index;
+			num_columns_++;
+		}
+	}
+
+	// Moves the unread bytes to the front of the buffer and reads more input.
+	// Grows the buffer if it is full. Returns the number of bytes read.
+	private int fill() {
+		if (eof_) {
+			return 0;
+		}
+
+		int remaining = limit_ - position_;
+		if (remaining == buffer_.length) {
+			buffer_ = Arrays.copyOf(buffer_, 2 * buffer_.length);
+		} else if (position_ > 0) {
+			System.arraycopy(buffer_, position_, buffer_, 0, remaining);
+		}
+		position_ = 0;
+		limit_ = remaining;
+
+		try {
+			int read = stream_.read(buffer_, limit_, buffer_.length - limit_);
+			while (read == 0) {
+				read = stream_.read(buffer_, limit_, buffer_.length - limit_);
+			}
+			if (read < 0) {
+				eof_ = true;
+				stream_.close();
+				return 0;
+			}
+			limit_ += read;
+			return read;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public int getNumColumns() {
+		return num_columns_;
+	}
+
+	public String getColumn(int index) {
+		checkIndex(index);
+		return new String(buffer_, starts_[index], ends_[index]
+				- starts_[index], UTF8_);
+	}
+
+	public String getInternedColumn(int index) {
+		checkIndex(index);
+		return interner_.get(buffer_, starts_[index], ends_[index]);
+	}
+
+	public List<String> getColumns() {
+		List<String> columns = new ArrayList<String>(num_columns_);
+		for (int index = 0; index < num_columns_; index++) {
+			columns.add(getColumn(index));
+		}
+		return columns;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= num_columns_) {
+			throw new IndexOutOfBoundsException(String.format(
+					"Column %d of %d", index, num_columns_));
+		}
+	}
+
+	// Open addressing table from UTF-8 bytes to their decoded String. Is
+	// cleared when it holds max_size values. Frequent values are interned
+	// again right away.
+	private static class Interner {
+		private static final int INITIAL_LENGTH_ = 1024;
+
+		private byte[][] keys_;
+		private String[] values_;
+		private int size_;
+		private int mask_;
+		private int max_size_;
+
+		public Interner(int max_size) {
+			max_size_ = Math.max(max_size, 1);
+			allocate(INITIAL_LENGTH_);
+		}
+
+		private void allocate(int length) {
+			keys_ = new byte[length][];
+			values_ = new String[length];
+			mask_ = length - 1;
+			size_ = 0;
+		}
+
+		private static int hash(byte[] bytes, int start, int end) {
+			int hash = 1;
+			for (int index = start; index < end; index++) {
+				hash = 31 * hash + bytes[index];
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean equals(byte[] key, byte[] bytes, int start,
+				int end) {
+			if (key.length != end - start) {
+				return false;
+			}
+			for (int index = 0; index < key.length; index++) {
+				if (key[index] != bytes[start + index]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public String get(byte[] bytes, int start, int end) {
+			int slot = hash(bytes, start, end) & mask_;
+			while (keys_[slot] != null) {
+				if (equals(keys_[slot], bytes, start, end)) {
+					return values_[slot];
+				}
+				slot = (slot + 1) & mask_;
+			}
+
+			String value = new String(bytes, start, end - start, UTF8_);
+			if (size_ >= max_size_) {
+				allocate(INITIAL_LENGTH_);
+				slot = hash(bytes, start, end) & mask_;
+			}
+
+			keys_[slot] = Arrays.copyOfRange(bytes, start, end);
+			values_[slot] = value;
+			size_++;
+
+			if (2 * size_ > keys_.length) {
+				rehash();
+			}
+			return value;
+		}
+
+		private void rehash() {
+			byte[][] keys = keys_;
+			String[] values = values_;
+			int size = size_;
+			allocate(2 * keys.length);
+			for (int old_slot = 0; old_slot < keys.length; old_slot++) {
+				byte[] key = keys[old_slot];
+				if (key != null) {
+					int slot = hash(key, 0, key.length) & mask_;
+					while (keys_[slot] != null) {
+						slot = (slot + 1) & mask_;
+					}
+					keys_[slot] = key;
+					values_[slot] = values[old_slot];
+				}
+			}
+			size_ = size;
+		}
+	}
+
+}
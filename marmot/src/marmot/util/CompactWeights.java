@@ -0,0 +1,393 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+// Read-only weights for tagging. The weights are split into blocks of
+// BLOCK_SIZE_ values. Blocks that are all zero (e.g. because of the L1
+// penalty) are dropped, the others are stored as floats or as 16 or 8 bit
+// integers with one scale per block.
+//
+// SPARSE keeps the exact values. The weights are split into rows of
+// row_length values (the weights of one feature for all tags). A row stores
+// a bit mask of its non-zero columns followed by their values, unless that
+// isn't smaller than the row itself. A value is found by counting the bits
+// before its column, so a lookup never has to search. Mask and values are
+// kept together to save cache misses.
+public class CompactWeights implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int BLOCK_BITS_ = 5;
+	private static final int BLOCK_SIZE_ = 1 << BLOCK_BITS_;
+
+	public enum Mode {
+		FLOAT, INT16, INT8, SPARSE
+	}
+
+	private Mode mode_;
+	private int length_;
+	private int row_length_;
+	private int words_per_row_;
+	// Mask words and values (as raw long bits) of all rows.
+	private transient LongBuffer row_data_;
+	private transient IntBuffer offsets_;
+	private transient FloatBuffer scales_;
+	private transient FloatBuffer float_values_;
+	private transient ShortBuffer short_values_;
+	private transient ByteBuffer byte_values_;
+
+	public CompactWeights(double[] weights, Mode mode) {
+		this(weights, mode, BLOCK_SIZE_);
+	}
+
+	public CompactWeights(double[] weights, Mode mode, int row_length) {
+		mode_ = mode;
+		length_ = weights.length;
+
+		if (mode_ == Mode.SPARSE) {
+			initRows(weights, row_length);
+			return;
+		}
+
+		int num_blocks = (length_ + BLOCK_SIZE_ - 1) >>> BLOCK_BITS_;
+		int[] offsets = new int[num_blocks];
+		float[] scales = new float[num_blocks];
+
+		int num_values = 0;
+		for (int block = 0; block < num_blocks; block++) {
+			double max = getMaxAbs(weights, block);
+			if (max == 0.0) {
+				offsets[block] = -1;
+			} else {
+				offsets[block] = num_values;
+				num_values += BLOCK_SIZE_;
+			}
+
+			switch (mode_) {
+			case INT16:
+				scales[block] = (float) (max / Short.MAX_VALUE);
+				break;
+			case INT8:
+				scales[block] = (float) (max / Byte.MAX_VALUE);
+				break;
+			default:
+				break;
+			}
+		}
+
+		offsets_ = IntBuffer.wrap(offsets);
+		if (mode_ != Mode.FLOAT) {
+			scales_ = FloatBuffer.wrap(scales);
+		}
+
+		switch (mode_) {
+		case FLOAT:
+			float_values_ = FloatBuffer.allocate(num_values);
+			break;
+		case INT16:
+			short_values_ = ShortBuffer.allocate(num_values);
+			break;
+		case INT8:
+			byte_values_ = ByteBuffer.allocate(num_values);
+			break;
+		}
+
+		for (int index = 0; index < length_; index++) {
+			int block = index >>> BLOCK_BITS_;
+			int offset = offsets[block];
+			if (offset < 0) {
+				continue;
+			}
+			offset += index & (BLOCK_SIZE_ - 1);
+
+			double weight = weights[index];
+			switch (mode_) {
+			case FLOAT:
+				float_values_.put(offset, (float) weight);
+				break;
+			case INT16:
+				short_values_.put(offset,
+						(short) Math.round(weight / scales[block]));
+				break;
+			case INT8:
+				byte_values_.put(offset,
+						(byte) Math.round(weight / scales[block]));
+				break;
+			}
+		}
+	}
+
+	private void initRows(double[] weights, int row_length) {
+		if (row_length < 1) {
+			throw new IllegalArgumentException("Invalid row length: "
+					+ row_length);
+		}
+		row_length_ = row_length;
+		words_per_row_ = (row_length + Long.SIZE - 1) / Long.SIZE;
+
+		int num_rows = (length_ + row_length_ - 1) / row_length_;
+		int[] offsets = new int[num_rows + 1];
+		for (int row = 0; row < num_rows; row++) {
+			int start = row * row_length_;
+			int end = Math.min(start + row_length_, length_);
+			int num_values = 0;
+			for (int index = start; index < end; index++) {
+				if (weights[index] != 0.0) {
+					num_values++;
+				}
+			}
+
+			int row_size = 0;
+			if (num_values + words_per_row_ >= end - start) {
+				row_size = end - start;
+			} else if (num_values > 0) {
+				row_size = words_per_row_ + num_values;
+			}
+			offsets[row + 1] = offsets[row] + row_size;
+		}
+
+		long[] row_data = new long[offsets[num_rows]];
+		for (int row = 0; row < num_rows; row++) {
+			int start = row * row_length_;
+			int end = Math.min(start + row_length_, length_);
+			int offset = offsets[row];
+			if (offsets[row + 1] - offset == end - start) {
+				for (int index = start; index < end; index++) {
+					row_data[offset++] = Double
+							.doubleToRawLongBits(weights[index]);
+				}
+				continue;
+			}
+
+			int value_offset = offset + words_per_row_;
+			for (int index = start; index < end; index++) {
+				if (weights[index] != 0.0) {
+					int column = index - start;
+					row_data[offset + column / Long.SIZE] |= 1L << column;
+					row_data[value_offset++] = Double
+							.doubleToRawLongBits(weights[index]);
+				}
+			}
+		}
+
+		offsets_ = IntBuffer.wrap(offsets);
+		row_data_ = LongBuffer.wrap(row_data);
+	}
+
+	private static double getMaxAbs(double[] weights, int block) {
+		int start = block << BLOCK_BITS_;
+		int end = Math.min(start + BLOCK_SIZE_, weights.length);
+		double max = 0.0;
+		for (int index = start; index < end; index++) {
+			max = Math.max(max, Math.abs(weights[index]));
+		}
+		return max;
+	}
+
+	public double get(int index) {
+		if (mode_ == Mode.SPARSE) {
+			int row = index / row_length_;
+			return get(row, index - row * row_length_);
+		}
+
+		int block = index >>> BLOCK_BITS_;
+		int offset = offsets_.get(block);
+		if (offset < 0) {
+			return 0.0;
+		}
+		offset += index & (BLOCK_SIZE_ - 1);
+
+		switch (mode_) {
+		case FLOAT:
+			return float_values_.get(offset);
+		case INT16:
+			return scales_.get(block) * short_values_.get(offset);
+		default:
+			return scales_.get(block) * byte_values_.get(offset);
+		}
+	}
+
+	// The weight at index row * row_length + column. Only for SPARSE.
+	public double get(int row, int column) {
+		int offset = offsets_.get(row);
+		int row_size = offsets_.get(row + 1) - offset;
+		if (row_size == 0) {
+			return 0.0;
+		}
+
+		if (row_size == Math.min(row_length_, length_ - row * row_length_)) {
+			return Double.longBitsToDouble(row_data_.get(offset + column));
+		}
+
+		int word = column / Long.SIZE;
+		long mask = row_data_.get(offset + word);
+		long bit = 1L << column;
+		if ((mask & bit) == 0) {
+			return 0.0;
+		}
+
+		int rank = Long.bitCount(mask & (bit - 1));
+		for (int index = 0; index < word; index++) {
+			rank += Long.bitCount(row_data_.get(offset + index));
+		}
+		return Double.longBitsToDouble(row_data_.get(offset + words_per_row_
+				+ rank));
+	}
+
+	public int length() {
+		return length_;
+	}
+
+	public int getRowLength() {
+		return row_length_;
+	}
+
+	public Mode getMode() {
+		return mode_;
+	}
+
+	public double[] toArray() {
+		double[] weights = new double[length_];
+		for (int index = 0; index < length_; index++) {
+			weights[index] = get(index);
+		}
+		return weights;
+	}
+
+	// Stores the buffers as BinaryModel blocks if possible and as arrays
+	// otherwise.
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		oos.defaultWriteObject();
+		writeBuffer(oos, offsets_);
+		if (mode_ == Mode.SPARSE) {
+			writeBuffer(oos, row_data_);
+			return;
+		}
+		if (mode_ != Mode.FLOAT) {
+			writeBuffer(oos, scales_);
+		}
+		switch (mode_) {
+		case FLOAT:
+			writeBuffer(oos, float_values_);
+			break;
+		case INT16:
+			writeBuffer(oos, short_values_);
+			break;
+		case INT8:
+			writeBuffer(oos, byte_values_);
+			break;
+		}
+	}
+
+	private void readObject(ObjectInputStream ois) throws IOException,
+			ClassNotFoundException {
+		ois.defaultReadObject();
+		offsets_ = readIntBuffer(ois);
+		if (mode_ == Mode.SPARSE) {
+			row_data_ = readLongBuffer(ois);
+			return;
+		}
+		if (mode_ != Mode.FLOAT) {
+			scales_ = readFloatBuffer(ois);
+		}
+		switch (mode_) {
+		case FLOAT:
+			float_values_ = readFloatBuffer(ois);
+			break;
+		case INT16:
+			short_values_ = readShortBuffer(ois);
+			break;
+		case INT8:
+			byte_values_ = readByteBuffer(ois);
+			break;
+		}
+	}
+
+	private static void writeBuffer(ObjectOutputStream oos,
+			java.nio.Buffer buffer) throws IOException {
+		int id = BinaryModel.addBlock(buffer);
+		oos.writeInt(id);
+		if (id > 0) {
+			return;
+		}
+
+		if (buffer instanceof IntBuffer) {
+			int[] array = new int[buffer.capacity()];
+			((IntBuffer) buffer).duplicate().get(array);
+			oos.writeObject(array);
+		} else if (buffer instanceof FloatBuffer) {
+			float[] array = new float[buffer.capacity()];
+			((FloatBuffer) buffer).duplicate().get(array);
+			oos.writeObject(array);
+		} else if (buffer instanceof LongBuffer) {
+			long[] array = new long[buffer.capacity()];
+			((LongBuffer) buffer).duplicate().get(array);
+			oos.writeObject(array);
+		} else if (buffer instanceof ShortBuffer) {
+			short[] array = new short[buffer.capacity()];
+			((ShortBuffer) buffer).duplicate().get(array);
+			oos.writeObject(array);
+		} else {
+			byte[] array = new byte[buffer.capacity()];
+			ByteBuffer duplicate = ((ByteBuffer) buffer).duplicate();
+			duplicate.clear();
+			duplicate.get(array);
+			oos.writeObject(array);
+		}
+	}
+
+	private static IntBuffer readIntBuffer(ObjectInputStream ois)
+			throws IOException, ClassNotFoundException {
+		int id = ois.readInt();
+		if (id > 0) {
+			return BinaryModel.getIntBlock(id);
+		}
+		return IntBuffer.wrap((int[]) ois.readObject());
+	}
+
+	private static FloatBuffer readFloatBuffer(ObjectInputStream ois)
+			throws IOException, ClassNotFoundException {
+		int id = ois.readInt();
+		if (id > 0) {
+			return BinaryModel.getFloatBlock(id);
+		}
+		return FloatBuffer.wrap((float[]) ois.readObject());
+	}
+
+	private static LongBuffer readLongBuffer(ObjectInputStream ois)
+			throws IOException, ClassNotFoundException {
+		int id = ois.readInt();
+		if (id > 0) {
+			return BinaryModel.getLongBlock(id);
+		}
+		return LongBuffer.wrap((long[]) ois.readObject());
+	}
+
+	private static ShortBuffer readShortBuffer(ObjectInputStream ois)
+			throws IOException, ClassNotFoundException {
+		int id = ois.readInt();
+		if (id > 0) {
+			return BinaryModel.getShortBlock(id);
+		}
+		return ShortBuffer.wrap((short[]) ois.readObject());
+	}
+
+	private static ByteBuffer readByteBuffer(ObjectInputStream ois)
+			throws IOException, ClassNotFoundException {
+		int id = ois.readInt();
+		if (id > 0) {
+			return BinaryModel.getByteBlock(id);
+		}
+		return ByteBuffer.wrap((byte[]) ois.readObject());
+	}
+
+}
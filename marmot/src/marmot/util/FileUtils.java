@@ -68,6 +68,10 @@ public class FileUtils {
 	
 	@SuppressWarnings("unchecked")
 	public static <E extends Serializable> E loadFromFile(File file) {
+		if (BinaryModel.isBinaryModel(file)) {
+			return BinaryModel.load(file);
+		}
+
 		try {
 			ObjectInputStream stream = new ObjectInputStream(
 					new GZIPInputStream(new FileInputStream(file)));
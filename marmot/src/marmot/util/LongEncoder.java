@@ -0,0 +1,88 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+// Allocation-free replacement for Encoder that packs a feature into a long.
+// Bit 0 marks folded keys: when a key would exceed 63 bits its prefix is
+// replaced by an index into the prefix table. The sentinel bit set in getKey()
+// keeps keys of different length apart. Not thread-safe, use one per thread.
+public class LongEncoder {
+	private static final int MAX_BITS_ = Long.SIZE - 1;
+	private static final int FOLDED_BITS_ = Integer.SIZE;
+
+	private LongSymbolTable prefix_table_;
+	private boolean insert_;
+	private long key_;
+	private int num_bits_;
+	private boolean unknown_;
+	private LongList missing_prefixes_;
+
+	public LongEncoder(LongSymbolTable prefix_table) {
+		prefix_table_ = prefix_table;
+		reset();
+	}
+
+	public void setInsert(boolean insert) {
+		insert_ = insert;
+	}
+
+	// Prefixes that are neither found nor inserted are collected here, so that
+	// they can be inserted later.
+	public void setMissingPrefixes(LongList missing_prefixes) {
+		missing_prefixes_ = missing_prefixes;
+	}
+
+	public void append(boolean value) {
+		append(value ? 0 : 1, 1);
+	}
+
+	public void append(int value, int bits_needed) {
+		assert value >= 0;
+		assert Encoder.bitsNeeded(value) <= bits_needed;
+		assert bits_needed < Integer.SIZE;
+
+		if (num_bits_ + bits_needed > MAX_BITS_) {
+			fold();
+		}
+
+		key_ |= ((long) value) << num_bits_;
+		num_bits_ += bits_needed;
+	}
+
+	private void fold() {
+		int index = -1;
+		if (!unknown_) {
+			long key = getKey();
+			index = prefix_table_.toIndex(key, -1, insert_);
+			if (index < 0 && missing_prefixes_ != null) {
+				missing_prefixes_.add(key);
+			}
+		}
+
+		if (index < 0) {
+			// The prefix has never been seen, so neither has any feature
+			// that extends it.
+			unknown_ = true;
+			index = 0;
+		}
+
+		key_ = 1L | (((long) index) << 1);
+		num_bits_ = FOLDED_BITS_;
+	}
+
+	public long getKey() {
+		return key_ | (1L << num_bits_);
+	}
+
+	public boolean isUnknown() {
+		return unknown_;
+	}
+
+	public void reset() {
+		key_ = 0L;
+		num_bits_ = 1;
+		unknown_ = false;
+	}
+
+}
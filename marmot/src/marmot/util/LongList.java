@@ -0,0 +1,49 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.util.Arrays;
+
+public class LongList {
+	private static final int DEFAULT_CAPACITY_ = 16;
+
+	private long[] values_;
+	private int size_;
+
+	public LongList(int capacity) {
+		values_ = new long[Math.max(capacity, 1)];
+		size_ = 0;
+	}
+
+	public LongList() {
+		this(DEFAULT_CAPACITY_);
+	}
+
+	public void add(long value) {
+		if (size_ == values_.length) {
+			values_ = Arrays.copyOf(values_, 2 * values_.length);
+		}
+		values_[size_++] = value;
+	}
+
+	public long get(int index) {
+		if (index >= size_) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		return values_[index];
+	}
+
+	public int size() {
+		return size_;
+	}
+
+	public boolean isEmpty() {
+		return size_ == 0;
+	}
+
+	public void clear() {
+		size_ = 0;
+	}
+
+}
@@ -0,0 +1,319 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Open addressing long -> index table. Key 0 marks empty slots.
+// Lookups never block and several threads can insert at the same time: A new
+// key claims its slot with a compare-and-set and then takes the next index.
+// Only inserts wait while the table doubles its size, lookups continue on the
+// old slots. Indexes are assigned in insertion order, so with a single writer
+// they don't depend on the timing.
+// When loaded from a BinaryModel the slots stay memory-mapped and the table
+// is read-only.
+public class LongSymbolTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final long EMPTY_KEY_ = 0L;
+	private static final int DEFAULT_CAPACITY_ = 1024;
+
+	// Values are stored as index + 1. A value of 0 marks a slot whose key
+	// has been claimed but whose index hasn't been set yet.
+	private static class Slots {
+		private final AtomicLongArray keys_;
+		private final AtomicIntegerArray values_;
+		private final int mask_;
+		private final int max_size_;
+		private final AtomicInteger size_;
+
+		public Slots(int length) {
+			keys_ = new AtomicLongArray(length);
+			values_ = new AtomicIntegerArray(length);
+			mask_ = length - 1;
+			max_size_ = length / 2;
+			size_ = new AtomicInteger();
+		}
+
+		public int getValue(int slot) {
+			int value = values_.get(slot);
+			while (value == 0) {
+				Thread.yield();
+				value = values_.get(slot);
+			}
+			return value - 1;
+		}
+	}
+
+	// The slots in the serialized form. Only set during serialization.
+	private long[] keys_;
+	private int[] values_;
+	private int size_;
+	private int mask_;
+
+	private int keys_block_;
+	private int values_block_;
+	private transient LongBuffer mapped_keys_;
+	private transient IntBuffer mapped_values_;
+
+	private transient volatile Slots slots_;
+	private transient AtomicInteger next_index_;
+	private transient ReadWriteLock resize_lock_;
+
+	public LongSymbolTable(int capacity) {
+		int length = 2;
+		while (length < 2 * capacity) {
+			length <<= 1;
+		}
+		slots_ = new Slots(length);
+		next_index_ = new AtomicInteger();
+		resize_lock_ = new ReentrantReadWriteLock();
+	}
+
+	public LongSymbolTable() {
+		this(DEFAULT_CAPACITY_);
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	public int toIndex(long key, int default_index, boolean insert) {
+		assert key != EMPTY_KEY_;
+
+		Slots slots = slots_;
+		if (slots == null) {
+			return toMappedIndex(key, default_index, insert);
+		}
+
+		int slot = hash(key) & slots.mask_;
+		while (true) {
+			long current_key = slots.keys_.get(slot);
+
+			if (current_key == key) {
+				return slots.getValue(slot);
+			}
+
+			if (current_key == EMPTY_KEY_) {
+				break;
+			}
+
+			slot = (slot + 1) & slots.mask_;
+		}
+
+		if (!insert) {
+			return default_index;
+		}
+
+		return insert(key);
+	}
+
+	private int insert(long key) {
+		while (true) {
+			Slots slots;
+			resize_lock_.readLock().lock();
+			try {
+				slots = slots_;
+				if (slots.size_.incrementAndGet() <= slots.max_size_) {
+					return insert(slots, key);
+				}
+				slots.size_.decrementAndGet();
+			} finally {
+				resize_lock_.readLock().unlock();
+			}
+			resize(slots);
+		}
+	}
+
+	// The caller has reserved a slot in slots.size_.
+	private int insert(Slots slots, long key) {
+		int slot = hash(key) & slots.mask_;
+		while (true) {
+			long current_key = slots.keys_.get(slot);
+
+			if (current_key == EMPTY_KEY_) {
+				if (slots.keys_.compareAndSet(slot, EMPTY_KEY_, key)) {
+					int index = next_index_.getAndIncrement();
+					slots.values_.set(slot, index + 1);
+					return index;
+				}
+				// Somebody else claimed the slot, look at it again.
+				continue;
+			}
+
+			if (current_key == key) {
+				slots.size_.decrementAndGet();
+				return slots.getValue(slot);
+			}
+
+			slot = (slot + 1) & slots.mask_;
+		}
+	}
+
+	private void resize(Slots slots) {
+		resize_lock_.writeLock().lock();
+		try {
+			if (slots_ == slots) {
+				slots_ = copy(slots, 2 * (slots.mask_ + 1));
+			}
+		} finally {
+			resize_lock_.writeLock().unlock();
+		}
+	}
+
+	private static Slots copy(Slots slots, int length) {
+		Slots new_slots = new Slots(length);
+		int size = 0;
+		for (int old_slot = 0; old_slot <= slots.mask_; old_slot++) {
+			long key = slots.keys_.get(old_slot);
+			if (key != EMPTY_KEY_) {
+				int slot = hash(key) & new_slots.mask_;
+				while (new_slots.keys_.get(slot) != EMPTY_KEY_) {
+					slot = (slot + 1) & new_slots.mask_;
+				}
+				new_slots.keys_.set(slot, key);
+				new_slots.values_.set(slot, slots.values_.get(old_slot));
+				size++;
+			}
+		}
+		new_slots.size_.set(size);
+		return new_slots;
+	}
+
+	private int toMappedIndex(long key, int default_index, boolean insert) {
+		int slot = hash(key) & mask_;
+		while (true) {
+			long current_key = mapped_keys_.get(slot);
+
+			if (current_key == key) {
+				return mapped_values_.get(slot);
+			}
+
+			if (current_key == EMPTY_KEY_) {
+				break;
+			}
+
+			slot = (slot + 1) & mask_;
+		}
+
+		if (insert) {
+			throw new UnsupportedOperationException(
+					"Cannot insert into a memory-mapped table");
+		}
+
+		return default_index;
+	}
+
+	public int toIndex(long key, boolean insert) {
+		int index = toIndex(key, -1, insert);
+		if (index == -1) {
+			throw new NoSuchElementException(Long.toString(key));
+		}
+		return index;
+	}
+
+	public int toIndex(long key) {
+		return toIndex(key, false);
+	}
+
+	public boolean hasSymbol(long key) {
+		return toIndex(key, -1, false) >= 0;
+	}
+
+	public int size() {
+		if (slots_ == null) {
+			return size_;
+		}
+		return next_index_.get();
+	}
+
+	// Must not run concurrently with inserts.
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		Slots slots = slots_;
+		long[] keys = null;
+		int[] values = null;
+
+		if (slots != null) {
+			int length = slots.mask_ + 1;
+			keys = new long[length];
+			values = new int[length];
+			for (int slot = 0; slot < length; slot++) {
+				keys[slot] = slots.keys_.get(slot);
+				if (keys[slot] != EMPTY_KEY_) {
+					values[slot] = slots.values_.get(slot) - 1;
+				}
+			}
+			size_ = next_index_.get();
+			mask_ = slots.mask_;
+		}
+
+		keys_block_ = BinaryModel.addBlock(keys != null ? LongBuffer
+				.wrap(keys) : mapped_keys_);
+		if (keys_block_ > 0) {
+			values_block_ = BinaryModel.addBlock(values != null ? IntBuffer
+					.wrap(values) : mapped_values_);
+		} else if (keys == null) {
+			keys_ = new long[mapped_keys_.capacity()];
+			mapped_keys_.duplicate().get(keys_);
+			values_ = new int[mapped_values_.capacity()];
+			mapped_values_.duplicate().get(values_);
+		} else {
+			keys_ = keys;
+			values_ = values;
+		}
+
+		try {
+			oos.defaultWriteObject();
+		} finally {
+			keys_ = null;
+			values_ = null;
+			keys_block_ = 0;
+			values_block_ = 0;
+		}
+	}
+
+	private void readObject(ObjectInputStream ois) throws IOException,
+			ClassNotFoundException {
+		ois.defaultReadObject();
+		resize_lock_ = new ReentrantReadWriteLock();
+		next_index_ = new AtomicInteger(size_);
+
+		if (keys_block_ > 0) {
+			mapped_keys_ = BinaryModel.getLongBlock(keys_block_);
+			mapped_values_ = BinaryModel.getIntBlock(values_block_);
+			keys_block_ = 0;
+			values_block_ = 0;
+			return;
+		}
+
+		Slots slots = new Slots(keys_.length);
+		for (int slot = 0; slot < keys_.length; slot++) {
+			if (keys_[slot] != EMPTY_KEY_) {
+				slots.keys_.set(slot, keys_[slot]);
+				slots.values_.set(slot, values_[slot] + 1);
+			}
+		}
+		slots.size_.set(size_);
+		slots_ = slots;
+		keys_ = null;
+		values_ = null;
+	}
+
+}
@@ -0,0 +1,321 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs the items of a source through a chain of stages. The source and every
+// stage run on their own threads and hand their results to the next stage
+// over bounded queues. The sink runs on the calling thread and sees the items
+// in source order.
+//
+// At most capacity items are between the source and the sink at any time. If
+// the sink or a stage falls behind, the source blocks until the sink has
+// caught up.
+public class Pipeline<I, O> {
+
+	public interface Stage<I, O> {
+		O apply(I input);
+	}
+
+	public interface Sink<I, O> {
+		void accept(I input, O output) throws IOException;
+	}
+
+	public static class StageCounter {
+		private String name_;
+		private int num_threads_;
+		private AtomicLong items_;
+		private AtomicLong busy_nanos_;
+		private AtomicLong wait_nanos_;
+
+		public StageCounter(String name, int num_threads) {
+			name_ = name;
+			num_threads_ = num_threads;
+			items_ = new AtomicLong();
+			busy_nanos_ = new AtomicLong();
+			wait_nanos_ = new AtomicLong();
+		}
+
+		public String getName() {
+			return name_;
+		}
+
+		public int getNumThreads() {
+			return num_threads_;
+		}
+
+		public long getItems() {
+			return items_.get();
+		}
+
+		// Summed over all threads of the stage.
+		public long getBusyNanos() {
+			return busy_nanos_.get();
+		}
+
+		// Time spent waiting for input (or, for the source, for the sink to
+		// catch up). Summed over all threads of the stage.
+		public long getWaitNanos() {
+			return wait_nanos_.get();
+		}
+
+		// Items per second the stage could process if it never had to wait.
+		public double getMaxThroughput() {
+			if (busy_nanos_.get() == 0) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return items_.get() * num_threads_ / (busy_nanos_.get() / 1e9);
+		}
+	}
+
+	private static class Item {
+		private long number_;
+		private Object input_;
+		private Object value_;
+
+		public Item(long number, Object input) {
+			number_ = number;
+			input_ = input;
+			value_ = input;
+		}
+	}
+
+	private static final Item END_ = new Item(-1, null);
+	private static final Item FAILED_ = new Item(-1, null);
+
+	private Iterator<I> source_;
+	private int capacity_;
+	private List<Stage<Object, Object>> stages_;
+	private List<StageCounter> counters_;
+	private List<Thread> threads_;
+	private volatile Throwable error_;
+	private long wall_nanos_;
+
+	public Pipeline(Iterator<I> source, String name, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: "
+					+ capacity);
+		}
+		source_ = source;
+		capacity_ = capacity;
+		stages_ = new ArrayList<Stage<Object, Object>>();
+		counters_ = new ArrayList<StageCounter>();
+		counters_.add(new StageCounter(name, 1));
+	}
+
+	// The input type of a stage has to match the output type of the previous
+	// stage (or I for the first stage). The output type of the last stage has
+	// to be O.
+	@SuppressWarnings("unchecked")
+	public void addStage(String name, int num_threads, Stage<?, ?> stage) {
+		if (num_threads < 1) {
+			throw new IllegalArgumentException(
+					"num_threads must be positive: " + num_threads);
+		}
+		stages_.add((Stage<Object, Object>) stage);
+		counters_.add(new StageCounter(name, num_threads));
+	}
+
+	public List<StageCounter> getCounters() {
+		return counters_;
+	}
+
+	public long getWallNanos() {
+		return wall_nanos_;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void run(String name, Sink<I, O> sink) throws IOException {
+		long start_time = System.nanoTime();
+
+		StageCounter sink_counter = new StageCounter(name, 1);
+		counters_.add(sink_counter);
+
+		// Every queue can hold all items in flight plus the END_ and FAILED_
+		// markers, so puts never block. The permits bound the number of items
+		// in flight.
+		List<BlockingQueue<Item>> queues = new ArrayList<BlockingQueue<Item>>();
+		for (int index = 0; index <= stages_.size(); index++) {
+			queues.add(new ArrayBlockingQueue<Item>(capacity_ + 2));
+		}
+		Semaphore permits = new Semaphore(capacity_);
+		BlockingQueue<Item> output_queue = queues.get(stages_.size());
+
+		threads_ = new ArrayList<Thread>();
+		startSource(queues.get(0), permits, output_queue);
+		for (int index = 0; index < stages_.size(); index++) {
+			startStage(index, queues.get(index), queues.get(index + 1),
+					output_queue);
+		}
+
+		try {
+			Map<Long, Item> pending = new HashMap<Long, Item>();
+			long next_number = 0;
+			boolean done = false;
+
+			while (!done || !pending.isEmpty()) {
+				long wait_start = System.nanoTime();
+				Item item = output_queue.take();
+				sink_counter.wait_nanos_.addAndGet(System.nanoTime()
+						- wait_start);
+
+				if (item == FAILED_) {
+					throw new RuntimeException(error_);
+				}
+
+				if (item == END_) {
+					done = true;
+				} else {
+					pending.put(item.number_, item);
+				}
+
+				Item next_item;
+				while ((next_item = pending.remove(next_number)) != null) {
+					long busy_start = System.nanoTime();
+					sink.accept((I) next_item.input_, (O) next_item.value_);
+					sink_counter.busy_nanos_.addAndGet(System.nanoTime()
+							- busy_start);
+					sink_counter.items_.incrementAndGet();
+					permits.release();
+					next_number++;
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			for (Thread thread : threads_) {
+				thread.interrupt();
+			}
+			wall_nanos_ = System.nanoTime() - start_time;
+		}
+	}
+
+	private void fail(Throwable error, BlockingQueue<Item> output_queue) {
+		synchronized (this) {
+			if (error_ != null) {
+				return;
+			}
+			error_ = error;
+		}
+		output_queue.offer(FAILED_);
+	}
+
+	private void start(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		threads_.add(thread);
+		thread.start();
+	}
+
+	private void startSource(final BlockingQueue<Item> queue,
+			final Semaphore permits, final BlockingQueue<Item> output_queue) {
+		final StageCounter counter = counters_.get(0);
+		start(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long number = 0;
+					while (true) {
+						long wait_start = System.nanoTime();
+						permits.acquire();
+						long busy_start = System.nanoTime();
+						counter.wait_nanos_.addAndGet(busy_start - wait_start);
+
+						if (!source_.hasNext()) {
+							break;
+						}
+						Item item = new Item(number++, source_.next());
+						counter.busy_nanos_.addAndGet(System.nanoTime()
+								- busy_start);
+						counter.items_.incrementAndGet();
+						queue.put(item);
+					}
+					queue.put(END_);
+				} catch (InterruptedException e) {
+					return;
+				} catch (Throwable e) {
+					fail(e, output_queue);
+				}
+			}
+		}, counter.getName());
+	}
+
+	private void startStage(int index, final BlockingQueue<Item> input_queue,
+			final BlockingQueue<Item> queue,
+			final BlockingQueue<Item> output_queue) {
+		final Stage<Object, Object> stage = stages_.get(index);
+		final StageCounter counter = counters_.get(index + 1);
+		final AtomicInteger running_threads = new AtomicInteger(
+				counter.getNumThreads());
+
+		for (int thread = 0; thread < counter.getNumThreads(); thread++) {
+			start(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							long wait_start = System.nanoTime();
+							Item item = input_queue.take();
+							long busy_start = System.nanoTime();
+							counter.wait_nanos_.addAndGet(busy_start
+									- wait_start);
+
+							if (item == END_) {
+								// Leave the marker for the other threads.
+								input_queue.put(END_);
+								if (running_threads.decrementAndGet() == 0) {
+									queue.put(END_);
+								}
+								return;
+							}
+
+							item.value_ = stage.apply(item.value_);
+							counter.busy_nanos_.addAndGet(System.nanoTime()
+									- busy_start);
+							counter.items_.incrementAndGet();
+							queue.put(item);
+						}
+					} catch (InterruptedException e) {
+						return;
+					} catch (Throwable e) {
+						fail(e, output_queue);
+					}
+				}
+			}, counter.getName() + "-" + thread);
+		}
+	}
+
+	// One line per stage. The stage with the highest utilization limits the
+	// throughput of the pipeline.
+	public String getStatistics() {
+		double seconds = wall_nanos_ / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-10s %7s %10s %12s %14s %8s\n", "stage",
+				"threads", "items", "items/s", "max items/s", "util %"));
+		for (StageCounter counter : counters_) {
+			double utilization = 0.0;
+			if (wall_nanos_ > 0) {
+				utilization = 100. * counter.getBusyNanos()
+						/ ((double) wall_nanos_ * counter.getNumThreads());
+			}
+			sb.append(String.format("%-10s %7d %10d %12.1f %14.1f %8.1f\n",
+					counter.getName(), counter.getNumThreads(),
+					counter.getItems(), counter.getItems() / seconds,
+					counter.getMaxThroughput(), utilization));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,69 @@
+// Copyright 2013 Thomas Müller
+// This file is part of MarMoT, which is licensed under GPLv3.
+
+package marmot.util;
+
+import java.util.Arrays;
+
+// Growable double array that is split into pages, which are only allocated
+// when a non-zero value is added to them. Unset entries are 0.0.
+public class SparseDoubleArray {
+	private static final int PAGE_BITS_ = 12;
+	private static final int PAGE_SIZE_ = 1 << PAGE_BITS_;
+	private static final int PAGE_MASK_ = PAGE_SIZE_ - 1;
+
+	private double[][] pages_;
+	private int num_pages_;
+
+	public SparseDoubleArray() {
+		pages_ = new double[16][];
+	}
+
+	public double get(int index) {
+		int page_index = index >>> PAGE_BITS_;
+		if (page_index >= pages_.length) {
+			return 0.0;
+		}
+		double[] page = pages_[page_index];
+		if (page == null) {
+			return 0.0;
+		}
+		return page[index & PAGE_MASK_];
+	}
+
+	public void add(int index, double value) {
+		int page_index = index >>> PAGE_BITS_;
+		if (page_index >= pages_.length) {
+			pages_ = Arrays.copyOf(pages_,
+					Math.max(page_index + 1, 2 * pages_.length));
+		}
+		double[] page = pages_[page_index];
+		if (page == null) {
+			if (value == 0.0) {
+				return;
+			}
+			page = new double[PAGE_SIZE_];
+			pages_[page_index] = page;
+			num_pages_++;
+		}
+		page[index & PAGE_MASK_] += value;
+	}
+
+	// Sets index to 0.0 and returns its old value.
+	public double remove(int index) {
+		double value = get(index);
+		if (value != 0.0) {
+			pages_[index >>> PAGE_BITS_][index & PAGE_MASK_] = 0.0;
+		}
+		return value;
+	}
+
+	public int getNumPages() {
+		return num_pages_;
+	}
+
+	public static int getPageSize() {
+		return PAGE_SIZE_;
+	}
+
+}